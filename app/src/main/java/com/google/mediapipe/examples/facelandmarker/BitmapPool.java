@@ -0,0 +1,144 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import android.graphics.Bitmap;
+
+/**
+ * Small bounded pool of ARGB_8888 bitmaps keyed by width and height.
+ *
+ * The live stream only ever sees a handful of distinct frame sizes (the camera
+ * buffer and its rotated copy), so free bitmaps are kept in a flat array and
+ * matched with a linear scan. This keeps acquire/release free of any allocation
+ * once the pool is warm.
+ */
+public class BitmapPool {
+    public static final int DEFAULT_MAX_POOLED = 6;
+
+    private final Bitmap[] free;
+    private int freeCount = 0;
+
+    private long allocationCount = 0;
+    private long reuseCount = 0;
+    private long evictionCount = 0;
+
+    public BitmapPool() {
+        this(DEFAULT_MAX_POOLED);
+    }
+
+    public BitmapPool(int maxPooled) {
+        if (maxPooled <= 0) {
+            throw new IllegalArgumentException("maxPooled must be positive.");
+        }
+        this.free = new Bitmap[maxPooled];
+    }
+
+    // Returns a mutable ARGB_8888 bitmap of exactly width x height. Its content
+    // is undefined; callers are expected to overwrite every pixel.
+    public synchronized Bitmap acquire(int width, int height) {
+        for (int i = 0; i < freeCount; i++) {
+            Bitmap candidate = free[i];
+            if (candidate.getWidth() == width && candidate.getHeight() == height) {
+                freeCount--;
+                free[i] = free[freeCount];
+                free[freeCount] = null;
+                reuseCount++;
+                return candidate;
+            }
+        }
+        allocationCount++;
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    // Returns a mutable ARGB_8888 bitmap of width x height for
+    // BitmapFactory.Options.inBitmap. Any free bitmap with enough memory is
+    // reconfigured to the size, so photos in portrait and landscape share
+    // one allocation; the smallest that fits is taken.
+    public synchronized Bitmap acquireForDecode(int width, int height) {
+        long byteCount = (long) width * height * 4;
+        int best = -1;
+        for (int i = 0; i < freeCount; i++) {
+            int allocated = free[i].getAllocationByteCount();
+            if (allocated >= byteCount && (best < 0 || allocated < free[best].getAllocationByteCount())) {
+                best = i;
+            }
+        }
+        if (best < 0) {
+            allocationCount++;
+            return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        Bitmap candidate = free[best];
+        freeCount--;
+        free[best] = free[freeCount];
+        free[freeCount] = null;
+        reuseCount++;
+        if (candidate.getWidth() != width || candidate.getHeight() != height) {
+            candidate.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+        }
+        return candidate;
+    }
+
+    // Hands a bitmap back to the pool. When the pool is at capacity the oldest
+    // free bitmap is recycled to make room, so a change of frame size drains
+    // the stale entries instead of pinning them.
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        if (freeCount == free.length) {
+            free[0].recycle();
+            System.arraycopy(free, 1, free, 0, freeCount - 1);
+            freeCount--;
+            evictionCount++;
+        }
+        free[freeCount++] = bitmap;
+    }
+
+    // Recycles every pooled bitmap. Counters are kept.
+    public synchronized void clear() {
+        for (int i = 0; i < freeCount; i++) {
+            free[i].recycle();
+            free[i] = null;
+        }
+        freeCount = 0;
+    }
+
+    public synchronized int getPooledCount() {
+        return freeCount;
+    }
+
+    public synchronized long getAllocationCount() {
+        return allocationCount;
+    }
+
+    public synchronized long getReuseCount() {
+        return reuseCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BitmapPool{" +
+                "pooled=" + freeCount +
+                ", allocations=" + allocationCount +
+                ", reuses=" + reuseCount +
+                ", evictions=" + evictionCount +
+                '}';
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import androidx.annotation.NonNull;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Frames from a CameraX ImageAnalysis use case, at whatever rate the camera
+ * runs.
+ */
+public class CameraFrameSource implements FrameSource {
+    private final ImageAnalysis imageAnalysis;
+
+    public CameraFrameSource(ImageAnalysis imageAnalysis) {
+        this.imageAnalysis = imageAnalysis;
+    }
+
+    @Override
+    public void start(Executor executor, FrameSink sink) {
+        imageAnalysis.setAnalyzer(executor, new ImageAnalysis.Analyzer() {
+            @Override
+            public void analyze(@NonNull ImageProxy image) {
+                sink.onImage(image);
+            }
+        });
+    }
+
+    @Override
+    public void stop() {
+        imageAnalysis.clearAnalyzer();
+    }
+
+    @Override
+    public void setRateHz(float rateHz) {
+        // The camera sets the pace.
+    }
+
+    @Override
+    public String describe() {
+        return "camera";
+    }
+}
@@ -15,9 +15,15 @@
  */
 package com.google.mediapipe.examples.facelandmarker;
 
+import android.annotation.SuppressLint;
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
 import android.graphics.Matrix;
+import android.graphics.ImageFormat;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.media.Image;
 import android.media.MediaMetadataRetriever;
 import android.net.Uri;
 import android.os.SystemClock;
@@ -26,13 +32,23 @@ import androidx.annotation.VisibleForTesting;
 import androidx.camera.core.ImageProxy;
 import com.google.mediapipe.framework.image.BitmapImageBuilder;
 import com.google.mediapipe.framework.image.MPImage;
+import com.google.mediapipe.framework.image.MediaImageBuilder;
 import com.google.mediapipe.tasks.core.BaseOptions;
 import com.google.mediapipe.tasks.core.Delegate;
+import com.google.mediapipe.tasks.vision.core.ImageProcessingOptions;
 import com.google.mediapipe.tasks.vision.core.RunningMode;
 import com.google.mediapipe.tasks.vision.facelandmarker.FaceLandmarker;
 import com.google.mediapipe.tasks.vision.facelandmarker.FaceLandmarkerResult;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class FaceLandmarkerHelper {
     //Default settings
@@ -47,21 +63,130 @@ public class FaceLandmarkerHelper {
     public  static final int DEFAULT_NUM_FACES = 1;
     public  static final int OTHER_ERROR = 0;
     public  static final int GPU_ERROR = 1;
-
-
-
-    private float minFaceDetectionConfidence;
-    private float minFaceTrackingConfidence;
-    private float minFacePresenceConfidence;
-    private int maxNumFaces;
-    private int currentDelegate;
+    // Frames that may wait for a result; more than admission control lets
+    // through, so the table only fills up when results are lost.
+    public  static final int MAX_FRAMES_IN_FLIGHT = 3;
+    // Where the camera rotation and front camera mirror are applied.
+    // ROTATION_IN_BITMAP re-renders every frame upright before inference.
+    // ROTATION_IN_OPTIONS leaves the pixels untouched, passes the rotation to
+    // the landmarker and lets the overlay map landmarks into display space.
+    public  static final int ROTATION_IN_BITMAP = 0;
+    public  static final int ROTATION_IN_OPTIONS = 1;
+    // How camera frames become an MPImage.
+    // INGESTION_BITMAP copies every frame into a pooled bitmap (RGBA_8888 or
+    // YUV_420_888 input, converted on the CPU).
+    // INGESTION_MEDIA_IMAGE wraps YUV_420_888 frames as-is; the ImageProxy
+    // stays open until the result arrives and rotation always goes through
+    // the processing options. Falls back to INGESTION_BITMAP when the device
+    // or landmarker rejects the wrapped image.
+    public  static final int INGESTION_BITMAP = 0;
+    public  static final int INGESTION_MEDIA_IMAGE = 1;
+    // Setting changes closer together than this are applied as one rebuild.
+    public  static final long RECONFIGURE_DEBOUNCE_MS = 300;
+    // Warm-up inferences run on a blank frame at a timestamp no camera frame
+    // can have, so their results are recognised and swallowed.
+    private static final long WARM_UP_TIMESTAMP_MS = 0;
+    static final int WARM_UP_FRAME_SIZE = 256;
+    private static final long WARM_UP_TIMEOUT_MS = 2000;
+    // With a PipelineScheduler, one frame may be converted while the previous
+    // one is in inference, but it is only submitted once that one is done.
+    // A result that takes longer than this is assumed to have been dropped.
+    private static final int PIPELINED_MAX_IN_FLIGHT = 2;
+    private static final long SUBMIT_WAIT_TIMEOUT_MS = 500;
+
+
+
+    // Read on the reconfigure thread when a new landmarker is built.
+    private volatile float minFaceDetectionConfidence;
+    private volatile float minFaceTrackingConfidence;
+    private volatile float minFacePresenceConfidence;
+    private volatile int maxNumFaces;
+    private volatile int currentDelegate;
+    private int rotationMode = ROTATION_IN_OPTIONS;
+    private volatile int ingestionMode = INGESTION_BITMAP;
+    // Cleared the first time wrapping a camera image fails, verified once it works.
+    private volatile boolean mediaImageSupported = true;
+    private boolean mediaImageVerified = false;
     private RunningMode runningMode;
     private final Context context;
     private final LandmarkerListener faceLandmarkerHelperListener;
 
     // For this example this needs to be a var so it can be reset on changes.
     // If the Face Landmarker will not change, a lazy val would be preferable.
-    private FaceLandmarker faceLandmarker;
+    // Swapped and submitted to under landmarkerLock.
+    private volatile FaceLandmarker faceLandmarker;
+    private final Object landmarkerLock = new Object();
+    // Outputs the consumers need and the ones the current landmarker computes.
+    private final OutputDemand outputDemand = new OutputDemand();
+    private volatile int landmarkerOutputs = OutputDemand.OUTPUT_LANDMARKS;
+    // Rebuilds run on their own thread, so the analyzer keeps feeding the
+    // current landmarker while the next one loads: the pipeline's control
+    // stage when there is one, otherwise a thread created on first use.
+    private volatile PipelineScheduler pipelineScheduler;
+    private ScheduledExecutorService reconfigureExecutor;
+    private ScheduledFuture<?> pendingReconfigure;
+    private final LandmarkerInitMetrics initMetrics = new LandmarkerInitMetrics();
+
+    // Frame conversion state reused across live stream frames so steady state
+    // runs without allocating bitmaps.
+    private final BitmapPool bitmapPool = new BitmapPool();
+    private final InFlightFrames inFlightFrames = new InFlightFrames(bitmapPool, MAX_FRAMES_IN_FLIGHT);
+    private final Matrix rotationMatrix = new Matrix();
+    private final Canvas rotationCanvas = new Canvas();
+    private final Paint rotationPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    // Copies frames that come in as bitmaps.
+    private final Canvas copyCanvas = new Canvas();
+    private final Rect copySourceRect = new Rect();
+    private final Rect copyTargetRect = new Rect();
+    // Timestamp of the last admitted frame; only touched on the conversion
+    // thread.
+    private long lastFrameTimeMs = 0;
+    private final FrameConverter frameConverter = new FrameConverter();
+    private final FrameAdmissionController admissionController = new FrameAdmissionController();
+    // Crops live stream frames to the tracked faces. Only used with
+    // ROTATION_IN_OPTIONS bitmap frames delivered as LandmarkFrames, where
+    // the landmarks can be mapped back before anyone sees them.
+    private final FaceRoiTracker roiTracker = new FaceRoiTracker();
+    private final FaceRoiTracker.Region roiRegion = new FaceRoiTracker.Region();
+    // Reuses the last result while the camera sees the same scene; also only
+    // for LandmarkFrame delivery. The last delivered frame is retained for
+    // that under lastDeliveredLock.
+    private final SceneChangeDetector sceneChangeDetector = new SceneChangeDetector();
+    private final Object lastDeliveredLock = new Object();
+    private LandmarkFrame lastDelivered;
+    // One immutable options instance per camera rotation, built up front.
+    private final ImageProcessingOptions[] rotationOptions = {
+            ImageProcessingOptions.builder().setRotationDegrees(0).build(),
+            ImageProcessingOptions.builder().setRotationDegrees(90).build(),
+            ImageProcessingOptions.builder().setRotationDegrees(180).build(),
+            ImageProcessingOptions.builder().setRotationDegrees(270).build()
+    };
+    // Only touched on the camera analyzer thread.
+    private final InFlightFrames.FrameInfo submitFrameInfo = new InFlightFrames.FrameInfo();
+    // Only touched on the MediaPipe result thread.
+    private final InFlightFrames.FrameInfo resultFrameInfo = new InFlightFrames.FrameInfo();
+    private final PipelineMetrics pipelineMetrics = new PipelineMetrics();
+    private final LandmarkFramePool landmarkFramePool = new LandmarkFramePool();
+    // Hand-off to the submission stage. At most one frame waits there, so
+    // the one task instance is never queued twice.
+    private final SubmitTask submitTask = new SubmitTask();
+    private final AtomicBoolean submissionPending = new AtomicBoolean(false);
+    // Notified whenever a result retires in-flight frames.
+    private final Object completionMonitor = new Object();
+    // Hand-off to the post-processing stage; a result not yet delivered is
+    // replaced by a newer one.
+    private final LatestValueMailbox<LandmarkFrame> postProcessMailbox = new LatestValueMailbox<>();
+    private final AtomicBoolean postProcessScheduled = new AtomicBoolean(false);
+    private final Runnable postProcessTask = new Runnable() {
+        @Override
+        public void run() {
+            postProcessScheduled.set(false);
+            LandmarkFrame frame = postProcessMailbox.take();
+            if (frame != null) {
+                deliverFrame(frame);
+            }
+        }
+    };
 
     public FaceLandmarker getFaceLandmarker() {
         return faceLandmarker;
@@ -80,6 +205,26 @@ public class FaceLandmarkerHelper {
             RunningMode runningMode,
             Context context,
             LandmarkerListener faceLandmarkerHelperListener
+    ){
+        // Callers that don't declare their outputs get landmarks and
+        // blendshapes, as before outputs became demand driven.
+        this(minFaceDetectionConfidence, minFaceTrackingConfidence, minFacePresenceConfidence, maxNumFaces,
+                currentDelegate, runningMode, context, faceLandmarkerHelperListener,
+                OutputDemand.OUTPUT_LANDMARKS | OutputDemand.OUTPUT_BLENDSHAPES);
+    }
+
+    // requiredOutputs (OutputDemand.OUTPUT_* flags) is registered on behalf of
+    // the listener before the landmarker is first built.
+    public FaceLandmarkerHelper(
+            float minFaceDetectionConfidence,
+            float minFaceTrackingConfidence,
+            float minFacePresenceConfidence,
+            int maxNumFaces,
+            int currentDelegate,
+            RunningMode runningMode,
+            Context context,
+            LandmarkerListener faceLandmarkerHelperListener,
+            int requiredOutputs
     ){
         this.context = context;
         this.faceLandmarkerHelperListener = faceLandmarkerHelperListener;  // null or provide a default listener
@@ -90,6 +235,7 @@ public class FaceLandmarkerHelper {
         this.currentDelegate = DELEGATE_CPU;
         this.runningMode = runningMode;
 //        this.runningMode = RunningMode.IMAGE;
+        outputDemand.register(faceLandmarkerHelperListener != null ? faceLandmarkerHelperListener : this, requiredOutputs);
 
         setupFaceLandmarker();
     }
@@ -119,6 +265,7 @@ public class FaceLandmarkerHelper {
 
     public void setMaxNumFaces(int maxNumFaces){
         this.maxNumFaces = maxNumFaces;
+        roiTracker.setMaxFaces(maxNumFaces);
     }
 
     public int getMaxNumFaces(){
@@ -133,6 +280,36 @@ public class FaceLandmarkerHelper {
         return this.currentDelegate;
     }
 
+    public void setRotationMode(int rotationMode){
+        this.rotationMode = rotationMode;
+    }
+
+    public int getRotationMode(){
+        return this.rotationMode;
+    }
+
+    public void setIngestionMode(int ingestionMode){
+        this.ingestionMode = ingestionMode;
+    }
+
+    public int getIngestionMode(){
+        return this.ingestionMode;
+    }
+
+    // Whether frames currently take the direct MediaImage path.
+    public boolean isMediaImageIngestionActive(){
+        return this.ingestionMode == INGESTION_MEDIA_IMAGE && this.mediaImageSupported;
+    }
+
+    // The path frames actually take, so a comparison of the ingestion modes
+    // shows when the MediaImage one fell back to converting in Java.
+    public String describeIngestion(){
+        if (this.ingestionMode != INGESTION_MEDIA_IMAGE) {
+            return "bitmap";
+        }
+        return this.mediaImageSupported ? "media image" : "media image unsupported, YUV converted to bitmaps";
+    }
+
     public void setRunningMode(RunningMode runningMode){
         this.runningMode = runningMode;
     }
@@ -152,11 +329,97 @@ public class FaceLandmarkerHelper {
 
 
 
+    public BitmapPool getBitmapPool() {
+        return this.bitmapPool;
+    }
+
+    public PipelineMetrics getPipelineMetrics() {
+        return this.pipelineMetrics;
+    }
+
+    public LandmarkFramePool getLandmarkFramePool() {
+        return this.landmarkFramePool;
+    }
+
+    public LandmarkerInitMetrics getInitMetrics() {
+        return this.initMetrics;
+    }
+
+    public FrameAdmissionController getAdmissionController() {
+        return this.admissionController;
+    }
+
+    public FaceRoiTracker getRoiTracker() {
+        return this.roiTracker;
+    }
+
+    public SceneChangeDetector getSceneChangeDetector() {
+        return this.sceneChangeDetector;
+    }
+
+    // Runs submission, post-processing and rebuilds on the scheduler's
+    // stages. The caller is expected to drive detectLiveStream from its
+    // conversion stage. null runs everything on the calling threads.
+    public void setPipelineScheduler(PipelineScheduler pipelineScheduler) {
+        this.pipelineScheduler = pipelineScheduler;
+        admissionController.setMaxInFlight(pipelineScheduler != null
+                ? PIPELINED_MAX_IN_FLIGHT
+                : FrameAdmissionController.DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public PipelineScheduler getPipelineScheduler() {
+        return this.pipelineScheduler;
+    }
+
+    // Upper bound on live stream inferences per second, 0 for no cap. Frames
+    // above the cap are skipped before any pixel is copied.
+    public void setMaxInferenceRateHz(float maxInferenceRateHz) {
+        admissionController.setMaxRateHz(maxInferenceRateHz);
+    }
+
+    public float getMaxInferenceRateHz() {
+        return admissionController.getMaxRateHz();
+    }
+
     public void clearFaceLandmarker() {
-        if (faceLandmarker != null) {
-            faceLandmarker.close();
+        FaceLandmarker closing;
+        synchronized (landmarkerLock) {
+            closing = faceLandmarker;
+            faceLandmarker = null;
+        }
+        if (closing != null) {
+            closing.close();
+        }
+        // No more results will arrive for frames still in flight.
+        inFlightFrames.clear();
+        admissionController.reset();
+        roiTracker.reset();
+        forgetLastDelivered();
+    }
+
+    // Closes the landmarker and frees everything that only serves it: the
+    // pooled bitmaps and frames, the conversion scratch buffers and the
+    // mapped model. setupFaceLandmarker brings it all back. Without a
+    // pipeline scheduler this must run on the analyzer thread, which owns the
+    // conversion buffers.
+    public void releaseResources() {
+        clearFaceLandmarker();
+        trimPools();
+        PipelineScheduler scheduler = pipelineScheduler;
+        if (scheduler == null) {
+            frameConverter.release();
+        } else {
+            // Fails only when shutting down, and then the buffers go with
+            // the helper.
+            scheduler.offer(PipelineScheduler.STAGE_CONVERSION, frameConverter::release);
         }
-        faceLandmarker = null;
+        ModelAssetCache.clear();
+    }
+
+    // Drops the free entries of the pools while the stream keeps running.
+    public void trimPools() {
+        bitmapPool.clear();
+        landmarkFramePool.clear();
     }
 
     // Return running status of FaceLandmarkerHelper
@@ -164,12 +427,26 @@ public class FaceLandmarkerHelper {
         return faceLandmarker == null;
     }
 
-    // Initialize the Face landmarker using current settings on the
-    // thread that is using it. CPU can be used with Landmarker
-    // that are created on the main thread and used on a background thread, but
-    // the GPU delegate needs to be used on the thread that initialized the
-    // Landmarker
+    // Initialize the Face landmarker using current settings. Any thread may
+    // build it, with either delegate: the task graph owns its GL context and
+    // runs GPU inference on its own thread, and detectAsync only hands the
+    // frame to that graph. So a landmarker built on the control stage can be
+    // fed from the conversion and submission stages, and one swapped in by
+    // reconfigure from wherever frames are submitted.
     public void setupFaceLandmarker(){
+        initMetrics.onSetupStarted(SystemClock.uptimeMillis());
+        int outputs = outputDemand.getRequiredOutputs();
+        FaceLandmarker created = createFaceLandmarker(outputs);
+        synchronized (landmarkerLock) {
+            faceLandmarker = created;
+            landmarkerOutputs = outputs;
+        }
+    }
+
+    // Builds and warms up a landmarker computing the given outputs with the
+    // current settings. Reports failures to the listener and returns null.
+    private FaceLandmarker createFaceLandmarker(int outputs){
+        long createStart = SystemClock.uptimeMillis();
         // Set general face landmarker options
         BaseOptions.Builder baseOptionBuilder = BaseOptions.builder();
 
@@ -184,7 +461,14 @@ public class FaceLandmarkerHelper {
         }
 
 
-        baseOptionBuilder.setModelAssetPath(MP_FACE_LANDMARKER_TASK);
+        // Every instance shares the one mapping of the model instead of
+        // reading the task file out of the APK again.
+        try {
+            baseOptionBuilder.setModelAssetBuffer(ModelAssetCache.get(this.context, MP_FACE_LANDMARKER_TASK));
+        } catch (IOException e) {
+            Log.w(TAG, "Could not map " + MP_FACE_LANDMARKER_TASK + ", loading it by path", e);
+            baseOptionBuilder.setModelAssetPath(MP_FACE_LANDMARKER_TASK);
+        }
 
         // Check if runningMode is consistent with faceLandmarkerHelperListener
         if (runningMode == RunningMode.LIVE_STREAM) {
@@ -208,18 +492,28 @@ public class FaceLandmarkerHelper {
                             .setMinTrackingConfidence(this.minFaceTrackingConfidence)
                             .setMinFacePresenceConfidence(this.minFacePresenceConfidence)
                             .setNumFaces(this.maxNumFaces)
-                            .setOutputFaceBlendshapes(true)
+                            .setOutputFaceBlendshapes((outputs & OutputDemand.OUTPUT_BLENDSHAPES) != 0)
+                            .setOutputFacialTransformationMatrixes(
+                                    (outputs & OutputDemand.OUTPUT_TRANSFORMATION_MATRICES) != 0)
                             .setRunningMode(this.runningMode);
 
             // The ResultListener and ErrorListener only use for LIVE_STREAM mode.
+            // Each landmarker gets listeners bound to its own warm-up, so the
+            // one being warmed up can't be confused with the one in use.
+            CountDownLatch warmUpLatch = new CountDownLatch(1);
             if (runningMode == RunningMode.LIVE_STREAM) {
                 optionsBuilder
-                        .setResultListener(this::returnLivestreamResult)
-                        .setErrorListener(this::returnLivestreamError);
+                        .setResultListener((result, input) -> returnLivestreamResult(result, input, warmUpLatch))
+                        .setErrorListener(error -> returnLivestreamError(error, warmUpLatch));
             }
 
             FaceLandmarker.FaceLandmarkerOptions options = optionsBuilder.build();
-            faceLandmarker = FaceLandmarker.createFromOptions(this.context, options);
+            FaceLandmarker created = FaceLandmarker.createFromOptions(this.context, options);
+            long warmUpStart = SystemClock.uptimeMillis();
+            warmUp(created, warmUpLatch);
+            long warmUpEnd = SystemClock.uptimeMillis();
+            initMetrics.recordBuild(warmUpStart - createStart, warmUpEnd - warmUpStart);
+            return created;
 
         } catch (IllegalStateException e) {
             if (faceLandmarkerHelperListener != null) {
@@ -240,75 +534,639 @@ public class FaceLandmarkerHelper {
                     "Face Landmarker failed to load model with error: " + e.getMessage()
             );
         }
+        return null;
+    }
+
+    // Declares which OutputDemand.OUTPUT_* flags consumer reads, replacing its
+    // earlier declaration. The landmarker is rebuilt in the background when
+    // the union over all consumers changes.
+    public void registerOutputs(Object consumer, int outputs) {
+        if (outputDemand.register(consumer, outputs)) {
+            reconfigure();
+        }
+    }
+
+    public void unregisterOutputs(Object consumer) {
+        if (outputDemand.unregister(consumer)) {
+            reconfigure();
+        }
+    }
+
+    public OutputDemand getOutputDemand() {
+        return this.outputDemand;
+    }
+
+    // Outputs computed by the current landmarker.
+    public int getLandmarkerOutputs() {
+        return this.landmarkerOutputs;
+    }
+
+    // Everything that decides what the landmarker returns for an image: the
+    // thresholds, the number of faces, the outputs it was built with and the
+    // model. Results are only interchangeable between equal fingerprints.
+    public String getConfigFingerprint() throws IOException {
+        return String.format(Locale.US, "detection=%.4f;tracking=%.4f;presence=%.4f;faces=%d;outputs=%d;model=%s",
+                minFaceDetectionConfidence, minFaceTrackingConfidence, minFacePresenceConfidence, maxNumFaces,
+                landmarkerOutputs, ModelAssetCache.getSha256(context, MP_FACE_LANDMARKER_TASK));
+    }
+
+    // Applies the current settings and demanded outputs without stopping the
+    // stream. Calls within RECONFIGURE_DEBOUNCE_MS of each other collapse into
+    // one rebuild, which builds and warms up the new landmarker on a separate
+    // thread while the current one keeps serving frames.
+    public synchronized void reconfigure() {
+        if (pendingReconfigure != null) {
+            pendingReconfigure.cancel(false);
+        }
+        PipelineScheduler scheduler = pipelineScheduler;
+        if (scheduler != null) {
+            pendingReconfigure = scheduler.schedule(this::swapInNewLandmarker, RECONFIGURE_DEBOUNCE_MS);
+            if (pendingReconfigure == null) {
+                Log.w(TAG, "Control stage is full or shut down, settings not applied");
+            }
+            return;
+        }
+        if (reconfigureExecutor == null) {
+            reconfigureExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "LandmarkerReconfigure");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        pendingReconfigure = reconfigureExecutor.schedule(
+                this::swapInNewLandmarker, RECONFIGURE_DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Drops a pending rebuild and stops the reconfigure thread. The landmarker
+    // itself is closed by clearFaceLandmarker.
+    public synchronized void shutdown() {
+        if (pendingReconfigure != null) {
+            pendingReconfigure.cancel(false);
+            pendingReconfigure = null;
+        }
+        if (reconfigureExecutor != null) {
+            reconfigureExecutor.shutdown();
+            reconfigureExecutor = null;
+        }
+    }
+
+    // Builds and warms up a landmarker with the current settings, then swaps
+    // it in between two submissions so no frame ever sees a null landmarker.
+    // A closed helper stays closed; setupFaceLandmarker picks the settings up
+    // when it reopens.
+    private void swapInNewLandmarker() {
+        if (faceLandmarker == null) {
+            return;
+        }
+        int outputs = outputDemand.getRequiredOutputs();
+        FaceLandmarker created = createFaceLandmarker(outputs);
+        if (created == null) {
+            // The old landmarker keeps running with the old settings.
+            return;
+        }
+        FaceLandmarker replaced;
+        synchronized (landmarkerLock) {
+            replaced = faceLandmarker;
+            if (replaced != null) {
+                faceLandmarker = created;
+                landmarkerOutputs = outputs;
+            }
+        }
+        if (replaced == null) {
+            // Closed while building.
+            created.close();
+            return;
+        }
+        // Results still pending on the old landmarker are delivered as it
+        // drains; the in-flight bookkeeping handles either order. Results of
+        // the old settings are not reused for new frames.
+        replaced.close();
+        forgetLastDelivered();
+    }
+
+    // Runs one inference on a blank frame, so the first camera frame doesn't
+    // pay for the lazy setup of the graph and delegate. latch is counted down
+    // by landmarker's listeners when the warm-up frame is done.
+    private void warmUp(FaceLandmarker landmarker, CountDownLatch latch) {
+        // Not pooled: after a timeout MediaPipe may still read the pixels.
+        Bitmap blank = Bitmap.createBitmap(WARM_UP_FRAME_SIZE, WARM_UP_FRAME_SIZE, Bitmap.Config.ARGB_8888);
+        MPImage mpImage = new BitmapImageBuilder(blank).build();
+        try {
+            if (runningMode == RunningMode.LIVE_STREAM) {
+                landmarker.detectAsync(mpImage, WARM_UP_TIMESTAMP_MS);
+                if (!latch.await(WARM_UP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    Log.w(TAG, "Warm-up inference timed out, swapping in anyway");
+                }
+            } else if (runningMode == RunningMode.IMAGE) {
+                landmarker.detect(mpImage);
+            }
+            // VIDEO timestamps must increase from the first real frame on, so
+            // a video landmarker is not warmed up.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Warm-up inference failed", e);
+        } finally {
+            // From now on, errors of this landmarker are about camera frames.
+            latch.countDown();
+        }
     }
 
     public void detectLiveStream(ImageProxy imageProxy, boolean isFrontCamera) {
+        checkLiveStream();
+        long cameraTimestampNanos =
+                PipelineMetrics.cameraTimestampToNanoTime(imageProxy.getImageInfo().getTimestamp());
+        long frameTime = admitFrame(cameraTimestampNanos);
+        if (frameTime < 0) {
+            imageProxy.close();
+            return;
+        }
+
+        int width = imageProxy.getWidth();
+        int height = imageProxy.getHeight();
+        int rotationDegrees = imageProxy.getImageInfo().getRotationDegrees();
+        submitFrameInfo.reset();
+        submitFrameInfo.cameraTimestampNanos = cameraTimestampNanos;
+        submitFrameInfo.rotationDegrees = rotationDegrees;
+        submitFrameInfo.mirrored = isFrontCamera;
+
+        if (deliversLandmarkFrames() && sceneChangeDetector.isEnabled()) {
+            // Only reuse a result when none is pending, so results stay in
+            // camera order.
+            sampleScene(imageProxy, width, height);
+            if (admissionController.getInFlightCount() == 0 && sceneChangeDetector.isUnchanged(frameTime)
+                    && reemitLastResult(frameTime, cameraTimestampNanos)) {
+                sceneChangeDetector.onSkipped(admissionController.getLatencyEmaMs());
+                imageProxy.close();
+                return;
+            }
+            sceneChangeDetector.onInferred(frameTime);
+        }
+
+        if (imageProxy.getFormat() == ImageFormat.YUV_420_888 && isMediaImageIngestionActive()
+                && detectMediaImage(imageProxy, frameTime)) {
+            return;
+        }
+
+        // Copy out RGB bits from the frame to a pooled bitmap buffer, only
+        // the part around the tracked faces when there is one.
+        long stageStart = System.nanoTime();
+        boolean cropped = nextRegion(width, height);
+        Bitmap bitmapBuffer = cropped
+                ? bitmapPool.acquire(roiRegion.outputWidth, roiRegion.outputHeight)
+                : bitmapPool.acquire(width, height);
 
+        try {
+            if (cropped) {
+                copyRegionToBitmap(imageProxy, roiRegion, bitmapBuffer);
+            } else {
+                copyToBitmap(imageProxy, bitmapBuffer);
+            }
+        } finally {
+            imageProxy.close();
+        }
+        pipelineMetrics.recordSince(PipelineMetrics.STAGE_PIXEL_COPY, stageStart);
+        submitBitmapFrame(bitmapBuffer, cropped, width, height, frameTime);
+    }
+
+    // Feeds a frame from a FrameSource other than the camera through the
+    // same path. timestampNanos is when the frame became available, on the
+    // System.nanoTime() base; rotationDegrees and mirrored are what the
+    // camera would report. bitmap is only read during the call. Scene change
+    // detection only samples camera planes and is skipped here.
+    public void detectLiveStream(Bitmap bitmap, long timestampNanos, int rotationDegrees, boolean mirrored) {
+        checkLiveStream();
+        long frameTime = admitFrame(timestampNanos);
+        if (frameTime < 0) {
+            return;
+        }
+
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        submitFrameInfo.reset();
+        submitFrameInfo.cameraTimestampNanos = timestampNanos;
+        submitFrameInfo.rotationDegrees = rotationDegrees;
+        submitFrameInfo.mirrored = mirrored;
+
+        // The source may reuse its bitmap, so the frame is copied (or
+        // cropped) into a pooled one like camera pixels are.
+        long stageStart = System.nanoTime();
+        boolean cropped = nextRegion(width, height);
+        Bitmap bitmapBuffer = cropped
+                ? bitmapPool.acquire(roiRegion.outputWidth, roiRegion.outputHeight)
+                : bitmapPool.acquire(width, height);
+        if (cropped) {
+            copySourceRect.set(roiRegion.left, roiRegion.top,
+                    roiRegion.left + roiRegion.width, roiRegion.top + roiRegion.height);
+        } else {
+            copySourceRect.set(0, 0, width, height);
+        }
+        copyTargetRect.set(0, 0, bitmapBuffer.getWidth(), bitmapBuffer.getHeight());
+        copyCanvas.setBitmap(bitmapBuffer);
+        copyCanvas.drawBitmap(bitmap, copySourceRect, copyTargetRect, rotationPaint);
+        copyCanvas.setBitmap(null);
+        pipelineMetrics.recordSince(PipelineMetrics.STAGE_PIXEL_COPY, stageStart);
+        submitBitmapFrame(bitmapBuffer, cropped, width, height, frameTime);
+    }
+
+    private void checkLiveStream() {
         if (runningMode != RunningMode.LIVE_STREAM) {
             throw new IllegalArgumentException(
                     "Attempting to call detectLiveStream while not using RunningMode.LIVE_STREAM"
             );
         }
+    }
 
-        long frameTime = SystemClock.uptimeMillis();
+    // Decides whether the frame captured at frameTimestampNanos goes through
+    // inference. Returns its landmarker timestamp, or -1 when it should be
+    // dropped before any conversion.
+    private long admitFrame(long frameTimestampNanos) {
+        if (faceLandmarker == null) {
+            // Nothing would consume the frame, so skip the conversion entirely.
+            return -1;
+        }
 
-        // Copy out RGB bits from the frame to a bitmap buffer
-        Bitmap bitmapBuffer = Bitmap.createBitmap(
-                imageProxy.getWidth(),
-                imageProxy.getHeight(),
-                Bitmap.Config.ARGB_8888
-        );
+        if (submissionPending.get()) {
+            // A converted frame is already waiting for the landmarker.
+            return -1;
+        }
 
-        try {
-            bitmapBuffer.copyPixelsFromBuffer(imageProxy.getPlanes()[0].getBuffer());
-        } finally {
-            imageProxy.close();
+        long receiptNanos = System.nanoTime();
+        // Sources faster than the camera may deliver twice within a
+        // millisecond; the landmarker needs strictly increasing timestamps.
+        long frameTime = Math.max(SystemClock.uptimeMillis(), lastFrameTimeMs + 1);
+        if (!admissionController.tryAdmit(frameTime)) {
+            // The landmarker is still busy; drop the frame before paying for
+            // any conversion.
+            return -1;
         }
+        lastFrameTimeMs = frameTime;
+        pipelineMetrics.record(PipelineMetrics.STAGE_RECEIPT, receiptNanos - frameTimestampNanos);
+        return frameTime;
+    }
+
+    private boolean nextRegion(int width, int height) {
+        return rotationMode == ROTATION_IN_OPTIONS && deliversLandmarkFrames()
+                && roiTracker.nextRegion(width, height, roiRegion);
+    }
 
-        Matrix matrix = new Matrix();
-        // Rotate the frame received from the camera to be in the same direction as it'll be shown
-        matrix.postRotate((float) imageProxy.getImageInfo().getRotationDegrees());
+    // Rotates the copied frame if needed and submits it. width and height
+    // are those of the whole frame, even when bitmapBuffer holds roiRegion.
+    private void submitBitmapFrame(Bitmap bitmapBuffer, boolean cropped, int width, int height, long frameTime) {
+        if (cropped) {
+            submitFrameInfo.regionLeft = roiRegion.left / (float) width;
+            submitFrameInfo.regionTop = roiRegion.top / (float) height;
+            submitFrameInfo.regionWidth = roiRegion.width / (float) width;
+            submitFrameInfo.regionHeight = roiRegion.height / (float) height;
+            submitFrameInfo.sourceWidth = width;
+            submitFrameInfo.sourceHeight = height;
+        }
+        int rotationDegrees = submitFrameInfo.rotationDegrees;
+
+        long stageStart;
+        if (rotationMode == ROTATION_IN_OPTIONS) {
+            // Hand the upright frame over as-is and let the landmarker rotate
+            // internally. Landmarks come back in the coordinates of this
+            // unrotated buffer, so the consumer applies rotation and mirror.
+            stageStart = System.nanoTime();
+            MPImage mpImage = new BitmapImageBuilder(bitmapBuffer).build();
+            pipelineMetrics.recordSince(PipelineMetrics.STAGE_MPIMAGE_BUILD, stageStart);
+
+            submitConverted(mpImage, bitmapBuffer, rotationOptions[(rotationDegrees / 90) & 3], frameTime);
+            return;
+        }
 
+        // Rotate the frame received from the camera to be in the same direction
+        // as it'll be shown, drawing into a pooled bitmap instead of letting
+        // Bitmap.createBitmap allocate a new one.
+        stageStart = System.nanoTime();
+        boolean swapsAxes = rotationDegrees == 90 || rotationDegrees == 270;
+        int rotatedWidth = swapsAxes ? height : width;
+        int rotatedHeight = swapsAxes ? width : height;
+        Bitmap rotatedBitmap = bitmapPool.acquire(rotatedWidth, rotatedHeight);
+
+        rotationMatrix.reset();
+        rotationMatrix.postTranslate(-width / 2f, -height / 2f);
+        rotationMatrix.postRotate((float) rotationDegrees);
         // Flip image if user uses front camera
-        if (isFrontCamera) {
-            matrix.postScale(
-                    -1f,
-                    1f,
-                    (float) imageProxy.getWidth(),
-                    (float) imageProxy.getHeight()
-            );
+        if (submitFrameInfo.mirrored) {
+            rotationMatrix.postScale(-1f, 1f);
         }
+        rotationMatrix.postTranslate(rotatedWidth / 2f, rotatedHeight / 2f);
 
-        Bitmap rotatedBitmap = Bitmap.createBitmap(
-                bitmapBuffer, 0, 0, bitmapBuffer.getWidth(), bitmapBuffer.getHeight(),
-                matrix, true
-        );
+        rotationCanvas.setBitmap(rotatedBitmap);
+        rotationCanvas.drawBitmap(bitmapBuffer, rotationMatrix, rotationPaint);
+        rotationCanvas.setBitmap(null);
+        bitmapPool.release(bitmapBuffer);
+        pipelineMetrics.recordSince(PipelineMetrics.STAGE_ROTATION, stageStart);
 
-        // Convert the input Bitmap object to an MPImage object to run inference
+        // Convert the input Bitmap object to an MPImage object to run inference.
+        // The bitmap stays in flight until returnLivestreamResult hands it back.
+        stageStart = System.nanoTime();
         MPImage mpImage = new BitmapImageBuilder(rotatedBitmap).build();
+        pipelineMetrics.recordSince(PipelineMetrics.STAGE_MPIMAGE_BUILD, stageStart);
+
+        // The pixels are upright and mirrored already.
+        submitFrameInfo.rotationDegrees = 0;
+        submitFrameInfo.mirrored = false;
+        submitConverted(mpImage, rotatedBitmap, null, frameTime);
+    }
+
+    // Submits a converted frame, through the submission stage when there is
+    // a pipeline scheduler. options may be null.
+    private void submitConverted(MPImage mpImage, Bitmap bitmap, ImageProcessingOptions options, long frameTime) {
+        PipelineScheduler scheduler = pipelineScheduler;
+        if (scheduler == null) {
+            submitFrameInfo.submitTimeNanos = System.nanoTime();
+            if (!inFlightFrames.add(frameTime, bitmap, submitFrameInfo)) {
+                bitmapPool.release(bitmap);
+                return;
+            }
+            submit(mpImage, options, frameTime);
+            return;
+        }
+        submissionPending.set(true);
+        submitTask.set(mpImage, bitmap, options, frameTime, submitFrameInfo);
+        if (!scheduler.offer(PipelineScheduler.STAGE_SUBMISSION, submitTask)) {
+            // Shut down.
+            submitTask.drop();
+        }
+    }
+
+    private void submit(MPImage mpImage, ImageProcessingOptions options, long frameTime) {
+        if (options != null) {
+            detectAsync(mpImage, options, frameTime);
+        } else {
+            detectAsync(mpImage, frameTime);
+        }
+    }
+
+    // Blocks until no frame is in inference, or until the one in flight is
+    // overdue. Submitting earlier would only get the frame dropped by the
+    // landmarker's flow limiter.
+    private void awaitLandmarkerIdle() throws InterruptedException {
+        long deadline = SystemClock.uptimeMillis() + SUBMIT_WAIT_TIMEOUT_MS;
+        synchronized (completionMonitor) {
+            while (admissionController.getInFlightCount() > 0) {
+                long remaining = deadline - SystemClock.uptimeMillis();
+                if (remaining <= 0) {
+                    return;
+                }
+                completionMonitor.wait(remaining);
+            }
+        }
+    }
+    // Wraps the camera's media.Image without copying. Returns false, leaving
+    // imageProxy open, when the frame has to take the copying path instead.
+    // Submitted right here: there is no conversion to overlap, and a failure
+    // has to be seen synchronously to fall back.
+    @SuppressLint("UnsafeOptInUsageError")
+    private boolean detectMediaImage(ImageProxy imageProxy, long frameTime) {
+        Image mediaImage = imageProxy.getImage();
+        if (mediaImage == null) {
+            return false;
+        }
+
+        long stageStart = System.nanoTime();
+        MPImage mpImage = new MediaImageBuilder(mediaImage).build();
+        pipelineMetrics.recordSince(PipelineMetrics.STAGE_MPIMAGE_BUILD, stageStart);
+
+        submitFrameInfo.submitTimeNanos = System.nanoTime();
+        if (!inFlightFrames.add(frameTime, null, imageProxy, submitFrameInfo)) {
+            // Every slot is still waiting for a result; the frame is dropped.
+            imageProxy.close();
+            return true;
+        }
+        try {
+            detectAsync(mpImage, rotationOptions[(submitFrameInfo.rotationDegrees / 90) & 3], frameTime);
+        } catch (RuntimeException e) {
+            inFlightFrames.forget(frameTime);
+            if (mediaImageVerified) {
+                imageProxy.close();
+                throw e;
+            }
+            mediaImageSupported = false;
+            Log.w(TAG, "MediaImage input is not supported, falling back to bitmap copies", e);
+            return false;
+        }
+        mediaImageVerified = true;
+        return true;
+    }
+
+    private void sampleScene(ImageProxy imageProxy, int width, int height) {
+        ImageProxy.PlaneProxy plane = imageProxy.getPlanes()[0];
+        if (imageProxy.getFormat() == ImageFormat.YUV_420_888) {
+            sceneChangeDetector.sampleLuma(plane.getBuffer(), plane.getRowStride(), plane.getPixelStride(),
+                    width, height);
+        } else {
+            sceneChangeDetector.sampleRgba(plane.getBuffer(), plane.getRowStride(), width, height);
+        }
+    }
+
+    // Delivers a copy of the last result as the result of the frame at
+    // frameTime. Returns false when there is nothing to reuse.
+    private boolean reemitLastResult(long frameTime, long cameraTimestampNanos) {
+        LandmarkFrame frame;
+        synchronized (lastDeliveredLock) {
+            if (lastDelivered == null) {
+                return false;
+            }
+            frame = landmarkFramePool.acquire();
+            frame.copyFrom(lastDelivered);
+        }
+        frame.restamp(frameTime, cameraTimestampNanos, System.nanoTime());
+        postFrame(frame);
+        return true;
+    }
+
+    private void rememberLastDelivered(LandmarkFrame frame) {
+        LandmarkFrame previous;
+        synchronized (lastDeliveredLock) {
+            previous = lastDelivered;
+            frame.retain();
+            lastDelivered = frame;
+        }
+        if (previous != null) {
+            previous.release();
+        }
+    }
+
+    private void forgetLastDelivered() {
+        LandmarkFrame previous;
+        synchronized (lastDeliveredLock) {
+            previous = lastDelivered;
+            lastDelivered = null;
+        }
+        if (previous != null) {
+            previous.release();
+        }
+        sceneChangeDetector.reset();
+    }
+
+    private boolean deliversLandmarkFrames() {
+        return faceLandmarkerHelperListener != null && faceLandmarkerHelperListener.prefersLandmarkFrames();
+    }
+
+    private void copyRegionToBitmap(ImageProxy imageProxy, FaceRoiTracker.Region region, Bitmap bitmap) {
+        ImageProxy.PlaneProxy[] planes = imageProxy.getPlanes();
+        if (imageProxy.getFormat() == ImageFormat.YUV_420_888) {
+            frameConverter.convertYuvRegion(
+                    planes[0].getBuffer(), planes[0].getRowStride(),
+                    planes[1].getBuffer(), planes[2].getBuffer(),
+                    planes[1].getRowStride(), planes[1].getPixelStride(),
+                    region.left, region.top, region.width, region.height, bitmap);
+        } else {
+            frameConverter.copyRgbaRegion(planes[0].getBuffer(), planes[0].getRowStride(),
+                    region.left, region.top, region.width, region.height, bitmap);
+        }
+    }
+
+    private void copyToBitmap(ImageProxy imageProxy, Bitmap bitmap) {
+        ImageProxy.PlaneProxy[] planes = imageProxy.getPlanes();
+        if (imageProxy.getFormat() == ImageFormat.YUV_420_888) {
+            frameConverter.convertYuv(
+                    planes[0].getBuffer(), planes[0].getRowStride(),
+                    planes[1].getBuffer(), planes[2].getBuffer(),
+                    planes[1].getRowStride(), planes[1].getPixelStride(),
+                    bitmap);
+        } else {
+            frameConverter.copyRgba(planes[0].getBuffer(), planes[0].getRowStride(), bitmap);
+        }
+    }
+
+    // Runs inference on one video frame in VIDEO mode and returns its result,
+    // or null when no landmarker is set up. Landmarks come back in the
+    // coordinates of the unrotated frame. Timestamps must increase from call
+    // to call for the lifetime of the landmarker.
+    public FaceLandmarkerResult detectVideoFrame(MPImage mpImage, int rotationDegrees, long timestampMs) {
+        if (runningMode != RunningMode.VIDEO) {
+            throw new IllegalArgumentException(
+                    "Attempting to call detectVideoFrame while not using RunningMode.VIDEO"
+            );
+        }
+        synchronized (landmarkerLock) {
+            if (faceLandmarker == null) {
+                return null;
+            }
+            return faceLandmarker.detectForVideo(mpImage, rotationOptions[(rotationDegrees / 90) & 3], timestampMs);
+        }
+    }
 
-        detectAsync(mpImage, frameTime);
+    // Runs inference on one still image in IMAGE mode and returns its result,
+    // or null when no landmarker is set up.
+    public FaceLandmarkerResult detectImage(MPImage mpImage, int rotationDegrees) {
+        if (runningMode != RunningMode.IMAGE) {
+            throw new IllegalArgumentException(
+                    "Attempting to call detectImage while not using RunningMode.IMAGE"
+            );
+        }
+        synchronized (landmarkerLock) {
+            if (faceLandmarker == null) {
+                return null;
+            }
+            return faceLandmarker.detect(mpImage, rotationOptions[(rotationDegrees / 90) & 3]);
+        }
     }
+
     @VisibleForTesting
     public void detectAsync(MPImage mpImage, long frameTime) {
-        if (faceLandmarker != null) {
-            faceLandmarker.detectAsync(mpImage, frameTime);
-            // As we're using running mode LIVE_STREAM, the landmark result will
-            // be returned in returnLivestreamResult function
+        synchronized (landmarkerLock) {
+            if (faceLandmarker != null) {
+                long submitStart = System.nanoTime();
+                // Counted first: the result may arrive before detectAsync returns.
+                admissionController.onSubmitted(frameTime);
+                try {
+                    faceLandmarker.detectAsync(mpImage, frameTime);
+                } catch (RuntimeException e) {
+                    admissionController.onSubmitFailed(frameTime);
+                    throw e;
+                }
+                pipelineMetrics.recordSince(PipelineMetrics.STAGE_SUBMIT, submitStart);
+                // As we're using running mode LIVE_STREAM, the landmark result will
+                // be returned in returnLivestreamResult function
+            }
         }
     }
-    private void returnLivestreamResult(FaceLandmarkerResult result, MPImage input) {
-        if (result.faceLandmarks().size() > 0) {
-            long finishTimeMs = SystemClock.uptimeMillis();
-            long inferenceTime = finishTimeMs - result.timestampMs();
 
+    public void detectAsync(MPImage mpImage, ImageProcessingOptions imageProcessingOptions, long frameTime) {
+        synchronized (landmarkerLock) {
+            if (faceLandmarker != null) {
+                long submitStart = System.nanoTime();
+                admissionController.onSubmitted(frameTime);
+                try {
+                    faceLandmarker.detectAsync(mpImage, imageProcessingOptions, frameTime);
+                } catch (RuntimeException e) {
+                    admissionController.onSubmitFailed(frameTime);
+                    throw e;
+                }
+                pipelineMetrics.recordSince(PipelineMetrics.STAGE_SUBMIT, submitStart);
+            }
+        }
+    }
+    private void returnLivestreamResult(FaceLandmarkerResult result, MPImage input, CountDownLatch warmUpLatch) {
+        if (result.timestampMs() == WARM_UP_TIMESTAMP_MS) {
+            warmUpLatch.countDown();
+            return;
+        }
+        long resultTimeNanos = System.nanoTime();
+        long sinceSetupMs = initMetrics.onResult(SystemClock.uptimeMillis());
+        if (sinceSetupMs >= 0) {
+            Log.i(TAG, "First result " + sinceSetupMs + " ms after setup; " + initMetrics.describe());
+        }
+        // MediaPipe is done with this frame (and any older dropped ones).
+        resultFrameInfo.reset();
+        if (inFlightFrames.completeUpTo(result.timestampMs(), resultFrameInfo)) {
+            long serviceNanos = resultTimeNanos - resultFrameInfo.submitTimeNanos;
+            pipelineMetrics.record(PipelineMetrics.STAGE_RESULT, serviceNanos);
+            outputDemand.recordInference(landmarkerOutputs, serviceNanos / 1e6f);
+        }
+        admissionController.onCompleted(result.timestampMs(), SystemClock.uptimeMillis());
+        if (pipelineScheduler != null) {
+            synchronized (completionMonitor) {
+                completionMonitor.notifyAll();
+            }
+        }
+        int rotationDegrees = resultFrameInfo.rotationDegrees;
+        boolean swapsAxes = rotationDegrees == 90 || rotationDegrees == 270;
+
+        long finishTimeMs = SystemClock.uptimeMillis();
+        long inferenceTime = finishTimeMs - result.timestampMs();
+        // A cropped input stands for the whole camera frame.
+        int sourceWidth = resultFrameInfo.sourceWidth > 0 ? resultFrameInfo.sourceWidth : input.getWidth();
+        int sourceHeight = resultFrameInfo.sourceHeight > 0 ? resultFrameInfo.sourceHeight : input.getHeight();
+        int inputImageHeight = swapsAxes ? sourceWidth : sourceHeight;
+        int inputImageWidth = swapsAxes ? sourceHeight : sourceWidth;
+
+        if (deliversLandmarkFrames()) {
+            // Flatten once here so no consumer walks the boxed result. Empty
+            // results take the same path to stay in order.
+            LandmarkFrame frame = landmarkFramePool.acquire();
+            frame.setResult(result);
+            if (resultFrameInfo.isCropped()) {
+                frame.mapFromRegion(resultFrameInfo.regionLeft, resultFrameInfo.regionTop,
+                        resultFrameInfo.regionWidth, resultFrameInfo.regionHeight);
+            }
+            roiTracker.onResult(frame.getLandmarks(), frame.getFaceOffsets(), frame.getFaceCount(),
+                    resultFrameInfo.regionLeft, resultFrameInfo.regionTop,
+                    resultFrameInfo.regionWidth, resultFrameInfo.regionHeight);
+            frame.setFrameInfo(inferenceTime, inputImageHeight, inputImageWidth, rotationDegrees,
+                    resultFrameInfo.mirrored, resultFrameInfo.cameraTimestampNanos, resultTimeNanos);
+            postFrame(frame);
+            return;
+        }
+
+        if (result.faceLandmarks().size() > 0) {
             if (faceLandmarkerHelperListener != null) {
                 faceLandmarkerHelperListener.onResults(
                         new ResultBundle(
                                 result,
                                 inferenceTime,
-                                input.getHeight(),
-                                input.getWidth()
+                                inputImageHeight,
+                                inputImageWidth,
+                                rotationDegrees,
+                                resultFrameInfo.mirrored,
+                                resultFrameInfo.cameraTimestampNanos,
+                                resultTimeNanos
                         )
                 );
             }
@@ -319,7 +1177,61 @@ public class FaceLandmarkerHelper {
         }
     }
 
-    private void returnLivestreamError(RuntimeException error) {
+    // Delivers frame on the post-processing stage when there is one, which
+    // frees the calling (MediaPipe or conversion) thread.
+    private void postFrame(LandmarkFrame frame) {
+        PipelineScheduler scheduler = pipelineScheduler;
+        if (scheduler == null) {
+            deliverFrame(frame);
+            return;
+        }
+        LandmarkFrame displaced = postProcessMailbox.post(frame);
+        if (displaced != null) {
+            displaced.release();
+        }
+        if (postProcessScheduled.compareAndSet(false, true)
+                && !scheduler.offer(PipelineScheduler.STAGE_POST_PROCESSING, postProcessTask)) {
+            postProcessScheduled.set(false);
+            LandmarkFrame undelivered = postProcessMailbox.take();
+            if (undelivered != null) {
+                undelivered.release();
+            }
+        }
+    }
+
+    // Hands frame to the listener, keeps it for reuse and releases it.
+    private void deliverFrame(LandmarkFrame frame) {
+        rememberLastDelivered(frame);
+        if (frame.getFaceCount() > 0) {
+            faceLandmarkerHelperListener.onResults(frame);
+        } else {
+            faceLandmarkerHelperListener.onEmpty();
+        }
+        frame.release();
+    }
+
+    // warmUpLatch belongs to the landmarker that failed. Until it is counted
+    // down that landmarker has seen nothing but its warm-up frame.
+    private void returnLivestreamError(RuntimeException error, CountDownLatch warmUpLatch) {
+        if (warmUpLatch.getCount() > 0) {
+            // The landmarker is swapped in regardless and real frames report
+            // their own errors.
+            Log.w(TAG, "Error while warming up the landmarker", error);
+            warmUpLatch.countDown();
+            return;
+        }
+        // No result will come for the failed frame, and the camera sends no
+        // new one while its ImageProxy is held. Frames fail in submission
+        // order, so the oldest pending one is retired here.
+        long failedTime = inFlightFrames.failOldest();
+        if (failedTime >= 0) {
+            admissionController.onSubmitFailed(failedTime);
+        }
+        if (pipelineScheduler != null) {
+            synchronized (completionMonitor) {
+                completionMonitor.notifyAll();
+            }
+        }
         if (faceLandmarkerHelperListener != null) {
             faceLandmarkerHelperListener.onError(
                     error.getMessage() != null ? error.getMessage() : "An unknown error has occurred"
@@ -327,17 +1239,104 @@ public class FaceLandmarkerHelper {
         }
     }
 
+    /**
+     * A converted frame waiting on the submission stage for the landmarker to
+     * finish the previous one. Reused for every frame.
+     */
+    private class SubmitTask implements Runnable {
+        private final InFlightFrames.FrameInfo info = new InFlightFrames.FrameInfo();
+        private MPImage mpImage;
+        private Bitmap bitmap;
+        private ImageProcessingOptions options;
+        private long frameTime;
+
+        void set(MPImage mpImage, Bitmap bitmap, ImageProcessingOptions options, long frameTime,
+                 InFlightFrames.FrameInfo frameInfo) {
+            this.mpImage = mpImage;
+            this.bitmap = bitmap;
+            this.options = options;
+            this.frameTime = frameTime;
+            info.set(frameInfo);
+        }
+
+        @Override
+        public void run() {
+            try {
+                awaitLandmarkerIdle();
+            } catch (InterruptedException e) {
+                // Shutting down.
+                Thread.currentThread().interrupt();
+                drop();
+                return;
+            }
+            info.submitTimeNanos = System.nanoTime();
+            if (!inFlightFrames.add(frameTime, bitmap, info)) {
+                drop();
+                return;
+            }
+            MPImage image = mpImage;
+            clear();
+            try {
+                submit(image, options, frameTime);
+            } catch (RuntimeException e) {
+                // The frame is retired with the next result or clear.
+                Log.e(TAG, "Submitting frame " + frameTime + " failed", e);
+            } finally {
+                options = null;
+                submissionPending.set(false);
+            }
+        }
+
+        // Gives the frame back without submitting it.
+        void drop() {
+            bitmapPool.release(bitmap);
+            clear();
+            options = null;
+            submissionPending.set(false);
+        }
+
+        private void clear() {
+            mpImage = null;
+            bitmap = null;
+        }
+    }
+
     public static class ResultBundle {
         private final FaceLandmarkerResult result;
         private final long inferenceTime;
         private final int inputImageHeight;
         private final int inputImageWidth;
+        // Clockwise rotation and horizontal mirror that take the normalized
+        // landmarks in result to display space. Both are identity when the
+        // frame was already rendered upright before inference.
+        private final int rotationDegrees;
+        private final boolean mirrored;
+        // Camera sensor timestamp of the frame and the moment its result
+        // arrived, both on the System.nanoTime() base. 0 when unknown.
+        private final long cameraTimestampNanos;
+        private final long resultTimeNanos;
 
         public ResultBundle(FaceLandmarkerResult result, long inferenceTime, int inputImageHeight, int inputImageWidth) {
+            this(result, inferenceTime, inputImageHeight, inputImageWidth, 0, false);
+        }
+
+        public ResultBundle(FaceLandmarkerResult result, long inferenceTime, int inputImageHeight, int inputImageWidth,
+                            int rotationDegrees, boolean mirrored) {
+            this(result, inferenceTime, inputImageHeight, inputImageWidth, rotationDegrees, mirrored, 0, 0);
+        }
+
+        // inputImageHeight and inputImageWidth are in display space, i.e. after
+        // rotationDegrees has been applied.
+        public ResultBundle(FaceLandmarkerResult result, long inferenceTime, int inputImageHeight, int inputImageWidth,
+                            int rotationDegrees, boolean mirrored, long cameraTimestampNanos, long resultTimeNanos) {
             this.result = result;
             this.inferenceTime = inferenceTime;
             this.inputImageHeight = inputImageHeight;
             this.inputImageWidth = inputImageWidth;
+            this.rotationDegrees = rotationDegrees;
+            this.mirrored = mirrored;
+            this.cameraTimestampNanos = cameraTimestampNanos;
+            this.resultTimeNanos = resultTimeNanos;
         }
 
         public FaceLandmarkerResult getResult() {
@@ -355,6 +1354,22 @@ public class FaceLandmarkerHelper {
         public int getInputImageWidth() {
             return inputImageWidth;
         }
+
+        public int getRotationDegrees() {
+            return rotationDegrees;
+        }
+
+        public boolean isMirrored() {
+            return mirrored;
+        }
+
+        public long getCameraTimestampNanos() {
+            return cameraTimestampNanos;
+        }
+
+        public long getResultTimeNanos() {
+            return resultTimeNanos;
+        }
     }
 
 
@@ -411,6 +1426,16 @@ public class FaceLandmarkerHelper {
 
         void onResults(ResultBundle resultBundle);
         void onEmpty();
+
+        // Live stream results as a pooled LandmarkFrame, delivered instead of
+        // onResults(ResultBundle) when prefersLandmarkFrames returns true. The
+        // frame is released after this returns; retain it to keep it longer.
+        default void onResults(LandmarkFrame frame) {
+        }
+
+        default boolean prefersLandmarkFrames() {
+            return false;
+        }
     }
 
 
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import java.util.Locale;
+
+/**
+ * Picks the part of the next camera frame worth sending to the landmarker.
+ *
+ * While faces are tracked, the next frame is cropped to a square around the
+ * previous result's landmark bounds, padded for motion, and downscaled to at
+ * most the target size while it is copied. The full frame is used instead
+ * when nothing is tracked, when a face came close to the region's border or
+ * fewer faces than before were found (the landmarker reports no per-face
+ * confidence, so losing a face is the signal), when the region would cover
+ * most of the frame anyway, and now and then while there is room for more
+ * faces, so new ones are picked up.
+ *
+ * Regions are in the pixels of the unrotated camera buffer; landmarks are
+ * normalized to the full frame. Called from the conversion and result
+ * threads.
+ */
+public class FaceRoiTracker {
+    public static final int DEFAULT_TARGET_SIZE = 320;
+    // Side of the region relative to the larger side of the face bounds.
+    static final float REGION_SCALE = 2f;
+    // A region covering more of the frame than this saves too little.
+    static final float MAX_REGION_AREA_FRACTION = 0.6f;
+    // How close, as a fraction of the region size, a face may come to the
+    // region's border before the next frame is a full one.
+    static final float EDGE_MARGIN = 0.04f;
+    // With room for more faces, every this many frames is a full frame.
+    static final int FULL_FRAME_INTERVAL = 30;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private boolean enabled = true;
+    private int maxFaces = 1;
+    private int targetSize = DEFAULT_TARGET_SIZE;
+
+    // Union of the last result's face bounds, normalized to the full frame.
+    private boolean tracking = false;
+    private int trackedFaces = 0;
+    private float minX;
+    private float minY;
+    private float maxX;
+    private float maxY;
+    private int framesSinceFull = 0;
+
+    private long regionFrames = 0;
+    private long fullFrames = 0;
+    private long lostCount = 0;
+    private long totalSavedBytes = 0;
+    private long lastSavedBytes = 0;
+
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            tracking = false;
+        }
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized void setMaxFaces(int maxFaces) {
+        this.maxFaces = Math.max(1, maxFaces);
+    }
+
+    // Long edge of the copied region; larger regions are downscaled to it.
+    public synchronized void setTargetSize(int targetSize) {
+        if (targetSize <= 0) {
+            throw new IllegalArgumentException("targetSize must be positive.");
+        }
+        this.targetSize = targetSize;
+    }
+
+    // Forgets the tracked faces, e.g. after the landmarker changed.
+    public synchronized void reset() {
+        tracking = false;
+        trackedFaces = 0;
+    }
+
+    // Fills out with the part of a frameWidth x frameHeight frame to copy and
+    // the size to copy it to. Returns false, with out covering the whole
+    // frame, when the full frame should be used.
+    public synchronized boolean nextRegion(int frameWidth, int frameHeight, Region out) {
+        if (!enabled || !tracking
+                || (trackedFaces < maxFaces && framesSinceFull >= FULL_FRAME_INTERVAL)) {
+            return useFullFrame(frameWidth, frameHeight, out);
+        }
+        float centerX = (minX + maxX) / 2f * frameWidth;
+        float centerY = (minY + maxY) / 2f * frameHeight;
+        float faceSize = Math.max((maxX - minX) * frameWidth, (maxY - minY) * frameHeight);
+        int frameMin = Math.min(frameWidth, frameHeight);
+        // Small faces keep a region of at least the target size, so they are
+        // never upscaled.
+        int side = Math.round(Math.max(faceSize * REGION_SCALE, Math.min(targetSize, frameMin)));
+        if (side > frameMin || (float) side * side > MAX_REGION_AREA_FRACTION * frameWidth * frameHeight) {
+            return useFullFrame(frameWidth, frameHeight, out);
+        }
+        out.left = clamp(Math.round(centerX - side / 2f), 0, frameWidth - side);
+        out.top = clamp(Math.round(centerY - side / 2f), 0, frameHeight - side);
+        out.width = side;
+        out.height = side;
+        int outputSide = Math.min(side, targetSize);
+        out.outputWidth = outputSide;
+        out.outputHeight = outputSide;
+
+        framesSinceFull++;
+        regionFrames++;
+        lastSavedBytes = ((long) frameWidth * frameHeight - (long) outputSide * outputSide) * BYTES_PER_PIXEL;
+        totalSavedBytes += lastSavedBytes;
+        return true;
+    }
+
+    private boolean useFullFrame(int frameWidth, int frameHeight, Region out) {
+        out.left = 0;
+        out.top = 0;
+        out.width = frameWidth;
+        out.height = frameHeight;
+        out.outputWidth = frameWidth;
+        out.outputHeight = frameHeight;
+        framesSinceFull = 0;
+        fullFrames++;
+        lastSavedBytes = 0;
+        return false;
+    }
+
+    // Feeds the landmarks of a result, x, y, z per landmark and already
+    // mapped to the full frame. The region the frame was cropped to is given
+    // normalized to the full frame, (0, 0, 1, 1) for a full frame.
+    public synchronized void onResult(float[] xyz, int[] faceOffsets, int faceCount,
+                                      float regionLeft, float regionTop, float regionWidth, float regionHeight) {
+        if (faceCount == 0) {
+            lose();
+            return;
+        }
+        boolean cropped = regionWidth < 1f || regionHeight < 1f;
+        if (cropped && faceCount < trackedFaces) {
+            // A face may have left the region.
+            lose();
+            return;
+        }
+        float boundsMinX = Float.MAX_VALUE;
+        float boundsMinY = Float.MAX_VALUE;
+        float boundsMaxX = -Float.MAX_VALUE;
+        float boundsMaxY = -Float.MAX_VALUE;
+        for (int i = faceOffsets[0]; i < faceOffsets[faceCount]; i++) {
+            float x = xyz[3 * i];
+            float y = xyz[3 * i + 1];
+            boundsMinX = Math.min(boundsMinX, x);
+            boundsMaxX = Math.max(boundsMaxX, x);
+            boundsMinY = Math.min(boundsMinY, y);
+            boundsMaxY = Math.max(boundsMaxY, y);
+        }
+        if (cropped && nearRegionBorder(boundsMinX, boundsMinY, boundsMaxX, boundsMaxY,
+                regionLeft, regionTop, regionWidth, regionHeight)) {
+            lose();
+            return;
+        }
+        tracking = true;
+        trackedFaces = faceCount;
+        minX = Math.max(0f, boundsMinX);
+        minY = Math.max(0f, boundsMinY);
+        maxX = Math.min(1f, boundsMaxX);
+        maxY = Math.min(1f, boundsMaxY);
+    }
+
+    // Borders that coincide with the frame's own don't count; nothing is
+    // lost beyond them.
+    private static boolean nearRegionBorder(float minX, float minY, float maxX, float maxY,
+                                            float left, float top, float width, float height) {
+        float marginX = EDGE_MARGIN * width;
+        float marginY = EDGE_MARGIN * height;
+        float right = left + width;
+        float bottom = top + height;
+        return (left > 0f && minX < left + marginX)
+                || (top > 0f && minY < top + marginY)
+                || (right < 1f && maxX > right - marginX)
+                || (bottom < 1f && maxY > bottom - marginY);
+    }
+
+    private void lose() {
+        if (tracking) {
+            lostCount++;
+        }
+        tracking = false;
+        trackedFaces = 0;
+    }
+
+    public synchronized boolean isTracking() {
+        return tracking;
+    }
+
+    public synchronized long getLastSavedBytes() {
+        return lastSavedBytes;
+    }
+
+    // Bytes not copied per frame, averaged over every frame including full ones.
+    public synchronized long getAverageSavedBytes() {
+        long frames = regionFrames + fullFrames;
+        return frames > 0 ? totalSavedBytes / frames : 0;
+    }
+
+    public synchronized String describe() {
+        long frames = regionFrames + fullFrames;
+        return String.format(Locale.US, "roi %d/%d frames, saved %d KB/frame (last %d KB), lost %d",
+                regionFrames, frames, getAverageSavedBytes() / 1024, lastSavedBytes / 1024, lostCount);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * A rectangle of the camera buffer and the size it is copied to. Reused
+     * for every frame.
+     */
+    public static class Region {
+        public int left;
+        public int top;
+        public int width;
+        public int height;
+        public int outputWidth;
+        public int outputHeight;
+    }
+}
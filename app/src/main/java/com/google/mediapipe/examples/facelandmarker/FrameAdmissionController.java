@@ -0,0 +1,186 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+/**
+ * Decides, before any pixel is touched, whether a live stream frame should be
+ * converted and submitted to the landmarker.
+ *
+ * Frames are skipped while the number of in-flight requests is at the limit,
+ * or when they arrive faster than the landmarker has recently been able to
+ * serve them. Service time is an exponential moving average of the delay
+ * between submit and result. Requests that never get a result (MediaPipe drops
+ * frames silently when it is busy) expire after a timeout derived from it.
+ * An optional rate cap holds the admission rate below what the landmarker
+ * could sustain, trading inference compute for battery and heat.
+ *
+ * All times are in milliseconds on the same clock as the submitted timestamps.
+ */
+public class FrameAdmissionController {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 1;
+    // Admit slightly faster than the measured service rate so the landmarker
+    // never idles waiting for the next frame.
+    private static final float INTERVAL_FACTOR = 0.9f;
+    private static final float LATENCY_SMOOTHING = 0.2f;
+    private static final long MIN_STALE_TIMEOUT_MS = 250;
+    private static final int STALE_TIMEOUT_FACTOR = 4;
+    private static final int MAX_TRACKED = 8;
+
+    private final long[] inFlight = new long[MAX_TRACKED];
+    private int inFlightCount = 0;
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    // Minimum time between admitted frames from the rate cap, 0 when uncapped.
+    private long minIntervalMs = 0;
+
+    private float latencyEmaMs = 0f;
+    private long lastAdmitMs = Long.MIN_VALUE;
+
+    private long admittedCount = 0;
+    private long skippedCount = 0;
+    private long expiredCount = 0;
+
+    public synchronized void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = Math.max(1, Math.min(maxInFlight, MAX_TRACKED));
+    }
+
+    public synchronized int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    // Caps admissions at maxRateHz frames per second; 0 or less removes the cap.
+    public synchronized void setMaxRateHz(float maxRateHz) {
+        minIntervalMs = maxRateHz > 0f ? (long) (1000f / maxRateHz) : 0;
+    }
+
+    public synchronized float getMaxRateHz() {
+        return minIntervalMs > 0 ? 1000f / minIntervalMs : 0f;
+    }
+
+    // Returns true when the frame arriving at nowMs should be processed. Every
+    // call is counted as either admitted or skipped.
+    public synchronized boolean tryAdmit(long nowMs) {
+        expireStale(nowMs);
+        if (inFlightCount >= maxInFlight) {
+            skippedCount++;
+            return false;
+        }
+        if (lastAdmitMs != Long.MIN_VALUE && nowMs - lastAdmitMs < getTargetIntervalMs()) {
+            skippedCount++;
+            return false;
+        }
+        lastAdmitMs = nowMs;
+        admittedCount++;
+        return true;
+    }
+
+    // Records that the admitted frame is being handed to the landmarker. Must
+    // be called before the hand-off, so its result can't arrive first.
+    public synchronized void onSubmitted(long timestampMs) {
+        if (inFlightCount == inFlight.length) {
+            removeOldest(1);
+            expiredCount++;
+        }
+        inFlight[inFlightCount++] = timestampMs;
+    }
+
+    // Takes back onSubmitted for a frame the landmarker refused or failed on.
+    public synchronized void onSubmitFailed(long timestampMs) {
+        for (int i = inFlightCount - 1; i >= 0; i--) {
+            if (inFlight[i] == timestampMs) {
+                System.arraycopy(inFlight, i + 1, inFlight, i, inFlightCount - i - 1);
+                inFlightCount--;
+                return;
+            }
+        }
+    }
+
+    // Records the result for timestampMs. Older requests still in flight were
+    // dropped by the landmarker and are retired as well.
+    public synchronized void onCompleted(long timestampMs, long nowMs) {
+        int completed = 0;
+        boolean found = false;
+        while (completed < inFlightCount && inFlight[completed] <= timestampMs) {
+            found |= inFlight[completed] == timestampMs;
+            completed++;
+        }
+        removeOldest(completed);
+        if (found) {
+            float latency = nowMs - timestampMs;
+            latencyEmaMs = latencyEmaMs == 0f
+                    ? latency
+                    : latencyEmaMs + LATENCY_SMOOTHING * (latency - latencyEmaMs);
+        }
+    }
+
+    // Forgets every in-flight request, e.g. when the landmarker is closed.
+    public synchronized void reset() {
+        inFlightCount = 0;
+        lastAdmitMs = Long.MIN_VALUE;
+    }
+
+    public synchronized long getTargetIntervalMs() {
+        return Math.max(minIntervalMs, (long) (latencyEmaMs * INTERVAL_FACTOR / maxInFlight));
+    }
+
+    public synchronized float getLatencyEmaMs() {
+        return latencyEmaMs;
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlightCount;
+    }
+
+    public synchronized long getAdmittedCount() {
+        return admittedCount;
+    }
+
+    public synchronized long getSkippedCount() {
+        return skippedCount;
+    }
+
+    public synchronized long getExpiredCount() {
+        return expiredCount;
+    }
+
+    private void expireStale(long nowMs) {
+        long timeout = Math.max(MIN_STALE_TIMEOUT_MS, (long) (latencyEmaMs * STALE_TIMEOUT_FACTOR));
+        int stale = 0;
+        while (stale < inFlightCount && nowMs - inFlight[stale] > timeout) {
+            stale++;
+        }
+        removeOldest(stale);
+        expiredCount += stale;
+    }
+
+    private void removeOldest(int n) {
+        if (n <= 0) {
+            return;
+        }
+        System.arraycopy(inFlight, n, inFlight, 0, inFlightCount - n);
+        inFlightCount -= n;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FrameAdmissionController{" +
+                "admitted=" + admittedCount +
+                ", skipped=" + skippedCount +
+                ", expired=" + expiredCount +
+                ", inFlight=" + inFlightCount +
+                ", latencyEmaMs=" + latencyEmaMs +
+                '}';
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import android.graphics.Bitmap;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Copies camera planes into ARGB_8888 bitmaps while honoring row and pixel
+ * strides. Scratch buffers are grown on demand and reused, so a converter
+ * must only be used from one thread at a time.
+ */
+public class FrameConverter {
+    private ByteBuffer packedRgba;
+    private int[] argb;
+    // Source column of every output column of a region copy.
+    private int[] sourceColumns;
+    // One row of each YUV plane, bulk-copied out of the direct buffers so the
+    // per-pixel loop reads arrays instead of calling ByteBuffer.get.
+    private byte[] yRowBytes;
+    private byte[] uRowBytes;
+    private byte[] vRowBytes;
+
+    // Copies an RGBA_8888 plane into bitmap. Rows padded beyond width * 4 bytes
+    // are repacked first; copyPixelsFromBuffer assumes tightly packed rows.
+    public void copyRgba(ByteBuffer plane, int rowStride, Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int packedRowBytes = width * 4;
+        plane.rewind();
+        if (rowStride == packedRowBytes) {
+            bitmap.copyPixelsFromBuffer(plane);
+            return;
+        }
+
+        int packedSize = packedRowBytes * height;
+        if (packedRgba == null || packedRgba.capacity() < packedSize) {
+            packedRgba = ByteBuffer.allocateDirect(packedSize).order(ByteOrder.nativeOrder());
+        }
+        packedRgba.clear();
+        int limit = plane.limit();
+        for (int row = 0; row < height; row++) {
+            int start = row * rowStride;
+            plane.limit(start + packedRowBytes);
+            plane.position(start);
+            packedRgba.put(plane);
+            plane.limit(limit);
+        }
+        packedRgba.flip();
+        bitmap.copyPixelsFromBuffer(packedRgba);
+    }
+
+    // Converts a YUV_420_888 frame (BT.601, limited range) into bitmap.
+    public void convertYuv(ByteBuffer yPlane, int yRowStride,
+                           ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                           Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        ensureArgb(width * height);
+        int uvRowLength = ((width - 1) >> 1) * uvPixelStride + 1;
+        ensureRows(width, uvRowLength);
+
+        int out = 0;
+        for (int row = 0; row < height; row++) {
+            readRow(yPlane, row * yRowStride, yRowBytes, width);
+            if ((row & 1) == 0) {
+                // Both rows of a pair share their chroma row.
+                int uvRow = (row >> 1) * uvRowStride;
+                readRow(uPlane, uvRow, uRowBytes, uvRowLength);
+                readRow(vPlane, uvRow, vRowBytes, uvRowLength);
+            }
+            for (int col = 0; col < width; col++) {
+                int uvIndex = (col >> 1) * uvPixelStride;
+                int y = (yRowBytes[col] & 0xff) - 16;
+                int u = (uRowBytes[uvIndex] & 0xff) - 128;
+                int v = (vRowBytes[uvIndex] & 0xff) - 128;
+                if (y < 0) {
+                    y = 0;
+                }
+                int y1192 = 1192 * y;
+                int r = y1192 + 1634 * v;
+                int g = y1192 - 833 * v - 400 * u;
+                int b = y1192 + 2066 * u;
+                r = r < 0 ? 0 : (r > 262143 ? 262143 : r);
+                g = g < 0 ? 0 : (g > 262143 ? 262143 : g);
+                b = b < 0 ? 0 : (b > 262143 ? 262143 : b);
+                argb[out++] = 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+            }
+        }
+        yPlane.rewind();
+        uPlane.rewind();
+        vPlane.rewind();
+        bitmap.setPixels(argb, 0, width, 0, 0, width, height);
+    }
+
+    // Copies the width x height region at (left, top) of an RGBA_8888 plane
+    // into bitmap, scaled to the bitmap's size by nearest neighbour sampling.
+    // Only the sampled pixels are read.
+    public void copyRgbaRegion(ByteBuffer plane, int rowStride, int left, int top, int width, int height,
+                               Bitmap bitmap) {
+        int outWidth = bitmap.getWidth();
+        int outHeight = bitmap.getHeight();
+        ensureArgb(outWidth * outHeight);
+        int[] columns = sampleColumns(left, width, outWidth);
+
+        int out = 0;
+        for (int row = 0; row < outHeight; row++) {
+            int rowStart = (top + row * height / outHeight) * rowStride;
+            for (int col = 0; col < outWidth; col++) {
+                int index = rowStart + columns[col] * 4;
+                int r = plane.get(index) & 0xff;
+                int g = plane.get(index + 1) & 0xff;
+                int b = plane.get(index + 2) & 0xff;
+                int a = plane.get(index + 3) & 0xff;
+                argb[out++] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+        }
+        bitmap.setPixels(argb, 0, outWidth, 0, 0, outWidth, outHeight);
+    }
+
+    // Converts the width x height region at (left, top) of a YUV_420_888
+    // frame into bitmap, scaled like copyRgbaRegion.
+    public void convertYuvRegion(ByteBuffer yPlane, int yRowStride,
+                                 ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                                 int left, int top, int width, int height, Bitmap bitmap) {
+        int outWidth = bitmap.getWidth();
+        int outHeight = bitmap.getHeight();
+        ensureArgb(outWidth * outHeight);
+        int[] columns = sampleColumns(left, width, outWidth);
+        // Only the region's span of each row is copied out.
+        int uvLeft = left >> 1;
+        int uvRowLength = (((left + width - 1) >> 1) - uvLeft) * uvPixelStride + 1;
+        ensureRows(width, uvRowLength);
+
+        int out = 0;
+        int lastChromaRow = -1;
+        for (int row = 0; row < outHeight; row++) {
+            int sourceRow = top + row * height / outHeight;
+            readRow(yPlane, sourceRow * yRowStride + left, yRowBytes, width);
+            if (sourceRow >> 1 != lastChromaRow) {
+                lastChromaRow = sourceRow >> 1;
+                int uvRow = lastChromaRow * uvRowStride + uvLeft * uvPixelStride;
+                readRow(uPlane, uvRow, uRowBytes, uvRowLength);
+                readRow(vPlane, uvRow, vRowBytes, uvRowLength);
+            }
+            for (int col = 0; col < outWidth; col++) {
+                int sourceCol = columns[col];
+                int uvIndex = ((sourceCol >> 1) - uvLeft) * uvPixelStride;
+                int y = (yRowBytes[sourceCol - left] & 0xff) - 16;
+                int u = (uRowBytes[uvIndex] & 0xff) - 128;
+                int v = (vRowBytes[uvIndex] & 0xff) - 128;
+                if (y < 0) {
+                    y = 0;
+                }
+                int y1192 = 1192 * y;
+                int r = y1192 + 1634 * v;
+                int g = y1192 - 833 * v - 400 * u;
+                int b = y1192 + 2066 * u;
+                r = r < 0 ? 0 : (r > 262143 ? 262143 : r);
+                g = g < 0 ? 0 : (g > 262143 ? 262143 : g);
+                b = b < 0 ? 0 : (b > 262143 ? 262143 : b);
+                argb[out++] = 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+            }
+        }
+        yPlane.rewind();
+        uPlane.rewind();
+        vPlane.rewind();
+        bitmap.setPixels(argb, 0, outWidth, 0, 0, outWidth, outHeight);
+    }
+
+    private int[] sampleColumns(int left, int width, int outWidth) {
+        if (sourceColumns == null || sourceColumns.length < outWidth) {
+            sourceColumns = new int[outWidth];
+        }
+        for (int col = 0; col < outWidth; col++) {
+            sourceColumns[col] = left + col * width / outWidth;
+        }
+        return sourceColumns;
+    }
+
+    private void ensureRows(int yLength, int uvLength) {
+        if (yRowBytes == null || yRowBytes.length < yLength) {
+            yRowBytes = new byte[yLength];
+        }
+        if (uRowBytes == null || uRowBytes.length < uvLength) {
+            uRowBytes = new byte[uvLength];
+            vRowBytes = new byte[uvLength];
+        }
+    }
+
+    // Copies length bytes at offset of plane into row in one call.
+    private static void readRow(ByteBuffer plane, int offset, byte[] row, int length) {
+        plane.position(offset);
+        plane.get(row, 0, length);
+    }
+
+    private void ensureArgb(int size) {
+        if (argb == null || argb.length < size) {
+            argb = new int[size];
+        }
+    }
+
+    // Drops the scratch buffers; they are re-created on the next frame.
+    public void release() {
+        packedRgba = null;
+        argb = null;
+        sourceColumns = null;
+        yRowBytes = null;
+        uRowBytes = null;
+        vRowBytes = null;
+    }
+}
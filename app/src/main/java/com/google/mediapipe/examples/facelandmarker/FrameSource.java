@@ -0,0 +1,59 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import android.graphics.Bitmap;
+
+import androidx.camera.core.ImageProxy;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Where live stream frames come from.
+ *
+ * The camera is one source; others replay recorded frames or generate them,
+ * at a fixed rate or as fast as the pipeline takes them, so the pipeline can
+ * be measured beyond the camera's frame rate and on repeatable input. Every
+ * source hands its frames to the same sink, which feeds them through the
+ * usual conversion and inference path.
+ */
+public interface FrameSource {
+    // Starts delivering frames to sink on executor. A source can be started
+    // again after stop.
+    void start(Executor executor, FrameSink sink);
+
+    // Stops delivering. Frames already handed to the executor may still
+    // arrive.
+    void stop();
+
+    // Frames per second to produce, 0 for as fast as the sink takes them.
+    // Sources driven by hardware ignore it.
+    void setRateHz(float rateHz);
+
+    String describe();
+
+    /**
+     * Receives the frames of a FrameSource, one at a time.
+     */
+    interface FrameSink {
+        // A camera frame; the sink closes it.
+        void onImage(ImageProxy image);
+
+        // Any other frame. timestampNanos is when it was produced, on the
+        // System.nanoTime() base. The bitmap may be reused once this returns.
+        void onBitmap(Bitmap bitmap, long timestampNanos, int rotationDegrees);
+    }
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.mediapipe.framework.image.BitmapImageBuilder;
+import com.google.mediapipe.framework.image.MPImage;
+import com.google.mediapipe.tasks.vision.facelandmarker.FaceLandmarkerResult;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs IMAGE mode landmarkers over a batch of still images.
+ *
+ * A fixed pool of workers, each with its own landmarker, takes the images
+ * one at a time and decodes and processes them on its own thread. Results
+ * go through a bounded queue to the thread that called process, which hands
+ * them to the listener; when the listener falls behind, the workers wait
+ * for room instead of decoding ahead. So no more than one decoded image per
+ * worker and a few results per worker exist at any time, however long the
+ * batch. Images are decoded subsampled to what the landmarker can use (see
+ * ImageDecodePlan) into pooled bitmaps. With a LandmarkResultCache set,
+ * images seen before with the same configuration skip decoding and
+ * inference altogether. Landmarkers are created on first use and kept for
+ * later batches until close.
+ */
+public class ImageBatchProcessor {
+    private static final String TAG = "ImageBatchProcessor";
+    // Each landmarker holds its own graph and runs its own threads, so more
+    // instances than this mostly add memory.
+    public static final int MAX_WORKERS = 4;
+    // Results each worker may leave waiting for the listener.
+    private static final int RESULTS_PER_WORKER = 2;
+
+    /**
+     * Creates the landmarker helper for one worker, in RunningMode.IMAGE.
+     */
+    public interface HelperFactory {
+        FaceLandmarkerHelper create();
+    }
+
+    /**
+     * Receives the results of a batch, on the thread that called process,
+     * one image at a time in the order they complete.
+     */
+    public interface Listener {
+        // The image at index of the batch was processed. frame holds its
+        // faces, normalized to the image, and goes back to its pool after the
+        // call unless retained.
+        void onResult(int index, Uri uri, LandmarkFrame frame);
+
+        // done of total images have been handled, failures included.
+        default void onProgress(int done, int total) {
+        }
+
+        // The image at index could not be processed; the batch goes on. index
+        // is -1 and uri null when the whole batch failed.
+        void onError(int index, Uri uri, String error);
+    }
+
+    private final Context context;
+    private final HelperFactory helperFactory;
+    private final int workerCount;
+    // Idle helpers; created lazily up to workerCount.
+    private final BlockingQueue<FaceLandmarkerHelper> idleHelpers;
+    private final FaceLandmarkerHelper[] helpers;
+    private int createdHelpers = 0;
+    private final LandmarkFramePool framePool;
+    // One decode target per worker.
+    private final BitmapPool bitmapPool;
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private volatile LandmarkResultCache resultCache;
+
+    public ImageBatchProcessor(Context context, HelperFactory helperFactory, int workerCount) {
+        this.context = context;
+        this.helperFactory = helperFactory;
+        this.workerCount = Math.max(1, Math.min(workerCount, MAX_WORKERS));
+        this.idleHelpers = new ArrayBlockingQueue<>(this.workerCount);
+        this.helpers = new FaceLandmarkerHelper[this.workerCount];
+        // A frame per queued result, per worker filling one and for the
+        // listener.
+        this.framePool = new LandmarkFramePool(this.workerCount * (RESULTS_PER_WORKER + 1) + 1);
+        this.bitmapPool = new BitmapPool(this.workerCount);
+    }
+
+    // Workers for this device: half the cores, as each inference runs its
+    // own threads, within MAX_WORKERS.
+    public static int defaultWorkerCount() {
+        return Math.max(1, Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    // Looks images up in cache before decoding them and stores new results
+    // there. null turns caching off.
+    public void setResultCache(LandmarkResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    // Stops the running batch; images already being processed finish, and
+    // their results are dropped.
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    // Processes the images at uris with up to the given number of workers, at
+    // most getWorkerCount(), and returns once all are done or the batch was
+    // cancelled. The listener runs on the calling thread.
+    public ImageBatchStats process(List<Uri> uris, int workers, Listener listener) {
+        cancelled.set(false);
+        ImageBatchStats stats = new ImageBatchStats();
+        stats.onStarted(uris.size(), SystemClock.uptimeMillis());
+        if (uris.isEmpty()) {
+            stats.onFinished(SystemClock.uptimeMillis());
+            return stats;
+        }
+        int jobWorkers = Math.max(1, Math.min(Math.min(workers, workerCount), uris.size()));
+        BlockingQueue<Outcome> outcomes = new ArrayBlockingQueue<>(jobWorkers * RESULTS_PER_WORKER);
+        AtomicInteger nextIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(jobWorkers, runnable -> {
+            Thread thread = new Thread(runnable, "image-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < jobWorkers; i++) {
+            executor.execute(() -> runWorker(uris, nextIndex, outcomes));
+        }
+        executor.shutdown();
+
+        int done = 0;
+        int finishedWorkers = 0;
+        try {
+            // Drained until every worker is finished, also once cancelled, so
+            // none is left waiting for room.
+            while (finishedWorkers < jobWorkers) {
+                int pending = outcomes.size();
+                Outcome outcome = outcomes.take();
+                if (outcome == Outcome.END) {
+                    finishedWorkers++;
+                    continue;
+                }
+                if (cancelled.get()) {
+                    outcome.release();
+                    continue;
+                }
+                stats.onDelivering(pending + 1);
+                deliver(outcome, stats, listener);
+                listener.onProgress(++done, uris.size());
+            }
+        } catch (InterruptedException e) {
+            cancel();
+            executor.shutdownNow();
+            for (Outcome outcome; (outcome = outcomes.poll()) != null; ) {
+                outcome.release();
+            }
+            Thread.currentThread().interrupt();
+        }
+        stats.onFinished(SystemClock.uptimeMillis());
+        Log.i(TAG, jobWorkers + " workers: " + stats.describe());
+        return stats;
+    }
+
+    private void deliver(Outcome outcome, ImageBatchStats stats, Listener listener) {
+        long nowMs = SystemClock.uptimeMillis();
+        if (outcome.frame == null) {
+            stats.onFailed(nowMs);
+            listener.onError(outcome.index, outcome.uri, outcome.error);
+            if (outcome.index < 0) {
+                cancel();
+            }
+            return;
+        }
+        if (outcome.cached) {
+            stats.onCacheHit(outcome.decodeMs, outcome.frame.getFaceCount(), nowMs);
+        } else {
+            stats.onDecoded(outcome.sourcePixels, outcome.decodedPixels);
+            stats.onProcessed(outcome.decodeMs, outcome.inferenceMs, outcome.frame.getFaceCount(), nowMs);
+        }
+        try {
+            listener.onResult(outcome.index, outcome.uri, outcome.frame);
+        } finally {
+            outcome.frame.release();
+        }
+    }
+
+    private void runWorker(List<Uri> uris, AtomicInteger nextIndex, BlockingQueue<Outcome> outcomes) {
+        FaceLandmarkerHelper helper = null;
+        try {
+            try {
+                helper = takeHelper();
+            } catch (RuntimeException | Error e) {
+                Log.e(TAG, "Could not create a face landmarker", e);
+            }
+            if (helper == null || helper.isClose()) {
+                outcomes.put(Outcome.failed(-1, null, "Face Landmarker failed to initialize."));
+                return;
+            }
+            while (!helper.isClose() && !cancelled.get()) {
+                int index = nextIndex.getAndIncrement();
+                if (index >= uris.size()) {
+                    break;
+                }
+                Uri uri = uris.get(index);
+                Outcome outcome;
+                try {
+                    outcome = processImage(helper, index, uri);
+                } catch (RuntimeException | Error e) {
+                    // One bad image must not take the worker down with it.
+                    Log.w(TAG, "Could not process " + uri, e);
+                    outcome = Outcome.failed(index, uri, "Processing failed: " + e);
+                }
+                try {
+                    // Waits while the listener is behind.
+                    outcomes.put(outcome);
+                } catch (InterruptedException e) {
+                    outcome.release();
+                    throw e;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Cancelled; the caller no longer drains.
+            Thread.currentThread().interrupt();
+        } finally {
+            if (helper != null) {
+                idleHelpers.add(helper);
+            }
+            // The caller drains until every worker has put its END, however
+            // the worker ended.
+            if (!Thread.currentThread().isInterrupted()) {
+                try {
+                    outcomes.put(Outcome.END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private Outcome processImage(FaceLandmarkerHelper helper, int index, Uri uri) {
+        LandmarkResultCache cache = resultCache;
+        String key = null;
+        if (cache != null) {
+            long lookupStart = SystemClock.uptimeMillis();
+            try (InputStream input = open(uri)) {
+                key = LandmarkResultCache.key(helper.getConfigFingerprint(), input);
+            } catch (IOException e) {
+                // Processed without the cache; the decode reports what is wrong.
+                Log.w(TAG, "Could not hash " + uri, e);
+            }
+            if (key != null) {
+                LandmarkFrame frame = framePool.acquire();
+                if (cache.get(key, frame)) {
+                    return Outcome.cached(index, uri, frame, SystemClock.uptimeMillis() - lookupStart);
+                }
+                frame.release();
+            }
+        }
+
+        long decodeStart = SystemClock.uptimeMillis();
+        ImageDecodePlan plan;
+        Bitmap bitmap;
+        try {
+            plan = planDecode(uri, helper.getMaxNumFaces());
+            bitmap = plan != null ? decode(uri, plan) : null;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Could not decode " + uri, e);
+            return Outcome.failed(index, uri, "Could not decode the image: " + e.getMessage());
+        }
+        if (bitmap == null) {
+            return Outcome.failed(index, uri, "Not an image.");
+        }
+        float decodeMs = SystemClock.uptimeMillis() - decodeStart;
+        try {
+            MPImage mpImage = new BitmapImageBuilder(bitmap).build();
+            long startNanos = System.nanoTime();
+            FaceLandmarkerResult result = helper.detectImage(mpImage, plan.rotationDegrees);
+            long resultTimeNanos = System.nanoTime();
+            if (result == null) {
+                return Outcome.failed(index, uri, "The face landmarker was closed.");
+            }
+            float inferenceMs = (resultTimeNanos - startNanos) / 1e6f;
+            LandmarkFrame frame = framePool.acquire();
+            frame.setResult(result);
+            // Landmarks are normalized to the stored image; with its original
+            // upright size and orientation they map onto the photo as taken.
+            frame.setFrameInfo((long) inferenceMs, plan.getUprightHeight(), plan.getUprightWidth(),
+                    plan.rotationDegrees, plan.mirrored, 0, resultTimeNanos);
+            if (key != null) {
+                cache.put(key, frame);
+            }
+            return new Outcome(index, uri, frame, null, false, decodeMs, inferenceMs,
+                    (long) plan.width * plan.height, (long) bitmap.getWidth() * bitmap.getHeight());
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Inference failed on " + uri, e);
+            return Outcome.failed(index, uri, "Inference failed: " + e.getMessage());
+        } finally {
+            // detect is synchronous, the pixels are no longer needed.
+            bitmapPool.release(bitmap);
+        }
+    }
+
+    // Reads the bounds and orientation without decoding pixels. Returns null
+    // when uri is not an image.
+    private ImageDecodePlan planDecode(Uri uri, int maxNumFaces) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream input = open(uri)) {
+            BitmapFactory.decodeStream(input, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
+        int orientation;
+        try (InputStream input = open(uri)) {
+            orientation = new ExifInterface(input).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            // Formats without EXIF are stored upright.
+            orientation = ExifInterface.ORIENTATION_NORMAL;
+        }
+        return ImageDecodePlan.create(bounds.outWidth, bounds.outHeight, orientation, maxNumFaces);
+    }
+
+    // Decodes subsampled into a pooled bitmap, as stored.
+    private Bitmap decode(Uri uri, ImageDecodePlan plan) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inSampleSize = plan.sampleSize;
+        options.inMutable = true;
+        options.inBitmap = bitmapPool.acquireForDecode(plan.decodedWidth, plan.decodedHeight);
+        Bitmap decoded;
+        try (InputStream input = open(uri)) {
+            decoded = BitmapFactory.decodeStream(input, null, options);
+        } catch (IllegalArgumentException e) {
+            // The decoder can't reuse the bitmap, e.g. for some formats on
+            // older releases.
+            bitmapPool.release(options.inBitmap);
+            options.inBitmap = null;
+            try (InputStream input = open(uri)) {
+                return BitmapFactory.decodeStream(input, null, options);
+            }
+        }
+        if (decoded == null) {
+            bitmapPool.release(options.inBitmap);
+        }
+        return decoded;
+    }
+
+    private InputStream open(Uri uri) throws IOException {
+        InputStream input = context.getContentResolver().openInputStream(uri);
+        if (input == null) {
+            throw new IOException("No content at " + uri);
+        }
+        return input;
+    }
+
+    private FaceLandmarkerHelper takeHelper() throws InterruptedException {
+        synchronized (idleHelpers) {
+            FaceLandmarkerHelper idle = idleHelpers.poll();
+            if (idle != null) {
+                return idle;
+            }
+            if (createdHelpers < workerCount) {
+                FaceLandmarkerHelper helper = helperFactory.create();
+                helpers[createdHelpers++] = helper;
+                return helper;
+            }
+        }
+        return idleHelpers.take();
+    }
+
+    // Closes the landmarkers. The processor can't be used afterwards.
+    public void close() {
+        cancel();
+        synchronized (idleHelpers) {
+            for (int i = 0; i < createdHelpers; i++) {
+                helpers[i].clearFaceLandmarker();
+            }
+        }
+        framePool.clear();
+        bitmapPool.clear();
+    }
+
+    /**
+     * What became of one image: a result frame, computed or from the cache,
+     * or an error. For cached results decodeMs is the lookup time.
+     */
+    private static final class Outcome {
+        // Marks a worker as finished.
+        static final Outcome END = failed(-1, null, null);
+
+        final int index;
+        final Uri uri;
+        final LandmarkFrame frame;
+        final String error;
+        final boolean cached;
+        final float decodeMs;
+        final float inferenceMs;
+        final long sourcePixels;
+        final long decodedPixels;
+
+        Outcome(int index, Uri uri, LandmarkFrame frame, String error, boolean cached, float decodeMs,
+                float inferenceMs, long sourcePixels, long decodedPixels) {
+            this.index = index;
+            this.uri = uri;
+            this.frame = frame;
+            this.error = error;
+            this.cached = cached;
+            this.decodeMs = decodeMs;
+            this.inferenceMs = inferenceMs;
+            this.sourcePixels = sourcePixels;
+            this.decodedPixels = decodedPixels;
+        }
+
+        static Outcome failed(int index, Uri uri, String error) {
+            return new Outcome(index, uri, null, error, false, 0f, 0f, 0, 0);
+        }
+
+        static Outcome cached(int index, Uri uri, LandmarkFrame frame, float lookupMs) {
+            return new Outcome(index, uri, frame, null, true, lookupMs, 0f, 0, 0);
+        }
+
+        void release() {
+            if (frame != null) {
+                frame.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import java.util.Locale;
+
+/**
+ * Throughput of a batch of still images.
+ *
+ * Counts processed, failed and face-bearing images and the time spent
+ * decoding and in inference, and keeps the largest number of results that
+ * were waiting for the listener at once, which shows whether the consumer
+ * kept up. Safe to update from several threads.
+ */
+public class ImageBatchStats {
+    private long startMs = -1;
+    private long lastUpdateMs = -1;
+    private boolean finished = false;
+
+    private int totalImages = 0;
+    private int processedImages = 0;
+    private int imagesWithFaces = 0;
+    private int failedImages = 0;
+    private int cachedImages = 0;
+    private double cacheMsTotal = 0;
+    private double decodeMsTotal = 0;
+    private double inferenceMsTotal = 0;
+    private int maxPendingResults = 0;
+    private long sourcePixels = 0;
+    private long decodedPixels = 0;
+
+    public synchronized void onStarted(int totalImages, long nowMs) {
+        this.totalImages = totalImages;
+        startMs = nowMs;
+        lastUpdateMs = nowMs;
+        finished = false;
+    }
+
+    // An image was decoded in decodeMs and went through inference in
+    // inferenceMs, finding faceCount faces.
+    public synchronized void onProcessed(float decodeMs, float inferenceMs, int faceCount, long nowMs) {
+        processedImages++;
+        if (faceCount > 0) {
+            imagesWithFaces++;
+        }
+        decodeMsTotal += decodeMs;
+        inferenceMsTotal += inferenceMs;
+        if (!finished) {
+            lastUpdateMs = nowMs;
+        }
+    }
+
+    // An image of sourcePixels was decoded to decodedPixels.
+    public synchronized void onDecoded(long sourcePixels, long decodedPixels) {
+        this.sourcePixels += sourcePixels;
+        this.decodedPixels += decodedPixels;
+    }
+
+    // An image's result was found in the cache in lookupMs, hashing
+    // included, with faceCount faces. Counts as processed, but not towards
+    // the decode and inference averages.
+    public synchronized void onCacheHit(float lookupMs, int faceCount, long nowMs) {
+        processedImages++;
+        cachedImages++;
+        if (faceCount > 0) {
+            imagesWithFaces++;
+        }
+        cacheMsTotal += lookupMs;
+        if (!finished) {
+            lastUpdateMs = nowMs;
+        }
+    }
+
+    public synchronized void onFailed(long nowMs) {
+        failedImages++;
+        if (!finished) {
+            lastUpdateMs = nowMs;
+        }
+    }
+
+    // pendingResults results were waiting for the listener, including the
+    // one being delivered.
+    public synchronized void onDelivering(int pendingResults) {
+        maxPendingResults = Math.max(maxPendingResults, pendingResults);
+    }
+
+    public synchronized void onFinished(long nowMs) {
+        lastUpdateMs = nowMs;
+        finished = true;
+    }
+
+    public synchronized int getTotalImages() {
+        return totalImages;
+    }
+
+    public synchronized int getProcessedImages() {
+        return processedImages;
+    }
+
+    public synchronized int getImagesWithFaces() {
+        return imagesWithFaces;
+    }
+
+    public synchronized int getCachedImages() {
+        return cachedImages;
+    }
+
+    public synchronized int getFailedImages() {
+        return failedImages;
+    }
+
+    public synchronized int getMaxPendingResults() {
+        return maxPendingResults;
+    }
+
+    // Share of the source pixels that were decoded, 1 without subsampling.
+    public synchronized float getDecodedPixelRatio() {
+        return sourcePixels > 0 ? decodedPixels / (float) sourcePixels : 1f;
+    }
+
+    public synchronized long getElapsedMs() {
+        return startMs < 0 ? 0 : lastUpdateMs - startMs;
+    }
+
+    // Processed and failed images alike.
+    public synchronized float getImagesPerSecond() {
+        long elapsedMs = getElapsedMs();
+        return elapsedMs > 0 ? (processedImages + failedImages) * 1000f / elapsedMs : 0f;
+    }
+
+    public synchronized float getAverageDecodeMs() {
+        int inferred = processedImages - cachedImages;
+        return inferred > 0 ? (float) (decodeMsTotal / inferred) : 0f;
+    }
+
+    public synchronized float getAverageInferenceMs() {
+        int inferred = processedImages - cachedImages;
+        return inferred > 0 ? (float) (inferenceMsTotal / inferred) : 0f;
+    }
+
+    public synchronized float getAverageCacheMs() {
+        return cachedImages > 0 ? (float) (cacheMsTotal / cachedImages) : 0f;
+    }
+
+    public synchronized String describe() {
+        return String.format(Locale.US,
+                "%d/%d images (%d failed, %d cached) in %d ms, %.1f images/s, decode %.1f ms (%.0f%% of pixels), "
+                        + "inference %.1f ms, cache %.1f ms, backlog max %d",
+                processedImages, totalImages, failedImages, cachedImages, getElapsedMs(), getImagesPerSecond(),
+                getAverageDecodeMs(), getDecodedPixelRatio() * 100f, getAverageInferenceMs(), getAverageCacheMs(),
+                maxPendingResults);
+    }
+}
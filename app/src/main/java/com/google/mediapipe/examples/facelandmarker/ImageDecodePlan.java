@@ -0,0 +1,133 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import android.media.ExifInterface;
+
+/**
+ * How to decode a still image for the landmarker, worked out from its
+ * bounds and EXIF orientation before any pixel is decoded.
+ *
+ * The landmark model looks at each face through a 256 pixel crop, so pixels
+ * beyond what the smallest expected face needs for that crop are thrown
+ * away by the landmarker anyway. A lone face is assumed to span at least a
+ * quarter of the image's long edge; faces sharing a picture get smaller,
+ * so the target grows with the square root of the number of faces. The
+ * image is subsampled by the largest power of two that keeps its long edge
+ * at or above the target.
+ *
+ * The pixels are decoded as stored. The EXIF orientation becomes a
+ * rotation for the landmarker and the overlay plus a mirror for the
+ * overlay, like a camera frame, so landmarks stay normalized to the stored
+ * image and map onto the original photo at any resolution.
+ */
+public class ImageDecodePlan {
+    // Input size of the landmark model.
+    static final int LANDMARK_INPUT_SIZE = 256;
+    // The smallest face, relative to the long edge, decoded at full landmark
+    // resolution when there is only one.
+    static final float MIN_FACE_FRACTION = 0.25f;
+    static final int MAX_TARGET_LONG_EDGE = 4096;
+
+    // Stored size of the image.
+    public final int width;
+    public final int height;
+    public final int sampleSize;
+    // Expected size of the decoded bitmap. Decoders may round down instead.
+    public final int decodedWidth;
+    public final int decodedHeight;
+    // Clockwise rotation and mirror from the stored to the upright image.
+    public final int rotationDegrees;
+    public final boolean mirrored;
+
+    private ImageDecodePlan(int width, int height, int sampleSize, int rotationDegrees, boolean mirrored) {
+        this.width = width;
+        this.height = height;
+        this.sampleSize = sampleSize;
+        this.decodedWidth = sampledSize(width, sampleSize);
+        this.decodedHeight = sampledSize(height, sampleSize);
+        this.rotationDegrees = rotationDegrees;
+        this.mirrored = mirrored;
+    }
+
+    // Plans the decode of a width x height image with the given EXIF
+    // orientation for a landmarker looking for up to maxNumFaces faces.
+    public static ImageDecodePlan create(int width, int height, int exifOrientation, int maxNumFaces) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Image size must be positive.");
+        }
+        return new ImageDecodePlan(width, height,
+                sampleSize(Math.max(width, height), targetLongEdge(maxNumFaces)),
+                rotationDegrees(exifOrientation), isMirrored(exifOrientation));
+    }
+
+    // Long edge the decoded image should keep for maxNumFaces faces.
+    static int targetLongEdge(int maxNumFaces) {
+        double faceFraction = MIN_FACE_FRACTION / Math.sqrt(Math.max(1, maxNumFaces));
+        return (int) Math.min(MAX_TARGET_LONG_EDGE, Math.round(LANDMARK_INPUT_SIZE / faceFraction));
+    }
+
+    static int sampleSize(int longEdge, int targetLongEdge) {
+        int sampleSize = 1;
+        while (longEdge / (sampleSize * 2) >= targetLongEdge) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static int sampledSize(int size, int sampleSize) {
+        return (size + sampleSize - 1) / sampleSize;
+    }
+
+    static int rotationDegrees(int exifOrientation) {
+        switch (exifOrientation) {
+            case ExifInterface.ORIENTATION_ROTATE_180:
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                return 180;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                return 90;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    // Whether the upright image is the stored one turned by
+    // rotationDegrees and then flipped horizontally.
+    static boolean isMirrored(int exifOrientation) {
+        return exifOrientation == ExifInterface.ORIENTATION_FLIP_HORIZONTAL
+                || exifOrientation == ExifInterface.ORIENTATION_FLIP_VERTICAL
+                || exifOrientation == ExifInterface.ORIENTATION_TRANSPOSE
+                || exifOrientation == ExifInterface.ORIENTATION_TRANSVERSE;
+    }
+
+    // Size of the upright image at its original resolution.
+    public int getUprightWidth() {
+        return rotationDegrees % 180 == 0 ? width : height;
+    }
+
+    public int getUprightHeight() {
+        return rotationDegrees % 180 == 0 ? height : width;
+    }
+
+    // Pixels not decoded compared with a full resolution decode.
+    public long getSavedPixels() {
+        return (long) width * height - (long) decodedWidth * decodedHeight;
+    }
+}
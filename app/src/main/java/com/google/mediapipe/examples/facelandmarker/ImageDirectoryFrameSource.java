@@ -0,0 +1,94 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The images of a directory as frames, in file name order.
+ */
+public class ImageDirectoryFrameSource extends PacedFrameSource {
+    private final File directory;
+    private final BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+    private File[] files = new File[0];
+    private int nextIndex;
+
+    public ImageDirectoryFrameSource(File directory) {
+        this.directory = directory;
+        decodeOptions.inPreferredConfig = Bitmap.Config.ARGB_8888;
+    }
+
+    // Whether directory holds any image this source can read.
+    public static boolean hasImages(File directory) {
+        File[] images = directory.listFiles(IMAGE_FILTER);
+        return images != null && images.length > 0;
+    }
+
+    @Override
+    protected void open() throws IOException {
+        File[] images = directory.listFiles(IMAGE_FILTER);
+        if (images == null || images.length == 0) {
+            throw new IOException("No images in " + directory);
+        }
+        Arrays.sort(images);
+        files = images;
+        nextIndex = 0;
+    }
+
+    @Override
+    protected Bitmap nextFrame() {
+        // Skip files that fail to decode.
+        while (nextIndex < files.length) {
+            Bitmap frame = BitmapFactory.decodeFile(files[nextIndex++].getAbsolutePath(), decodeOptions);
+            if (frame != null) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected boolean rewind() {
+        nextIndex = 0;
+        return files.length > 0;
+    }
+
+    @Override
+    protected void recycleFrame(Bitmap frame) {
+        frame.recycle();
+    }
+
+    @Override
+    protected String getName() {
+        return String.format(Locale.US, "%d images", files.length);
+    }
+
+    private static final FileFilter IMAGE_FILTER = new FileFilter() {
+        @Override
+        public boolean accept(File file) {
+            String name = file.getName().toLowerCase(Locale.US);
+            return file.isFile() && (name.endsWith(".jpg") || name.endsWith(".jpeg")
+                    || name.endsWith(".png") || name.endsWith(".webp"));
+        }
+    };
+}
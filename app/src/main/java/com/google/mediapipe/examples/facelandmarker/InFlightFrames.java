@@ -0,0 +1,254 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import android.graphics.Bitmap;
+
+import androidx.camera.core.ImageProxy;
+
+/**
+ * Tracks the pooled bitmaps and camera ImageProxy objects that back frames
+ * handed to detectAsync until MediaPipe returns them through the result
+ * listener. A frame wrapped directly from the camera keeps its ImageProxy open
+ * for that whole time.
+ *
+ * Frames are submitted with strictly increasing timestamps and MediaPipe may
+ * silently drop frames while it is busy, so a result for timestamp T also
+ * completes every older frame still in flight.
+ *
+ * Admission control keeps fewer frames in flight than the table holds, so
+ * it only fills up when results stop coming. A full table then rejects new
+ * frames rather than evicting ones that may still be in inference; only a
+ * frame older than LOST_AFTER_NANOS is given up as dropped to make room.
+ */
+public class InFlightFrames {
+    // A frame submitted this long ago with no result is taken as dropped.
+    static final long LOST_AFTER_NANOS = 1_000_000_000L;
+
+    private final BitmapPool bitmapPool;
+    private final long[] timestamps;
+    private final Bitmap[] bitmaps;
+    private final ImageProxy[] imageProxies;
+    private final int[] rotations;
+    private final boolean[] mirrored;
+    private final long[] cameraTimestampsNanos;
+    private final long[] submitTimesNanos;
+    // Four floats (left, top, width, height) and two ints (width, height)
+    // per frame.
+    private final float[] regions;
+    private final int[] sourceSizes;
+    private int count = 0;
+    private long droppedCount = 0;
+    private long rejectedCount = 0;
+
+    public InFlightFrames(BitmapPool bitmapPool, int capacity) {
+        this.bitmapPool = bitmapPool;
+        this.timestamps = new long[capacity];
+        this.bitmaps = new Bitmap[capacity];
+        this.imageProxies = new ImageProxy[capacity];
+        this.rotations = new int[capacity];
+        this.mirrored = new boolean[capacity];
+        this.cameraTimestampsNanos = new long[capacity];
+        this.submitTimesNanos = new long[capacity];
+        this.regions = new float[capacity * 4];
+        this.sourceSizes = new int[capacity * 2];
+    }
+
+    public synchronized boolean add(long timestampMs, Bitmap bitmap, FrameInfo info) {
+        return add(timestampMs, bitmap, null, info);
+    }
+
+    // Records a frame about to be submitted, which must have info's
+    // submitTimeNanos set. Returns false when the table is full of frames
+    // that may still be in inference; the caller then keeps ownership and
+    // should drop the frame instead of submitting it.
+    public synchronized boolean add(long timestampMs, Bitmap bitmap, ImageProxy imageProxy, FrameInfo info) {
+        if (count == timestamps.length) {
+            if (info.submitTimeNanos - submitTimesNanos[0] < LOST_AFTER_NANOS) {
+                rejectedCount++;
+                return false;
+            }
+            // The oldest frame never produced a callback; it was dropped.
+            releaseOldest(1);
+            droppedCount++;
+        }
+        timestamps[count] = timestampMs;
+        bitmaps[count] = bitmap;
+        imageProxies[count] = imageProxy;
+        rotations[count] = info.rotationDegrees;
+        mirrored[count] = info.mirrored;
+        cameraTimestampsNanos[count] = info.cameraTimestampNanos;
+        submitTimesNanos[count] = info.submitTimeNanos;
+        regions[4 * count] = info.regionLeft;
+        regions[4 * count + 1] = info.regionTop;
+        regions[4 * count + 2] = info.regionWidth;
+        regions[4 * count + 3] = info.regionHeight;
+        sourceSizes[2 * count] = info.sourceWidth;
+        sourceSizes[2 * count + 1] = info.sourceHeight;
+        count++;
+        return true;
+    }
+
+    // Returns every frame with a timestamp <= timestampMs to the pool and
+    // copies what was recorded for the frame matching timestampMs into out.
+    // Returns false, leaving out untouched, when that frame is unknown.
+    public synchronized boolean completeUpTo(long timestampMs, FrameInfo out) {
+        boolean found = false;
+        int completed = 0;
+        while (completed < count && timestamps[completed] <= timestampMs) {
+            if (timestamps[completed] == timestampMs) {
+                out.rotationDegrees = rotations[completed];
+                out.mirrored = mirrored[completed];
+                out.cameraTimestampNanos = cameraTimestampsNanos[completed];
+                out.submitTimeNanos = submitTimesNanos[completed];
+                out.regionLeft = regions[4 * completed];
+                out.regionTop = regions[4 * completed + 1];
+                out.regionWidth = regions[4 * completed + 2];
+                out.regionHeight = regions[4 * completed + 3];
+                out.sourceWidth = sourceSizes[2 * completed];
+                out.sourceHeight = sourceSizes[2 * completed + 1];
+                found = true;
+            }
+            completed++;
+        }
+        releaseOldest(completed);
+        return found;
+    }
+
+    // Removes the most recent frame without releasing its resources, for when
+    // submitting it failed and the caller keeps ownership.
+    public synchronized void forget(long timestampMs) {
+        if (count > 0 && timestamps[count - 1] == timestampMs) {
+            count--;
+            bitmaps[count] = null;
+            imageProxies[count] = null;
+        }
+    }
+
+    // Returns the oldest frame to the pool, for when MediaPipe reported an
+    // error instead of its result. Returns its timestamp, or -1 when nothing
+    // is in flight.
+    public synchronized long failOldest() {
+        if (count == 0) {
+            return -1;
+        }
+        long timestampMs = timestamps[0];
+        releaseOldest(1);
+        return timestampMs;
+    }
+
+    public synchronized void clear() {
+        releaseOldest(count);
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    private void releaseOldest(int n) {
+        if (n <= 0) {
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            bitmapPool.release(bitmaps[i]);
+            bitmaps[i] = null;
+            if (imageProxies[i] != null) {
+                imageProxies[i].close();
+                imageProxies[i] = null;
+            }
+        }
+        int remaining = count - n;
+        System.arraycopy(timestamps, n, timestamps, 0, remaining);
+        System.arraycopy(bitmaps, n, bitmaps, 0, remaining);
+        System.arraycopy(imageProxies, n, imageProxies, 0, remaining);
+        System.arraycopy(rotations, n, rotations, 0, remaining);
+        System.arraycopy(mirrored, n, mirrored, 0, remaining);
+        System.arraycopy(cameraTimestampsNanos, n, cameraTimestampsNanos, 0, remaining);
+        System.arraycopy(submitTimesNanos, n, submitTimesNanos, 0, remaining);
+        System.arraycopy(regions, 4 * n, regions, 0, 4 * remaining);
+        System.arraycopy(sourceSizes, 2 * n, sourceSizes, 0, 2 * remaining);
+        for (int i = remaining; i < count; i++) {
+            bitmaps[i] = null;
+            imageProxies[i] = null;
+        }
+        count = remaining;
+    }
+
+    /**
+     * Per-frame bookkeeping carried from submission to the result. Reused as
+     * an in/out parameter so no object is allocated per frame.
+     */
+    public static class FrameInfo {
+        // Clockwise rotation and mirror still to be applied to the landmarks.
+        public int rotationDegrees;
+        public boolean mirrored;
+        // Camera sensor timestamp on the System.nanoTime() base.
+        public long cameraTimestampNanos;
+        // System.nanoTime() right before detectAsync.
+        public long submitTimeNanos;
+        // Part of the camera frame that was sent, normalized to the frame;
+        // the whole frame unless FaceRoiTracker cropped it.
+        public float regionLeft;
+        public float regionTop;
+        public float regionWidth;
+        public float regionHeight;
+        // Size of the whole camera frame, 0 when it is the size of the input.
+        public int sourceWidth;
+        public int sourceHeight;
+
+        public FrameInfo() {
+            reset();
+        }
+
+        public void reset() {
+            rotationDegrees = 0;
+            mirrored = false;
+            cameraTimestampNanos = 0;
+            submitTimeNanos = 0;
+            regionLeft = 0f;
+            regionTop = 0f;
+            regionWidth = 1f;
+            regionHeight = 1f;
+            sourceWidth = 0;
+            sourceHeight = 0;
+        }
+
+        public void set(FrameInfo other) {
+            rotationDegrees = other.rotationDegrees;
+            mirrored = other.mirrored;
+            cameraTimestampNanos = other.cameraTimestampNanos;
+            submitTimeNanos = other.submitTimeNanos;
+            regionLeft = other.regionLeft;
+            regionTop = other.regionTop;
+            regionWidth = other.regionWidth;
+            regionHeight = other.regionHeight;
+            sourceWidth = other.sourceWidth;
+            sourceHeight = other.sourceHeight;
+        }
+
+        public boolean isCropped() {
+            return regionWidth < 1f || regionHeight < 1f;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import android.content.ComponentCallbacks2;
+
+import java.util.Locale;
+
+/**
+ * Decides how long the landmarker and its pools outlive a pause.
+ *
+ * After onPause the landmarker stays loaded for the idle timeout, so coming
+ * back from a short app switch skips the model reload. Memory pressure cuts
+ * that short: once the process is on the background LRU list everything is
+ * released right away, and while running only the free pool entries are
+ * dropped. The policy only decides; the caller schedules and releases.
+ * Also records how long each resume takes to produce its first result,
+ * separately for warm and cold resumes.
+ */
+public class KeepWarmPolicy {
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 30_000;
+    // What the caller should do in response to onTrimMemory.
+    public static final int ACTION_NONE = 0;
+    public static final int ACTION_TRIM_POOLS = 1;
+    public static final int ACTION_RELEASE = 2;
+
+    // 0 releases on pause, as before keep-warm.
+    private long idleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+
+    private boolean paused = false;
+    // Nothing is loaded before the first resume.
+    private boolean released = true;
+    private long releaseDueMs = -1;
+
+    private long resumeStartMs = -1;
+    private boolean resumeWarm = false;
+    private long lastWarmResumeMs = -1;
+    private long lastColdResumeMs = -1;
+
+    private long warmResumeCount = 0;
+    private long coldResumeCount = 0;
+    private long idleReleaseCount = 0;
+    private long trimReleaseCount = 0;
+
+    public synchronized void setIdleTimeoutMs(long idleTimeoutMs) {
+        this.idleTimeoutMs = Math.max(0, idleTimeoutMs);
+    }
+
+    public synchronized long getIdleTimeoutMs() {
+        return idleTimeoutMs;
+    }
+
+    // Returns how long to wait before releasing, 0 to release right away and
+    // -1 when nothing is loaded.
+    public synchronized long onPause(long nowMs) {
+        paused = true;
+        resumeStartMs = -1;
+        if (released) {
+            return -1;
+        }
+        if (idleTimeoutMs == 0) {
+            released = true;
+            idleReleaseCount++;
+            return 0;
+        }
+        releaseDueMs = nowMs + idleTimeoutMs;
+        return idleTimeoutMs;
+    }
+
+    // Returns true when the landmarker was kept warm across the pause.
+    public synchronized boolean onResume(long nowMs) {
+        boolean warm = !released;
+        paused = false;
+        released = false;
+        releaseDueMs = -1;
+        resumeStartMs = nowMs;
+        resumeWarm = warm;
+        if (warm) {
+            warmResumeCount++;
+        } else {
+            coldResumeCount++;
+        }
+        return warm;
+    }
+
+    // The scheduled idle release fired at nowMs. Returns true when it should
+    // go ahead, false when a resume or an earlier release made it stale.
+    public synchronized boolean onIdleTimeout(long nowMs) {
+        if (!paused || released || releaseDueMs < 0 || nowMs < releaseDueMs) {
+            return false;
+        }
+        released = true;
+        idleReleaseCount++;
+        return true;
+    }
+
+    // Maps an onTrimMemory level to what should be freed.
+    public synchronized int onTrimMemory(int level) {
+        if (paused && !released && level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            released = true;
+            trimReleaseCount++;
+            return ACTION_RELEASE;
+        }
+        if (!paused && level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                && level < ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            return ACTION_TRIM_POOLS;
+        }
+        return ACTION_NONE;
+    }
+
+    // Call for every delivered result. Returns the time since the last resume
+    // when this is its first result, -1 otherwise.
+    public synchronized long onResult(long nowMs) {
+        if (resumeStartMs < 0) {
+            return -1;
+        }
+        long elapsedMs = nowMs - resumeStartMs;
+        resumeStartMs = -1;
+        if (resumeWarm) {
+            lastWarmResumeMs = elapsedMs;
+        } else {
+            lastColdResumeMs = elapsedMs;
+        }
+        return elapsedMs;
+    }
+
+    public synchronized long getLastWarmResumeMs() {
+        return lastWarmResumeMs;
+    }
+
+    public synchronized long getLastColdResumeMs() {
+        return lastColdResumeMs;
+    }
+
+    public synchronized String describe() {
+        return String.format(Locale.US,
+                "resume warm %s (%d), cold %s (%d), released idle %d, trim %d",
+                formatMs(lastWarmResumeMs), warmResumeCount, formatMs(lastColdResumeMs), coldResumeCount,
+                idleReleaseCount, trimReleaseCount);
+    }
+
+    private static String formatMs(long ms) {
+        return ms < 0 ? "--" : ms + " ms";
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import com.google.mediapipe.tasks.components.containers.Category;
+import com.google.mediapipe.tasks.components.containers.NormalizedLandmark;
+import com.google.mediapipe.tasks.vision.facelandmarker.FaceLandmarkerResult;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Flat, primitive copy of one landmarker result for the live stream hot path.
+ *
+ * All faces share one landmark array with x, y, z per landmark; face f owns
+ * landmarks [getFaceOffsets()[f], getFaceOffsets()[f + 1]). Blendshape scores
+ * are stored per face in blendshape order and transformation matrices as 16
+ * floats per face. The arrays only grow, so a recycled frame fills without
+ * allocating once it has seen the largest result.
+ *
+ * Frames handed out by a {@link LandmarkFramePool} are reference counted: a
+ * consumer that keeps a frame past the callback it received it in must
+ * {@link #retain()} it and {@link #release()} it when done.
+ */
+public class LandmarkFrame {
+    public static final int MATRIX_SIZE = 16;
+
+    private final LandmarkFramePool pool;
+    private final AtomicInteger refCount = new AtomicInteger();
+
+    private int faceCount = 0;
+    private int landmarkCount = 0;
+    private int[] faceOffsets = new int[1];
+    private float[] landmarks = new float[0];
+    // NaN where the landmarker did not report a visibility.
+    private float[] visibility = new float[0];
+    private int blendshapesPerFace = 0;
+    private float[] blendshapes = new float[0];
+    private String[] blendshapeNames = new String[0];
+    private boolean hasTransformationMatrices = false;
+    private float[] transformationMatrices = new float[0];
+
+    private long timestampMs;
+    private long inferenceTime;
+    private int inputImageHeight;
+    private int inputImageWidth;
+    private int rotationDegrees;
+    private boolean mirrored;
+    private long cameraTimestampNanos;
+    private long resultTimeNanos;
+
+    // An unpooled frame; retain and release are no-ops for it.
+    public LandmarkFrame() {
+        this(null);
+    }
+
+    LandmarkFrame(LandmarkFramePool pool) {
+        this.pool = pool;
+    }
+
+    // Copies the landmarks, blendshapes and matrices out of result.
+    public void setResult(FaceLandmarkerResult result) {
+        List<List<NormalizedLandmark>> faces = result.faceLandmarks();
+        faceCount = faces.size();
+        if (faceOffsets.length < faceCount + 1) {
+            faceOffsets = new int[faceCount + 1];
+        }
+        landmarkCount = 0;
+        for (int f = 0; f < faceCount; f++) {
+            faceOffsets[f] = landmarkCount;
+            landmarkCount += faces.get(f).size();
+        }
+        faceOffsets[faceCount] = landmarkCount;
+        if (landmarks.length < landmarkCount * 3) {
+            landmarks = new float[landmarkCount * 3];
+            visibility = new float[landmarkCount];
+        }
+        int index = 0;
+        for (int f = 0; f < faceCount; f++) {
+            List<NormalizedLandmark> face = faces.get(f);
+            int size = face.size();
+            for (int i = 0; i < size; i++) {
+                NormalizedLandmark landmark = face.get(i);
+                landmarks[3 * index] = landmark.x();
+                landmarks[3 * index + 1] = landmark.y();
+                landmarks[3 * index + 2] = landmark.z();
+                Optional<Float> landmarkVisibility = landmark.visibility();
+                visibility[index] = landmarkVisibility.isPresent() ? landmarkVisibility.get() : Float.NaN;
+                index++;
+            }
+        }
+
+        blendshapesPerFace = 0;
+        Optional<List<List<Category>>> faceBlendshapes = result.faceBlendshapes();
+        if (faceBlendshapes.isPresent() && faceBlendshapes.get().size() == faceCount && faceCount > 0) {
+            List<List<Category>> categories = faceBlendshapes.get();
+            blendshapesPerFace = categories.get(0).size();
+            for (int f = 1; f < faceCount; f++) {
+                blendshapesPerFace = Math.min(blendshapesPerFace, categories.get(f).size());
+            }
+            if (blendshapes.length < faceCount * blendshapesPerFace) {
+                blendshapes = new float[faceCount * blendshapesPerFace];
+            }
+            if (blendshapeNames.length < blendshapesPerFace) {
+                blendshapeNames = new String[blendshapesPerFace];
+            }
+            for (int f = 0; f < faceCount; f++) {
+                List<Category> face = categories.get(f);
+                for (int i = 0; i < blendshapesPerFace; i++) {
+                    Category category = face.get(i);
+                    blendshapes[f * blendshapesPerFace + i] = category.score();
+                    // Names are the same for every result; read them once.
+                    if (blendshapeNames[i] == null) {
+                        blendshapeNames[i] = category.categoryName();
+                    }
+                }
+            }
+        }
+
+        hasTransformationMatrices = false;
+        Optional<List<float[]>> matrices = result.facialTransformationMatrixes();
+        if (matrices.isPresent() && matrices.get().size() == faceCount) {
+            if (transformationMatrices.length < faceCount * MATRIX_SIZE) {
+                transformationMatrices = new float[faceCount * MATRIX_SIZE];
+            }
+            for (int f = 0; f < faceCount; f++) {
+                System.arraycopy(matrices.get().get(f), 0, transformationMatrices, f * MATRIX_SIZE, MATRIX_SIZE);
+            }
+            hasTransformationMatrices = true;
+        }
+        timestampMs = result.timestampMs();
+    }
+
+    // Copies everything other holds, e.g. to reuse a result for a later
+    // camera frame.
+    public void copyFrom(LandmarkFrame other) {
+        faceCount = other.faceCount;
+        landmarkCount = other.landmarkCount;
+        if (faceOffsets.length < faceCount + 1) {
+            faceOffsets = new int[faceCount + 1];
+        }
+        System.arraycopy(other.faceOffsets, 0, faceOffsets, 0, faceCount + 1);
+        if (landmarks.length < landmarkCount * 3) {
+            landmarks = new float[landmarkCount * 3];
+            visibility = new float[landmarkCount];
+        }
+        System.arraycopy(other.landmarks, 0, landmarks, 0, landmarkCount * 3);
+        System.arraycopy(other.visibility, 0, visibility, 0, landmarkCount);
+
+        blendshapesPerFace = other.blendshapesPerFace;
+        int blendshapeCount = faceCount * blendshapesPerFace;
+        if (blendshapes.length < blendshapeCount) {
+            blendshapes = new float[blendshapeCount];
+        }
+        System.arraycopy(other.blendshapes, 0, blendshapes, 0, blendshapeCount);
+        if (blendshapeNames.length < blendshapesPerFace) {
+            blendshapeNames = new String[blendshapesPerFace];
+        }
+        System.arraycopy(other.blendshapeNames, 0, blendshapeNames, 0, blendshapesPerFace);
+
+        hasTransformationMatrices = other.hasTransformationMatrices;
+        if (hasTransformationMatrices) {
+            if (transformationMatrices.length < faceCount * MATRIX_SIZE) {
+                transformationMatrices = new float[faceCount * MATRIX_SIZE];
+            }
+            System.arraycopy(other.transformationMatrices, 0, transformationMatrices, 0, faceCount * MATRIX_SIZE);
+        }
+
+        timestampMs = other.timestampMs;
+        setFrameInfo(other.inferenceTime, other.inputImageHeight, other.inputImageWidth, other.rotationDegrees,
+                other.mirrored, other.cameraTimestampNanos, other.resultTimeNanos);
+    }
+
+    // Moves a copied result to the camera frame it now stands for.
+    public void restamp(long timestampMs, long cameraTimestampNanos, long resultTimeNanos) {
+        this.timestampMs = timestampMs;
+        this.cameraTimestampNanos = cameraTimestampNanos;
+        this.resultTimeNanos = resultTimeNanos;
+    }
+
+    // Maps landmarks normalized to a cropped region back to the full frame.
+    // The region is given normalized to the full frame; z scales with x.
+    public void mapFromRegion(float left, float top, float width, float height) {
+        for (int i = 0; i < landmarkCount; i++) {
+            landmarks[3 * i] = left + landmarks[3 * i] * width;
+            landmarks[3 * i + 1] = top + landmarks[3 * i + 1] * height;
+            landmarks[3 * i + 2] *= width;
+        }
+    }
+
+    // Writes the result and the frame info, without the timestamps, in a
+    // compact binary form: counts as ints, coordinates and scores as floats,
+    // and optional parts only when present.
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(faceCount);
+        for (int f = 0; f < faceCount; f++) {
+            out.writeInt(faceOffsets[f + 1] - faceOffsets[f]);
+        }
+        for (int i = 0; i < landmarkCount * 3; i++) {
+            out.writeFloat(landmarks[i]);
+        }
+        boolean hasVisibility = false;
+        for (int i = 0; i < landmarkCount && !hasVisibility; i++) {
+            hasVisibility = !Float.isNaN(visibility[i]);
+        }
+        out.writeBoolean(hasVisibility);
+        if (hasVisibility) {
+            for (int i = 0; i < landmarkCount; i++) {
+                out.writeFloat(visibility[i]);
+            }
+        }
+        out.writeInt(blendshapesPerFace);
+        for (int i = 0; i < blendshapesPerFace; i++) {
+            out.writeUTF(blendshapeNames[i]);
+        }
+        for (int i = 0; i < faceCount * blendshapesPerFace; i++) {
+            out.writeFloat(blendshapes[i]);
+        }
+        out.writeBoolean(hasTransformationMatrices);
+        if (hasTransformationMatrices) {
+            for (int i = 0; i < faceCount * MATRIX_SIZE; i++) {
+                out.writeFloat(transformationMatrices[i]);
+            }
+        }
+        out.writeLong(inferenceTime);
+        out.writeInt(inputImageHeight);
+        out.writeInt(inputImageWidth);
+        out.writeInt(rotationDegrees);
+        out.writeBoolean(mirrored);
+    }
+
+    // Reads what writeTo wrote. Timestamps are cleared.
+    public void readFrom(DataInput in) throws IOException {
+        faceCount = in.readInt();
+        if (faceCount < 0) {
+            throw new IOException("Corrupt face count " + faceCount);
+        }
+        if (faceOffsets.length < faceCount + 1) {
+            faceOffsets = new int[faceCount + 1];
+        }
+        landmarkCount = 0;
+        for (int f = 0; f < faceCount; f++) {
+            faceOffsets[f] = landmarkCount;
+            landmarkCount += in.readInt();
+        }
+        faceOffsets[faceCount] = landmarkCount;
+        if (landmarks.length < landmarkCount * 3) {
+            landmarks = new float[landmarkCount * 3];
+            visibility = new float[landmarkCount];
+        }
+        for (int i = 0; i < landmarkCount * 3; i++) {
+            landmarks[i] = in.readFloat();
+        }
+        boolean hasVisibility = in.readBoolean();
+        for (int i = 0; i < landmarkCount; i++) {
+            visibility[i] = hasVisibility ? in.readFloat() : Float.NaN;
+        }
+        blendshapesPerFace = in.readInt();
+        if (blendshapeNames.length < blendshapesPerFace) {
+            blendshapeNames = new String[blendshapesPerFace];
+        }
+        for (int i = 0; i < blendshapesPerFace; i++) {
+            blendshapeNames[i] = in.readUTF();
+        }
+        if (blendshapes.length < faceCount * blendshapesPerFace) {
+            blendshapes = new float[faceCount * blendshapesPerFace];
+        }
+        for (int i = 0; i < faceCount * blendshapesPerFace; i++) {
+            blendshapes[i] = in.readFloat();
+        }
+        hasTransformationMatrices = in.readBoolean();
+        if (hasTransformationMatrices) {
+            if (transformationMatrices.length < faceCount * MATRIX_SIZE) {
+                transformationMatrices = new float[faceCount * MATRIX_SIZE];
+            }
+            for (int i = 0; i < faceCount * MATRIX_SIZE; i++) {
+                transformationMatrices[i] = in.readFloat();
+            }
+        }
+        timestampMs = 0;
+        long readInferenceTime = in.readLong();
+        int readHeight = in.readInt();
+        int readWidth = in.readInt();
+        int readRotation = in.readInt();
+        boolean readMirrored = in.readBoolean();
+        setFrameInfo(readInferenceTime, readHeight, readWidth, readRotation, readMirrored, 0, 0);
+    }
+
+    // inputImageHeight and inputImageWidth are in display space, i.e. after
+    // rotationDegrees has been applied; see ResultBundle.
+    public void setFrameInfo(long inferenceTime, int inputImageHeight, int inputImageWidth,
+                             int rotationDegrees, boolean mirrored, long cameraTimestampNanos, long resultTimeNanos) {
+        this.inferenceTime = inferenceTime;
+        this.inputImageHeight = inputImageHeight;
+        this.inputImageWidth = inputImageWidth;
+        this.rotationDegrees = rotationDegrees;
+        this.mirrored = mirrored;
+        this.cameraTimestampNanos = cameraTimestampNanos;
+        this.resultTimeNanos = resultTimeNanos;
+    }
+
+    // Fills the frame from a ResultBundle, for callers outside the live stream.
+    public void setResultBundle(FaceLandmarkerHelper.ResultBundle resultBundle) {
+        setResult(resultBundle.getResult());
+        setFrameInfo(resultBundle.getInferenceTime(), resultBundle.getInputImageHeight(),
+                resultBundle.getInputImageWidth(), resultBundle.getRotationDegrees(), resultBundle.isMirrored(),
+                resultBundle.getCameraTimestampNanos(), resultBundle.getResultTimeNanos());
+    }
+
+    public void retain() {
+        if (pool != null) {
+            refCount.incrementAndGet();
+        }
+    }
+
+    public void release() {
+        if (pool != null && refCount.decrementAndGet() == 0) {
+            pool.recycle(this);
+        }
+    }
+
+    // Called by the pool when the frame is handed out.
+    void onAcquire() {
+        refCount.set(1);
+    }
+
+    public int getFaceCount() {
+        return faceCount;
+    }
+
+    public int getLandmarkCount() {
+        return landmarkCount;
+    }
+
+    // faceCount + 1 entries; the last one is getLandmarkCount().
+    public int[] getFaceOffsets() {
+        return faceOffsets;
+    }
+
+    public float[] getLandmarks() {
+        return landmarks;
+    }
+
+    public float[] getVisibility() {
+        return visibility;
+    }
+
+    public int getBlendshapesPerFace() {
+        return blendshapesPerFace;
+    }
+
+    public float[] getBlendshapes() {
+        return blendshapes;
+    }
+
+    public String getBlendshapeName(int index) {
+        return blendshapeNames[index];
+    }
+
+    public boolean hasTransformationMatrices() {
+        return hasTransformationMatrices;
+    }
+
+    public float[] getTransformationMatrices() {
+        return transformationMatrices;
+    }
+
+    public long getTimestampMs() {
+        return timestampMs;
+    }
+
+    public long getInferenceTime() {
+        return inferenceTime;
+    }
+
+    public int getInputImageHeight() {
+        return inputImageHeight;
+    }
+
+    public int getInputImageWidth() {
+        return inputImageWidth;
+    }
+
+    public int getRotationDegrees() {
+        return rotationDegrees;
+    }
+
+    public boolean isMirrored() {
+        return mirrored;
+    }
+
+    public long getCameraTimestampNanos() {
+        return cameraTimestampNanos;
+    }
+
+    public long getResultTimeNanos() {
+        return resultTimeNanos;
+    }
+}
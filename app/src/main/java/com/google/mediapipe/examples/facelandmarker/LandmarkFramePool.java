@@ -0,0 +1,93 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+/**
+ * Bounded pool of {@link LandmarkFrame}s. A frame comes back once its last
+ * reference is released; frames beyond the pool size are left to the GC.
+ */
+public class LandmarkFramePool {
+    // Enough for the frame being filled plus the ones parked in the UI
+    // mailbox and the overlays.
+    public static final int DEFAULT_MAX_POOLED = 6;
+
+    private final LandmarkFrame[] free;
+    private int freeCount = 0;
+
+    private long allocationCount = 0;
+    private long reuseCount = 0;
+
+    public LandmarkFramePool() {
+        this(DEFAULT_MAX_POOLED);
+    }
+
+    public LandmarkFramePool(int maxPooled) {
+        if (maxPooled <= 0) {
+            throw new IllegalArgumentException("maxPooled must be positive.");
+        }
+        this.free = new LandmarkFrame[maxPooled];
+    }
+
+    // Returns a frame holding one reference, owned by the caller.
+    public LandmarkFrame acquire() {
+        LandmarkFrame frame = null;
+        synchronized (this) {
+            if (freeCount > 0) {
+                frame = free[--freeCount];
+                free[freeCount] = null;
+                reuseCount++;
+            } else {
+                allocationCount++;
+            }
+        }
+        if (frame == null) {
+            frame = new LandmarkFrame(this);
+        }
+        frame.onAcquire();
+        return frame;
+    }
+
+    synchronized void recycle(LandmarkFrame frame) {
+        if (freeCount < free.length) {
+            free[freeCount++] = frame;
+        }
+    }
+
+    // Drops the free frames; frames still referenced return as usual.
+    public synchronized void clear() {
+        for (int i = 0; i < freeCount; i++) {
+            free[i] = null;
+        }
+        freeCount = 0;
+    }
+
+    public synchronized long getAllocationCount() {
+        return allocationCount;
+    }
+
+    public synchronized long getReuseCount() {
+        return reuseCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "LandmarkFramePool{" +
+                "pooled=" + freeCount +
+                ", allocations=" + allocationCount +
+                ", reuses=" + reuseCount +
+                '}';
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+/**
+ * Temporal stage between the landmarker and the overlays, so inference can
+ * run well below the display rate.
+ *
+ * The last few results are kept in preallocated primitive ring buffers,
+ * optionally smoothed with a {@link OneEuroFilter}, and sampled at any display
+ * time. Samples lag the display by the measured result latency plus a
+ * configurable number of inference intervals: with one interval of delay the
+ * sample falls between two results and is interpolated; with none it lies
+ * past the newest result and is extrapolated, for at most the configured
+ * extrapolation limit.
+ *
+ * Timestamps are camera timestamps on the System.nanoTime() base, falling
+ * back to the result time when the camera's is unknown. push and sample may
+ * be called from different threads.
+ */
+public class LandmarkInterpolator {
+    public static final int DEFAULT_CAPACITY = 4;
+    public static final int DEFAULT_MAX_FACES = 1;
+    public static final float DEFAULT_DELAY_INTERVALS = 1f;
+    public static final long DEFAULT_MAX_EXTRAPOLATION_NANOS = 100_000_000L;
+    private static final int LANDMARKS_PER_FACE = 478;
+    private static final int BLENDSHAPES_PER_FACE = 52;
+    private static final float TIMING_SMOOTHING = 0.1f;
+
+    private final long[] timestamps;
+    private final int[] faceCounts;
+    private final int[] landmarksPerFace;
+    private final int[] blendshapesPerFace;
+    // x, y, z per landmark, faces back to back.
+    private final float[][] landmarks;
+    private final float[][] blendshapes;
+    private int newest = -1;
+    private int size = 0;
+
+    private final OneEuroFilter filter = new OneEuroFilter();
+    private boolean filterEnabled = true;
+    private float delayIntervals = DEFAULT_DELAY_INTERVALS;
+    private long maxExtrapolationNanos = DEFAULT_MAX_EXTRAPOLATION_NANOS;
+
+    private float latencyEmaNanos = 0f;
+    private float intervalEmaNanos = 0f;
+
+    public LandmarkInterpolator() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_FACES);
+    }
+
+    public LandmarkInterpolator(int capacity, int maxFaces) {
+        capacity = Math.max(2, capacity);
+        timestamps = new long[capacity];
+        faceCounts = new int[capacity];
+        landmarksPerFace = new int[capacity];
+        blendshapesPerFace = new int[capacity];
+        landmarks = new float[capacity][maxFaces * LANDMARKS_PER_FACE * 3];
+        blendshapes = new float[capacity][maxFaces * BLENDSHAPES_PER_FACE];
+    }
+
+    public synchronized void setFilterEnabled(boolean filterEnabled) {
+        this.filterEnabled = filterEnabled;
+        filter.reset();
+    }
+
+    public synchronized void setFilterParameters(float minCutoffHz, float beta, float derivativeCutoffHz) {
+        filter.setParameters(minCutoffHz, beta, derivativeCutoffHz);
+    }
+
+    // How many inference intervals samples trail the newest result. 1 or more
+    // interpolates, 0 extrapolates.
+    public synchronized void setDelayIntervals(float delayIntervals) {
+        this.delayIntervals = Math.max(0f, delayIntervals);
+    }
+
+    public synchronized void setMaxExtrapolationNanos(long maxExtrapolationNanos) {
+        this.maxExtrapolationNanos = Math.max(0, maxExtrapolationNanos);
+    }
+
+    public synchronized void clear() {
+        newest = -1;
+        size = 0;
+        latencyEmaNanos = 0f;
+        intervalEmaNanos = 0f;
+        filter.reset();
+    }
+
+    // Adds the landmarks and blendshapes of frame, which became available at
+    // arrivalNanos. Frames older than the newest one are ignored.
+    public synchronized void push(LandmarkFrame frame, long arrivalNanos) {
+        long timestampNanos = frame.getCameraTimestampNanos() != 0
+                ? frame.getCameraTimestampNanos()
+                : frame.getResultTimeNanos();
+        int slot = beginPush(timestampNanos);
+        if (slot < 0) {
+            return;
+        }
+        // The landmarker reports the same number of landmarks for every face.
+        int faceCount = frame.getFaceCount();
+        int perFace = faceCount > 0 ? frame.getLandmarkCount() / faceCount : 0;
+        int landmarkFloats = faceCount * perFace * 3;
+        System.arraycopy(frame.getLandmarks(), 0, ensureCapacity(landmarks, slot, landmarkFloats), 0, landmarkFloats);
+        int scoreCount = faceCount * frame.getBlendshapesPerFace();
+        System.arraycopy(frame.getBlendshapes(), 0, ensureCapacity(blendshapes, slot, scoreCount), 0, scoreCount);
+        commitPush(slot, timestampNanos, arrivalNanos, faceCount, perFace, frame.getBlendshapesPerFace());
+    }
+
+    // Primitive variant of push: xyz holds faceCount * perFace landmarks and
+    // scores faceCount * blendshapeCount scores, or may be null when
+    // blendshapeCount is 0.
+    public synchronized void push(long timestampNanos, long arrivalNanos, int faceCount, int perFace, float[] xyz,
+                                  int blendshapeCount, float[] scores) {
+        int slot = beginPush(timestampNanos);
+        if (slot < 0) {
+            return;
+        }
+        System.arraycopy(xyz, 0, ensureCapacity(landmarks, slot, faceCount * perFace * 3), 0, faceCount * perFace * 3);
+        if (blendshapeCount > 0) {
+            System.arraycopy(scores, 0, ensureCapacity(blendshapes, slot, faceCount * blendshapeCount), 0,
+                    faceCount * blendshapeCount);
+        }
+        commitPush(slot, timestampNanos, arrivalNanos, faceCount, perFace, blendshapeCount);
+    }
+
+    private int beginPush(long timestampNanos) {
+        if (size > 0 && timestampNanos <= timestamps[newest]) {
+            return -1;
+        }
+        return (newest + 1) % timestamps.length;
+    }
+
+    private void commitPush(int slot, long timestampNanos, long arrivalNanos, int faceCount, int perFace,
+                            int blendshapeCount) {
+        if (filterEnabled) {
+            filter.filter(landmarks[slot], faceCount * perFace * 3, timestampNanos);
+        }
+        if (size > 0) {
+            intervalEmaNanos = smooth(intervalEmaNanos, timestampNanos - timestamps[newest]);
+        }
+        latencyEmaNanos = smooth(latencyEmaNanos, arrivalNanos - timestampNanos);
+
+        timestamps[slot] = timestampNanos;
+        faceCounts[slot] = faceCount;
+        landmarksPerFace[slot] = perFace;
+        blendshapesPerFace[slot] = blendshapeCount;
+        newest = slot;
+        size = Math.min(size + 1, timestamps.length);
+    }
+
+    // Fills out with the landmarks and blendshapes for the display time and
+    // returns whether there was anything to sample.
+    public synchronized boolean sample(long displayTimeNanos, Sample out) {
+        out.faceCount = 0;
+        out.settled = true;
+        if (size == 0) {
+            return false;
+        }
+        long t = displayTimeNanos - (long) (latencyEmaNanos + delayIntervals * intervalEmaNanos);
+        out.timestampNanos = t;
+
+        if (t >= timestamps[newest]) {
+            // Past the newest result: extrapolate along the last step.
+            int previous = (newest - 1 + timestamps.length) % timestamps.length;
+            long ahead = Math.min(t - timestamps[newest], maxExtrapolationNanos);
+            out.settled = t - timestamps[newest] >= maxExtrapolationNanos;
+            if (size < 2 || ahead == 0 || !sameShape(previous, newest)) {
+                copyFrame(newest, out);
+            } else {
+                float weight = 1f + ahead / (float) (timestamps[newest] - timestamps[previous]);
+                blendFrames(previous, newest, weight, out);
+            }
+            return out.faceCount > 0;
+        }
+
+        // Walk back from the newest result to the pair bracketing t.
+        out.settled = false;
+        int later = newest;
+        int earlier = -1;
+        for (int i = 1; i < size; i++) {
+            int candidate = (newest - i + timestamps.length) % timestamps.length;
+            if (timestamps[candidate] <= t) {
+                earlier = candidate;
+                break;
+            }
+            later = candidate;
+        }
+        if (earlier < 0) {
+            // Older than anything kept.
+            copyFrame(later, out);
+        } else if (!sameShape(earlier, later)) {
+            // The face set changed in between; show the nearer result.
+            copyFrame(t - timestamps[earlier] < timestamps[later] - t ? earlier : later, out);
+        } else {
+            float weight = (t - timestamps[earlier]) / (float) (timestamps[later] - timestamps[earlier]);
+            blendFrames(earlier, later, weight, out);
+        }
+        return out.faceCount > 0;
+    }
+
+    public synchronized float getLatencyEmaMs() {
+        return latencyEmaNanos / 1e6f;
+    }
+
+    public synchronized float getIntervalEmaMs() {
+        return intervalEmaNanos / 1e6f;
+    }
+
+    private boolean sameShape(int a, int b) {
+        return faceCounts[a] == faceCounts[b]
+                && landmarksPerFace[a] == landmarksPerFace[b]
+                && blendshapesPerFace[a] == blendshapesPerFace[b];
+    }
+
+    private void copyFrame(int slot, Sample out) {
+        int landmarkFloats = faceCounts[slot] * landmarksPerFace[slot] * 3;
+        int scoreCount = faceCounts[slot] * blendshapesPerFace[slot];
+        out.ensureCapacity(landmarkFloats, scoreCount);
+        System.arraycopy(landmarks[slot], 0, out.landmarks, 0, landmarkFloats);
+        System.arraycopy(blendshapes[slot], 0, out.blendshapes, 0, scoreCount);
+        out.setShape(faceCounts[slot], landmarksPerFace[slot], blendshapesPerFace[slot]);
+    }
+
+    // out = a + weight * (b - a); weight above 1 extrapolates past b.
+    private void blendFrames(int a, int b, float weight, Sample out) {
+        int landmarkFloats = faceCounts[b] * landmarksPerFace[b] * 3;
+        int scoreCount = faceCounts[b] * blendshapesPerFace[b];
+        out.ensureCapacity(landmarkFloats, scoreCount);
+        float[] from = landmarks[a];
+        float[] to = landmarks[b];
+        for (int i = 0; i < landmarkFloats; i++) {
+            out.landmarks[i] = from[i] + weight * (to[i] - from[i]);
+        }
+        from = blendshapes[a];
+        to = blendshapes[b];
+        for (int i = 0; i < scoreCount; i++) {
+            float score = from[i] + weight * (to[i] - from[i]);
+            out.blendshapes[i] = Math.max(0f, Math.min(1f, score));
+        }
+        out.setShape(faceCounts[b], landmarksPerFace[b], blendshapesPerFace[b]);
+    }
+
+    private static float[] ensureCapacity(float[][] buffers, int slot, int length) {
+        if (buffers[slot].length < length) {
+            buffers[slot] = new float[length];
+        }
+        return buffers[slot];
+    }
+
+    private static float smooth(float ema, float sample) {
+        return ema == 0f ? sample : ema + TIMING_SMOOTHING * (sample - ema);
+    }
+
+    /**
+     * Landmarks and blendshape scores at one display time. Reused across
+     * frames by the caller.
+     */
+    public static class Sample {
+        // x, y, z per landmark, faces back to back.
+        public float[] landmarks = new float[0];
+        public float[] blendshapes = new float[0];
+        public int faceCount;
+        public int landmarksPerFace;
+        public int blendshapesPerFace;
+        // The camera time the sample corresponds to.
+        public long timestampNanos;
+        // True when later display times yield the same sample, so there is
+        // no need to keep redrawing until the next result arrives.
+        public boolean settled;
+
+        void ensureCapacity(int landmarkFloats, int scoreCount) {
+            if (landmarks.length < landmarkFloats) {
+                landmarks = new float[landmarkFloats];
+            }
+            if (blendshapes.length < scoreCount) {
+                blendshapes = new float[scoreCount];
+            }
+        }
+
+        void setShape(int faceCount, int landmarksPerFace, int blendshapesPerFace) {
+            this.faceCount = faceCount;
+            this.landmarksPerFace = landmarksPerFace;
+            this.blendshapesPerFace = blendshapesPerFace;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import com.google.mediapipe.tasks.vision.core.RunningMode;
+
+/**
+ * Something that draws landmark results on top of the camera preview.
+ */
+public interface LandmarkOverlay {
+    void setResults(FaceLandmarkerHelper.ResultBundle resultBundle, RunningMode runningMode);
+
+    // The overlay retains the frame for as long as it shows it.
+    void setResults(LandmarkFrame frame, RunningMode runningMode);
+
+    void clear();
+
+    void setPipelineMetrics(PipelineMetrics pipelineMetrics);
+
+    // When set, landmarks are sampled from the interpolator on every display
+    // frame instead of being drawn as delivered; results only update the
+    // image geometry. null draws results as they arrive.
+    void setInterpolator(LandmarkInterpolator interpolator);
+
+    // One of the LandmarkRenderer.DETAIL_* levels. May be called from any
+    // thread.
+    void setDetailLevel(int detailLevel);
+
+    // Whether setResults and clear may be called from any thread. When false
+    // they have to be called on the UI thread.
+    boolean isThreadSafe();
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import androidx.core.content.ContextCompat;
+
+import com.google.mediapipe.tasks.components.containers.Connection;
+import com.google.mediapipe.tasks.vision.core.RunningMode;
+import com.google.mediapipe.tasks.vision.facelandmarker.FaceLandmarker;
+
+import java.util.Set;
+
+/**
+ * Draws face landmarks and their connectors onto a Canvas. Shared by the
+ * View-based and the Surface-based overlays; an instance must only be used
+ * from one thread at a time.
+ */
+public class LandmarkRenderer {
+    // DETAIL_FULL draws every landmark and the full mesh; DETAIL_CONTOURS
+    // only the outline of the face, eyes, brows and lips.
+    public static final int DETAIL_FULL = 0;
+    public static final int DETAIL_CONTOURS = 1;
+    private static final float LANDMARK_STROKE_WIDTH = 8F;
+
+    // Connector (start, end) pairs flattened once; the sets never change.
+    private static final int[] CONNECTOR_INDICES = buildConnectorIndices(FaceLandmarker.FACE_LANDMARKS_CONNECTORS);
+    private static final int[] CONTOUR_INDICES = buildConnectorIndices(
+            FaceLandmarker.FACE_LANDMARKS_FACE_OVAL,
+            FaceLandmarker.FACE_LANDMARKS_LEFT_EYE,
+            FaceLandmarker.FACE_LANDMARKS_LEFT_EYE_BROW,
+            FaceLandmarker.FACE_LANDMARKS_RIGHT_EYE,
+            FaceLandmarker.FACE_LANDMARKS_RIGHT_EYE_BROW,
+            FaceLandmarker.FACE_LANDMARKS_LIPS);
+
+    private final Paint linePaint = new Paint();
+    private final Paint pointPaint = new Paint();
+    private final int lineColor;
+
+    // Affine map from the landmarks' normalized coordinates to view pixels:
+    // px = mapXx * x + mapXy * y + mapX0, py = mapYx * x + mapYy * y + mapY0.
+    // Folds the display rotation, mirror, image size and scale factor into a
+    // single transform that is recomputed only when the results change.
+    private float mapXx = 1f;
+    private float mapXy = 0f;
+    private float mapX0 = 0f;
+    private float mapYx = 0f;
+    private float mapYy = 1f;
+    private float mapY0 = 0f;
+
+    // Projected x, y pairs for every landmark of every face, and the matching
+    // line segments. Grown on demand and reused across frames.
+    private float[] pointBuffer = new float[0];
+    private float[] lineBuffer = new float[0];
+    // May be changed from any thread; picked up by the next draw.
+    private volatile int detailLevel = DETAIL_FULL;
+
+    public LandmarkRenderer(Context context) {
+        lineColor = ContextCompat.getColor(context, R.color.mp_color_primary);
+        resetPaints();
+    }
+
+    public void setDetailLevel(int detailLevel) {
+        this.detailLevel = detailLevel;
+    }
+
+    public int getDetailLevel() {
+        return detailLevel;
+    }
+
+    public void resetPaints() {
+        linePaint.reset();
+        linePaint.setColor(lineColor);
+        linePaint.setStrokeWidth(LANDMARK_STROKE_WIDTH);
+        linePaint.setStyle(Paint.Style.STROKE);
+
+        pointPaint.reset();
+        pointPaint.setColor(Color.YELLOW);
+        pointPaint.setStrokeWidth(LANDMARK_STROKE_WIDTH);
+        pointPaint.setStyle(Paint.Style.FILL);
+    }
+
+    // imageHeight and imageWidth are the display-space size of the input image.
+    // rotationDegrees (clockwise) and mirrored describe how the normalized
+    // landmarks have to be turned to reach that space.
+    public void setTransform(int viewWidth, int viewHeight, int imageWidth, int imageHeight,
+                             RunningMode runningMode, int rotationDegrees, boolean mirrored) {
+        float scaleFactor = 1f;
+        switch (runningMode) {
+            case IMAGE:
+            case VIDEO:
+                scaleFactor = Math.min(viewWidth * 1f / imageWidth, viewHeight * 1f / imageHeight);
+                break;
+            case LIVE_STREAM:
+                scaleFactor = Math.max(viewWidth * 1f / imageWidth, viewHeight * 1f / imageHeight);
+                break;
+        }
+
+        // Normalized display coordinates (u, v) as a function of the landmark's
+        // normalized coordinates (x, y) for a clockwise rotation.
+        float ux, uy, u0, vx, vy, v0;
+        switch (rotationDegrees) {
+            case 90:
+                ux = 0f; uy = -1f; u0 = 1f;
+                vx = 1f; vy = 0f; v0 = 0f;
+                break;
+            case 180:
+                ux = -1f; uy = 0f; u0 = 1f;
+                vx = 0f; vy = -1f; v0 = 1f;
+                break;
+            case 270:
+                ux = 0f; uy = 1f; u0 = 0f;
+                vx = -1f; vy = 0f; v0 = 1f;
+                break;
+            default:
+                ux = 1f; uy = 0f; u0 = 0f;
+                vx = 0f; vy = 1f; v0 = 0f;
+                break;
+        }
+        if (mirrored) {
+            ux = -ux;
+            uy = -uy;
+            u0 = 1f - u0;
+        }
+        float sx = imageWidth * scaleFactor;
+        float sy = imageHeight * scaleFactor;
+        mapXx = ux * sx;
+        mapXy = uy * sx;
+        mapX0 = u0 * sx;
+        mapYx = vx * sy;
+        mapYy = vy * sy;
+        mapY0 = v0 * sy;
+    }
+
+    public void draw(Canvas canvas, LandmarkFrame frame) {
+        drawLandmarks(canvas, frame.getLandmarks(), frame.getFaceCount(), frame.getFaceOffsets(), 0);
+    }
+
+    // Same as above for landmarks sampled by a LandmarkInterpolator.
+    public void draw(Canvas canvas, LandmarkInterpolator.Sample sample) {
+        drawLandmarks(canvas, sample.landmarks, sample.faceCount, null, sample.landmarksPerFace);
+    }
+
+    // xyz holds x, y, z per landmark with faces back to back. Face f starts at
+    // landmark faceOffsets[f], or f * landmarksPerFace when faceOffsets is null.
+    private void drawLandmarks(Canvas canvas, float[] xyz, int faceCount, int[] faceOffsets, int landmarksPerFace) {
+        boolean full = detailLevel == DETAIL_FULL;
+        int[] connectors = full ? CONNECTOR_INDICES : CONTOUR_INDICES;
+        int totalLandmarks = faceOffsets != null ? faceOffsets[faceCount] : faceCount * landmarksPerFace;
+        ensureBuffers(totalLandmarks * 2, faceCount * connectors.length * 2);
+
+        // Project every landmark once, then build the connector segments from
+        // the projected points by index.
+        int lineOffset = 0;
+        for (int f = 0; f < faceCount; f++) {
+            int first = faceOffsets != null ? faceOffsets[f] : f * landmarksPerFace;
+            int end = faceOffsets != null ? faceOffsets[f + 1] : first + landmarksPerFace;
+            for (int i = first; i < end; i++) {
+                float x = xyz[3 * i];
+                float y = xyz[3 * i + 1];
+                pointBuffer[2 * i] = toViewX(x, y);
+                pointBuffer[2 * i + 1] = toViewY(x, y);
+            }
+            lineOffset = appendConnectors(connectors, 2 * first, end - first, lineOffset);
+        }
+
+        if (full) {
+            canvas.drawPoints(pointBuffer, 0, totalLandmarks * 2, pointPaint);
+        }
+        canvas.drawLines(lineBuffer, 0, lineOffset, linePaint);
+    }
+
+    // Appends the connector segments of the face whose projected points start
+    // at pointOffset and returns the new end of the line buffer.
+    private int appendConnectors(int[] connectors, int pointOffset, int landmarkCount, int lineOffset) {
+        for (int c = 0; c < connectors.length; c += 2) {
+            int start = connectors[c];
+            int end = connectors[c + 1];
+            if (start >= landmarkCount || end >= landmarkCount) {
+                continue;
+            }
+            lineBuffer[lineOffset++] = pointBuffer[pointOffset + 2 * start];
+            lineBuffer[lineOffset++] = pointBuffer[pointOffset + 2 * start + 1];
+            lineBuffer[lineOffset++] = pointBuffer[pointOffset + 2 * end];
+            lineBuffer[lineOffset++] = pointBuffer[pointOffset + 2 * end + 1];
+        }
+        return lineOffset;
+    }
+
+    private void ensureBuffers(int pointFloats, int lineFloats) {
+        if (pointBuffer.length < pointFloats) {
+            pointBuffer = new float[pointFloats];
+        }
+        if (lineBuffer.length < lineFloats) {
+            lineBuffer = new float[lineFloats];
+        }
+    }
+
+    private float toViewX(float x, float y) {
+        return mapXx * x + mapXy * y + mapX0;
+    }
+
+    private float toViewY(float x, float y) {
+        return mapYx * x + mapYy * y + mapY0;
+    }
+
+    @SafeVarargs
+    private static int[] buildConnectorIndices(Set<Connection>... connectionSets) {
+        int count = 0;
+        for (Set<Connection> connections : connectionSets) {
+            count += connections.size();
+        }
+        int[] indices = new int[count * 2];
+        int i = 0;
+        for (Set<Connection> connections : connectionSets) {
+            for (Connection connector : connections) {
+                indices[i++] = connector.start();
+                indices[i++] = connector.end();
+            }
+        }
+        return indices;
+    }
+}
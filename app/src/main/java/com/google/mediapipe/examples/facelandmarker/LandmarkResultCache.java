@@ -0,0 +1,334 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Landmark results kept across runs, keyed by the content of the image and
+ * the landmarker configuration that produced them.
+ *
+ * A key is the SHA-256 of a configuration fingerprint (see
+ * FaceLandmarkerHelper.getConfigFingerprint) followed by the image bytes,
+ * so a renamed or copied file still hits and any change of thresholds,
+ * face count, outputs or model misses. Entries are the encoded frames of
+ * LandmarkFrame.writeTo behind a format version. A small LRU of entries in
+ * memory sits in front of one file per entry on disk; both tiers are
+ * bounded in bytes and drop their least recently used entries first.
+ * Files are written under a temporary name and renamed, so a crash never
+ * leaves half an entry, and file times carry the LRU order across runs.
+ *
+ * Thread safe; disk reads and writes run outside the lock.
+ */
+public class LandmarkResultCache {
+    public static final long DEFAULT_MEMORY_BYTES = 4L * 1024 * 1024;
+    public static final long DEFAULT_DISK_BYTES = 64L * 1024 * 1024;
+    // Bumped whenever the entry encoding changes; older entries miss.
+    static final int FORMAT_VERSION = 1;
+    private static final String ENTRY_SUFFIX = ".lmk";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final long maxMemoryBytes;
+    private final long maxDiskBytes;
+
+    // Both in access order, least recently used first.
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes = 0;
+    private long diskBytes = 0;
+    private boolean indexed = false;
+
+    private long memoryHits = 0;
+    private long diskHits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public LandmarkResultCache(File directory) {
+        this(directory, DEFAULT_MEMORY_BYTES, DEFAULT_DISK_BYTES);
+    }
+
+    public LandmarkResultCache(File directory, long maxMemoryBytes, long maxDiskBytes) {
+        if (maxMemoryBytes < 0 || maxDiskBytes <= 0) {
+            throw new IllegalArgumentException("Cache sizes must be positive.");
+        }
+        this.directory = directory;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxDiskBytes = maxDiskBytes;
+    }
+
+    // Hashes configFingerprint and then everything content yields into a key.
+    // content is read to the end but not closed.
+    public static String key(String configFingerprint, InputStream content) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+        digest.update(configFingerprint.getBytes(StandardCharsets.UTF_8));
+        // Keeps the fingerprint from running into the content.
+        digest.update((byte) 0);
+        byte[] chunk = new byte[64 * 1024];
+        int read;
+        while ((read = content.read(chunk)) != -1) {
+            digest.update(chunk, 0, read);
+        }
+        return toHex(digest.digest());
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+
+    // Fills frame with the result stored under key. Returns false, leaving
+    // frame undefined, on a miss.
+    public boolean get(String key, LandmarkFrame frame) {
+        byte[] entry;
+        boolean onDisk;
+        synchronized (this) {
+            entry = memory.get(key);
+            ensureIndexed();
+            // Also marks the disk entry as used.
+            onDisk = disk.get(key) != null && entry == null;
+        }
+        boolean fromMemory = entry != null;
+        File file = entryFile(key);
+        if (onDisk) {
+            entry = readFile(file);
+        }
+        if (entry != null && decode(entry, frame)) {
+            synchronized (this) {
+                if (fromMemory) {
+                    memoryHits++;
+                } else {
+                    diskHits++;
+                    putInMemory(key, entry);
+                }
+            }
+            // Keeps the order for the next run; best effort.
+            file.setLastModified(System.currentTimeMillis());
+            return true;
+        }
+        if (entry != null || onDisk) {
+            // Unreadable, from an older format or deleted behind our back.
+            remove(key);
+        }
+        synchronized (this) {
+            misses++;
+        }
+        return false;
+    }
+
+    private static boolean decode(byte[] entry, LandmarkFrame frame) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return false;
+            }
+            frame.readFrom(in);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    // Stores frame's result under key.
+    public void put(String key, LandmarkFrame frame) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(FORMAT_VERSION);
+            frame.writeTo(out);
+        } catch (IOException e) {
+            throw new IllegalStateException("Writing to memory failed.", e);
+        }
+        putEntry(key, bytes.toByteArray());
+    }
+
+    private void putEntry(String key, byte[] entry) {
+        File temp = new File(directory, key + TEMP_SUFFIX);
+        boolean stored = false;
+        if (directory.isDirectory() || directory.mkdirs()) {
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                out.write(entry);
+                stored = true;
+            } catch (IOException e) {
+                // Kept in memory only.
+            }
+            stored = stored && temp.renameTo(entryFile(key));
+            if (!stored) {
+                temp.delete();
+            }
+        }
+        synchronized (this) {
+            putInMemory(key, entry);
+            if (stored) {
+                ensureIndexed();
+                Long previous = disk.put(key, (long) entry.length);
+                diskBytes += entry.length - (previous != null ? previous : 0);
+                evictFromDisk();
+            }
+        }
+    }
+
+    public synchronized void remove(String key) {
+        byte[] entry = memory.remove(key);
+        if (entry != null) {
+            memoryBytes -= entry.length;
+        }
+        Long size = disk.remove(key);
+        if (size != null) {
+            diskBytes -= size;
+        }
+        entryFile(key).delete();
+    }
+
+    // Drops every entry, in memory and on disk. Counters are kept.
+    public synchronized void clear() {
+        memory.clear();
+        memoryBytes = 0;
+        disk.clear();
+        diskBytes = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        indexed = true;
+    }
+
+    private void putInMemory(String key, byte[] entry) {
+        byte[] previous = memory.put(key, entry);
+        memoryBytes += entry.length - (previous != null ? previous.length : 0);
+        Iterator<Map.Entry<String, byte[]>> eldest = memory.entrySet().iterator();
+        while (memoryBytes > maxMemoryBytes && eldest.hasNext()) {
+            memoryBytes -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+
+    private void evictFromDisk() {
+        Iterator<Map.Entry<String, Long>> eldest = disk.entrySet().iterator();
+        while (diskBytes > maxDiskBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            diskBytes -= entry.getValue();
+            eldest.remove();
+            entryFile(entry.getKey()).delete();
+            evictions++;
+        }
+    }
+
+    // Lists the entries on disk, oldest first, on first use.
+    private void ensureIndexed() {
+        if (indexed) {
+            return;
+        }
+        indexed = true;
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(ENTRY_SUFFIX)) {
+                disk.put(name.substring(0, name.length() - ENTRY_SUFFIX.length()), file.length());
+                diskBytes += file.length();
+            } else if (name.endsWith(TEMP_SUFFIX)) {
+                // Left over from an interrupted write.
+                file.delete();
+            }
+        }
+        evictFromDisk();
+    }
+
+    private File entryFile(String key) {
+        return new File(directory, key + ENTRY_SUFFIX);
+    }
+
+    private static byte[] readFile(File file) {
+        try (FileInputStream in = new FileInputStream(file)) {
+            long length = file.length();
+            if (length <= 0 || length > Integer.MAX_VALUE) {
+                return null;
+            }
+            byte[] bytes = new byte[(int) length];
+            new DataInputStream(in).readFully(bytes);
+            return bytes;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public synchronized long getMemoryHits() {
+        return memoryHits;
+    }
+
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    public synchronized long getDiskBytes() {
+        ensureIndexed();
+        return diskBytes;
+    }
+
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    // Hits in either tier over all lookups.
+    public synchronized float getHitRate() {
+        long lookups = memoryHits + diskHits + misses;
+        return lookups > 0 ? (memoryHits + diskHits) / (float) lookups : 0f;
+    }
+
+    public synchronized String describe() {
+        return String.format(Locale.US,
+                "cache %.0f%% hits (%d memory, %d disk, %d misses), %d KB memory, %d KB disk, %d evicted",
+                getHitRate() * 100f, memoryHits, diskHits, misses, memoryBytes / 1024, diskBytes / 1024,
+                evictions);
+    }
+}
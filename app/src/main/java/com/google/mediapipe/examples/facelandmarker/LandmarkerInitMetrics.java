@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import java.util.Locale;
+
+/**
+ * Start-up costs of the landmarker.
+ *
+ * Every build is split into creating the landmarker and its warm-up
+ * inference. The time from a setup starting to its first delivered result is
+ * tracked separately: the first one in the process is the cold start, later
+ * ones are reopens (e.g. after onResume). Hot swaps don't interrupt results,
+ * so they only count as builds.
+ */
+public class LandmarkerInitMetrics {
+    private long pendingSetupStartMs = -1;
+    private long coldStartMs = -1;
+    private long lastReopenMs = -1;
+    private long reopenCount = 0;
+
+    private long buildCount = 0;
+    private long lastCreateMs = 0;
+    private long lastWarmUpMs = 0;
+    private long totalBuildMs = 0;
+
+    // A setup that leaves the helper without results until it finishes
+    // started at nowMs.
+    public synchronized void onSetupStarted(long nowMs) {
+        pendingSetupStartMs = nowMs;
+    }
+
+    // Records one landmarker build.
+    public synchronized void recordBuild(long createMs, long warmUpMs) {
+        buildCount++;
+        lastCreateMs = createMs;
+        lastWarmUpMs = warmUpMs;
+        totalBuildMs += createMs + warmUpMs;
+    }
+
+    // Call for every delivered result. Returns the time since the pending
+    // setup started when this is its first result, -1 otherwise.
+    public synchronized long onResult(long nowMs) {
+        if (pendingSetupStartMs < 0) {
+            return -1;
+        }
+        long elapsedMs = nowMs - pendingSetupStartMs;
+        pendingSetupStartMs = -1;
+        if (coldStartMs < 0) {
+            coldStartMs = elapsedMs;
+        } else {
+            lastReopenMs = elapsedMs;
+            reopenCount++;
+        }
+        return elapsedMs;
+    }
+
+    // Time from the first setup to its first result, -1 until known.
+    public synchronized long getColdStartMs() {
+        return coldStartMs;
+    }
+
+    public synchronized long getLastReopenMs() {
+        return lastReopenMs;
+    }
+
+    public synchronized long getBuildCount() {
+        return buildCount;
+    }
+
+    public synchronized long getLastBuildMs() {
+        return lastCreateMs + lastWarmUpMs;
+    }
+
+    public synchronized float getAverageBuildMs() {
+        return buildCount > 0 ? totalBuildMs / (float) buildCount : 0f;
+    }
+
+    public synchronized String describe() {
+        return String.format(Locale.US,
+                "cold start %s, reopen %s (%d), builds %d: last %d+%d ms, avg %.0f ms",
+                formatMs(coldStartMs), formatMs(lastReopenMs), reopenCount,
+                buildCount, lastCreateMs, lastWarmUpMs, getAverageBuildMs());
+    }
+
+    private static String formatMs(long ms) {
+        return ms < 0 ? "--" : ms + " ms";
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free single-slot mailbox. A producer overwrites whatever the consumer
+ * has not taken yet, so the consumer only ever sees the most recent value and
+ * never a backlog. Overwritten values are counted as coalesced.
+ */
+public class LatestValueMailbox<T> {
+    private final AtomicReference<T> slot = new AtomicReference<>();
+    private final AtomicLong postedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    // Publishes value, replacing any value not taken yet. Returns the replaced
+    // value, or null when the slot was empty.
+    public T post(T value) {
+        T previous = slot.getAndSet(value);
+        postedCount.incrementAndGet();
+        if (previous != null) {
+            coalescedCount.incrementAndGet();
+        }
+        return previous;
+    }
+
+    // Takes the latest value, or returns null when nothing new was posted.
+    public T take() {
+        return slot.getAndSet(null);
+    }
+
+    public long getPostedCount() {
+        return postedCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+}
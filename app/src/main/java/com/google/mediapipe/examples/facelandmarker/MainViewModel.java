@@ -6,12 +6,32 @@ import androidx.lifecycle.ViewModel;
  * This ViewModel is used to store face landmarker helper settings.
  */
 public class MainViewModel extends ViewModel {
+    // Which overlay draws the landmarks; matches R.array.overlay_spinner_titles.
+    public static final int OVERLAY_VIEW = 0;
+    public static final int OVERLAY_SURFACE = 1;
+    // Where live stream frames come from; matches R.array.frame_source_spinner_titles.
+    public static final int FRAME_SOURCE_CAMERA = 0;
+    public static final int FRAME_SOURCE_SYNTHETIC = 1;
+    public static final int FRAME_SOURCE_REPLAY = 2;
 
     private int delegate = FaceLandmarkerHelper.DELEGATE_CPU;
     private float minFaceDetectionConfidence = FaceLandmarkerHelper.DEFAULT_FACE_DETECTION_CONFIDENCE;
     private float minFaceTrackingConfidence = FaceLandmarkerHelper.DEFAULT_FACE_TRACKING_CONFIDENCE;
     private float minFacePresenceConfidence = FaceLandmarkerHelper.DEFAULT_FACE_PRESENCE_CONFIDENCE;
     private int maxFaces = FaceLandmarkerHelper.DEFAULT_NUM_FACES;
+    private int ingestionMode = FaceLandmarkerHelper.INGESTION_BITMAP;
+    private int overlayMode = OVERLAY_VIEW;
+    // 0 runs inference as fast as the landmarker keeps up.
+    private float maxInferenceRateHz = 0f;
+    private boolean interpolationEnabled = false;
+    private boolean blendshapesEnabled = true;
+    // How long the landmarker stays loaded after the camera screen pauses.
+    private long keepWarmTimeoutMs = KeepWarmPolicy.DEFAULT_IDLE_TIMEOUT_MS;
+    // Lets QualityGovernor step below the settings above under load or heat.
+    private boolean adaptiveQualityEnabled = true;
+    private int frameSourceMode = FRAME_SOURCE_CAMERA;
+    // Rate of sources other than the camera, 0 for as fast as possible.
+    private float frameSourceRateHz = 30f;
 
     public int getCurrentDelegate() {
         return delegate;
@@ -33,6 +53,42 @@ public class MainViewModel extends ViewModel {
         return maxFaces;
     }
 
+    public int getCurrentIngestionMode() {
+        return ingestionMode;
+    }
+
+    public int getCurrentOverlayMode() {
+        return overlayMode;
+    }
+
+    public float getCurrentMaxInferenceRateHz() {
+        return maxInferenceRateHz;
+    }
+
+    public boolean isInterpolationEnabled() {
+        return interpolationEnabled;
+    }
+
+    public boolean isBlendshapesEnabled() {
+        return blendshapesEnabled;
+    }
+
+    public long getKeepWarmTimeoutMs() {
+        return keepWarmTimeoutMs;
+    }
+
+    public boolean isAdaptiveQualityEnabled() {
+        return adaptiveQualityEnabled;
+    }
+
+    public int getCurrentFrameSourceMode() {
+        return frameSourceMode;
+    }
+
+    public float getCurrentFrameSourceRateHz() {
+        return frameSourceRateHz;
+    }
+
     public void setDelegate(int delegate) {
         this.delegate = delegate;
     }
@@ -53,4 +109,40 @@ public class MainViewModel extends ViewModel {
         this.maxFaces = maxResults;
     }
 
+    public void setIngestionMode(int ingestionMode) {
+        this.ingestionMode = ingestionMode;
+    }
+
+    public void setOverlayMode(int overlayMode) {
+        this.overlayMode = overlayMode;
+    }
+
+    public void setMaxInferenceRateHz(float maxInferenceRateHz) {
+        this.maxInferenceRateHz = maxInferenceRateHz;
+    }
+
+    public void setInterpolationEnabled(boolean interpolationEnabled) {
+        this.interpolationEnabled = interpolationEnabled;
+    }
+
+    public void setBlendshapesEnabled(boolean blendshapesEnabled) {
+        this.blendshapesEnabled = blendshapesEnabled;
+    }
+
+    public void setKeepWarmTimeoutMs(long keepWarmTimeoutMs) {
+        this.keepWarmTimeoutMs = keepWarmTimeoutMs;
+    }
+
+    public void setAdaptiveQualityEnabled(boolean adaptiveQualityEnabled) {
+        this.adaptiveQualityEnabled = adaptiveQualityEnabled;
+    }
+
+    public void setFrameSourceMode(int frameSourceMode) {
+        this.frameSourceMode = frameSourceMode;
+    }
+
+    public void setFrameSourceRateHz(float frameSourceRateHz) {
+        this.frameSourceRateHz = frameSourceRateHz;
+    }
+
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of model assets, loaded once and shared by every
+ * landmarker instance.
+ *
+ * Assets stored uncompressed in the APK (see noCompress in build.gradle) are
+ * memory-mapped straight out of it, so loading costs no copy and the pages
+ * are shared with the OS page cache. Compressed assets fall back to a single
+ * read into a direct buffer.
+ */
+public final class ModelAssetCache {
+    private static final String TAG = "ModelAssetCache";
+
+    private static final Map<String, ByteBuffer> buffers = new HashMap<>();
+    private static final Map<String, Long> loadTimesMs = new HashMap<>();
+    private static final Map<String, String> hashes = new HashMap<>();
+
+    private ModelAssetCache() {
+    }
+
+    // Returns a read-only view of the asset, loading it on the first call.
+    // Every caller gets its own view, so positions are never shared.
+    public static synchronized ByteBuffer get(Context context, String assetName) throws IOException {
+        ByteBuffer buffer = buffers.get(assetName);
+        if (buffer == null) {
+            long start = SystemClock.uptimeMillis();
+            buffer = load(context.getApplicationContext(), assetName);
+            long loadTimeMs = SystemClock.uptimeMillis() - start;
+            buffers.put(assetName, buffer);
+            loadTimesMs.put(assetName, loadTimeMs);
+            Log.i(TAG, "Loaded " + assetName + " (" + buffer.capacity() + " bytes) in " + loadTimeMs + " ms");
+        }
+        return buffer.asReadOnlyBuffer();
+    }
+
+    // SHA-256 of the asset as hex, computed on the first call, e.g. to tell
+    // results of different models apart.
+    public static synchronized String getSha256(Context context, String assetName) throws IOException {
+        String hash = hashes.get(assetName);
+        if (hash == null) {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available.", e);
+            }
+            digest.update(get(context, assetName));
+            hash = LandmarkResultCache.toHex(digest.digest());
+            hashes.put(assetName, hash);
+        }
+        return hash;
+    }
+
+    // Forgets every loaded asset; the next get loads it again. Landmarkers
+    // built from a dropped buffer keep their own reference to it.
+    public static synchronized void clear() {
+        buffers.clear();
+    }
+
+    // Time the first get of assetName took, -1 if it was never loaded.
+    public static synchronized long getLoadTimeMs(String assetName) {
+        Long loadTimeMs = loadTimesMs.get(assetName);
+        return loadTimeMs != null ? loadTimeMs : -1;
+    }
+
+    private static ByteBuffer load(Context context, String assetName) throws IOException {
+        AssetFileDescriptor descriptor;
+        try {
+            descriptor = context.getAssets().openFd(assetName);
+        } catch (IOException e) {
+            // openFd only works on uncompressed assets.
+            Log.w(TAG, assetName + " is compressed in the APK, reading it into memory instead");
+            return read(context, assetName);
+        }
+        try (FileInputStream stream = new FileInputStream(descriptor.getFileDescriptor());
+             FileChannel channel = stream.getChannel()) {
+            // The mapping stays valid after the channel is closed.
+            return channel.map(FileChannel.MapMode.READ_ONLY, descriptor.getStartOffset(),
+                    descriptor.getDeclaredLength());
+        } finally {
+            descriptor.close();
+        }
+    }
+
+    private static ByteBuffer read(Context context, String assetName) throws IOException {
+        try (InputStream stream = context.getAssets().open(assetName)) {
+            byte[] chunk = new byte[64 * 1024];
+            ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(stream.available(), chunk.length))
+                    .order(ByteOrder.nativeOrder());
+            int read;
+            while ((read = stream.read(chunk)) != -1) {
+                if (buffer.remaining() < read) {
+                    ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + read))
+                            .order(ByteOrder.nativeOrder());
+                    buffer.flip();
+                    grown.put(buffer);
+                    buffer = grown;
+                }
+                buffer.put(chunk, 0, read);
+            }
+            buffer.flip();
+            // Trim to the asset's size so the view covers exactly the model.
+            return buffer.slice();
+        }
+    }
+}
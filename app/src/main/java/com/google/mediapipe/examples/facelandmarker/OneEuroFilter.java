@@ -0,0 +1,96 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import java.util.Arrays;
+
+/**
+ * One Euro filter (Casiez et al.) over a vector of independent channels.
+ *
+ * A low-pass filter whose cutoff rises with the signal's speed: slow movement
+ * is smoothed heavily to remove jitter, fast movement passes with little lag.
+ * minCutoffHz sets the smoothing at rest, beta how quickly the cutoff opens
+ * up with speed and derivativeCutoffHz the smoothing of the speed estimate.
+ */
+public class OneEuroFilter {
+    public static final float DEFAULT_MIN_CUTOFF_HZ = 1.0f;
+    public static final float DEFAULT_BETA = 0.5f;
+    public static final float DEFAULT_DERIVATIVE_CUTOFF_HZ = 1.0f;
+
+    private float minCutoffHz = DEFAULT_MIN_CUTOFF_HZ;
+    private float beta = DEFAULT_BETA;
+    private float derivativeCutoffHz = DEFAULT_DERIVATIVE_CUTOFF_HZ;
+
+    private float[] value = new float[0];
+    private float[] derivative = new float[0];
+    private int channels = 0;
+    private long lastTimestampNanos = 0;
+    private boolean initialized = false;
+
+    public void setParameters(float minCutoffHz, float beta, float derivativeCutoffHz) {
+        this.minCutoffHz = minCutoffHz;
+        this.beta = beta;
+        this.derivativeCutoffHz = derivativeCutoffHz;
+    }
+
+    // Filters data[0, channels) in place. The first call, or a call with a
+    // different channel count, starts over from the given values.
+    public void filter(float[] data, int channels, long timestampNanos) {
+        if (!initialized || channels != this.channels) {
+            start(data, channels, timestampNanos);
+            return;
+        }
+        if (timestampNanos <= lastTimestampNanos) {
+            // No time has passed; repeat the previous output.
+            System.arraycopy(value, 0, data, 0, channels);
+            return;
+        }
+        float dt = (timestampNanos - lastTimestampNanos) / 1e9f;
+        lastTimestampNanos = timestampNanos;
+        float derivativeAlpha = alpha(dt, derivativeCutoffHz);
+        for (int i = 0; i < channels; i++) {
+            float raw = data[i];
+            float dx = (raw - value[i]) / dt;
+            float smoothedDx = derivative[i] + derivativeAlpha * (dx - derivative[i]);
+            float cutoff = minCutoffHz + beta * Math.abs(smoothedDx);
+            float filtered = value[i] + alpha(dt, cutoff) * (raw - value[i]);
+            derivative[i] = smoothedDx;
+            value[i] = filtered;
+            data[i] = filtered;
+        }
+    }
+
+    public void reset() {
+        initialized = false;
+    }
+
+    private void start(float[] data, int channels, long timestampNanos) {
+        if (value.length < channels) {
+            value = new float[channels];
+            derivative = new float[channels];
+        }
+        System.arraycopy(data, 0, value, 0, channels);
+        Arrays.fill(derivative, 0, channels, 0f);
+        this.channels = channels;
+        lastTimestampNanos = timestampNanos;
+        initialized = true;
+    }
+
+    private static float alpha(float dt, float cutoffHz) {
+        float tau = 1f / (2f * (float) Math.PI * cutoffHz);
+        return 1f / (1f + tau / dt);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Tracks which landmarker outputs are consumed, and what a frame costs with
+ * each output combination.
+ *
+ * Consumers register a bit mask of the OUTPUT_* flags they read. The mask the
+ * landmarker has to be built with is the union of all registrations, and
+ * always includes the landmarks themselves. Inference times are kept as one
+ * moving average per combination, so the saving from dropping an output can
+ * be read off directly.
+ */
+public class OutputDemand {
+    public static final int OUTPUT_LANDMARKS = 1;
+    public static final int OUTPUT_BLENDSHAPES = 1 << 1;
+    public static final int OUTPUT_TRANSFORMATION_MATRICES = 1 << 2;
+    private static final int COMBINATIONS = 1 << 3;
+    private static final float TIME_SMOOTHING = 0.1f;
+
+    private final Map<Object, Integer> registrations = new IdentityHashMap<>();
+    private int requiredOutputs = OUTPUT_LANDMARKS;
+
+    private final float[] inferenceEmaMs = new float[COMBINATIONS];
+    private final long[] inferenceCounts = new long[COMBINATIONS];
+
+    // Sets the outputs consumer needs, replacing an earlier registration of
+    // the same consumer. Returns true when the required outputs changed.
+    public synchronized boolean register(Object consumer, int outputs) {
+        registrations.put(consumer, outputs);
+        return updateRequired();
+    }
+
+    // Returns true when the required outputs changed.
+    public synchronized boolean unregister(Object consumer) {
+        registrations.remove(consumer);
+        return updateRequired();
+    }
+
+    public synchronized int getRequiredOutputs() {
+        return requiredOutputs;
+    }
+
+    // Records the inference time of a frame run with the given outputs.
+    public synchronized void recordInference(int outputs, float inferenceMs) {
+        int index = outputs & (COMBINATIONS - 1);
+        inferenceEmaMs[index] = inferenceCounts[index] == 0
+                ? inferenceMs
+                : inferenceEmaMs[index] + TIME_SMOOTHING * (inferenceMs - inferenceEmaMs[index]);
+        inferenceCounts[index]++;
+    }
+
+    public synchronized float getInferenceEmaMs(int outputs) {
+        return inferenceEmaMs[outputs & (COMBINATIONS - 1)];
+    }
+
+    private boolean updateRequired() {
+        int outputs = OUTPUT_LANDMARKS;
+        for (int registered : registrations.values()) {
+            outputs |= registered;
+        }
+        boolean changed = outputs != requiredOutputs;
+        requiredOutputs = outputs;
+        return changed;
+    }
+
+    // Short label such as "L+B+M" for an output mask.
+    public static String describeOutputs(int outputs) {
+        StringBuilder builder = new StringBuilder("L");
+        if ((outputs & OUTPUT_BLENDSHAPES) != 0) {
+            builder.append("+B");
+        }
+        if ((outputs & OUTPUT_TRANSFORMATION_MATRICES) != 0) {
+            builder.append("+M");
+        }
+        return builder.toString();
+    }
+
+    // One entry per output combination that has run, for the stats panel.
+    public synchronized String describe() {
+        StringBuilder builder = new StringBuilder();
+        for (int outputs = 0; outputs < COMBINATIONS; outputs++) {
+            if (inferenceCounts[outputs] == 0) {
+                continue;
+            }
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(String.format(Locale.US, "%s %.1f ms", describeOutputs(outputs), inferenceEmaMs[outputs]));
+        }
+        return builder.toString();
+    }
+}
@@ -2,33 +2,26 @@ package com.google.mediapipe.examples.facelandmarker;
 
 import android.content.Context;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.View;
 
-import androidx.core.content.ContextCompat;
-
-import com.google.mediapipe.tasks.components.containers.Connection;
-import com.google.mediapipe.tasks.components.containers.NormalizedLandmark;
 import com.google.mediapipe.tasks.vision.core.RunningMode;
-import com.google.mediapipe.tasks.vision.facelandmarker.FaceLandmarker;
 import com.google.mediapipe.tasks.vision.facelandmarker.FaceLandmarkerResult;
 
-import java.util.List;
-import java.util.Set;
-
 
-public class OverlayView extends View {
+public class OverlayView extends View implements LandmarkOverlay {
 
-    private FaceLandmarkerResult results;
-    private Paint linePaint = new Paint();
-    private Paint pointPaint = new Paint();
+    // The frame being shown, retained while it is; ownFrame holds results
+    // passed in as a FaceLandmarkerResult.
+    private LandmarkFrame frame;
+    private final LandmarkFrame ownFrame = new LandmarkFrame();
+    private LandmarkRenderer renderer;
 
-    private float scaleFactor = 1f;
-    private int imageWidth = 1;
-    private int imageHeight = 1;
+    private PipelineMetrics pipelineMetrics;
+    private LandmarkInterpolator interpolator;
+    private final LandmarkInterpolator.Sample sample = new LandmarkInterpolator.Sample();
+    // Camera timestamp of the latest result, consumed by the first draw of it.
+    private long pendingCameraTimestampNanos = 0;
 
     public OverlayView(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -36,72 +29,109 @@ public class OverlayView extends View {
     }
 
     private void init() {
-        initPaints();
+        renderer = new LandmarkRenderer(getContext());
     }
 
+    @Override
     public void clear() {
-        results = null;
-        linePaint.reset();
-        pointPaint.reset();
+        showFrame(null);
+        renderer.resetPaints();
         invalidate();
-        initPaints();
     }
 
-    private void initPaints() {
-        linePaint.setColor(ContextCompat.getColor(getContext(), R.color.mp_color_primary));
-        linePaint.setStrokeWidth(LANDMARK_STROKE_WIDTH);
-        linePaint.setStyle(Paint.Style.STROKE);
+    @Override
+    public void setPipelineMetrics(PipelineMetrics pipelineMetrics) {
+        this.pipelineMetrics = pipelineMetrics;
+    }
 
-        pointPaint.setColor(Color.YELLOW);
-        pointPaint.setStrokeWidth(LANDMARK_STROKE_WIDTH);
-        pointPaint.setStyle(Paint.Style.FILL);
+    @Override
+    public void setInterpolator(LandmarkInterpolator interpolator) {
+        this.interpolator = interpolator;
+        invalidate();
+    }
+
+    @Override
+    public void setDetailLevel(int detailLevel) {
+        renderer.setDetailLevel(detailLevel);
+        postInvalidate();
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return false;
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        if (results == null || results.faceLandmarks().isEmpty()) {
+        if (frame == null || (interpolator == null && frame.getFaceCount() == 0)) {
             clear();
             return;
         }
-
-        for (List<NormalizedLandmark> landmark : results.faceLandmarks()) {
-            for (NormalizedLandmark normalizedLandmark : landmark) {
-                canvas.drawPoint(
-                        normalizedLandmark.x() * imageWidth * scaleFactor,
-                        normalizedLandmark.y() * imageHeight * scaleFactor,
-                        pointPaint);
+        long drawStart = System.nanoTime();
+        if (interpolator != null) {
+            if (interpolator.sample(drawStart, sample)) {
+                renderer.draw(canvas, sample);
+            }
+            // Keep drawing every frame while the sample still moves.
+            if (!sample.settled) {
+                postInvalidateOnAnimation();
             }
+        } else {
+            renderer.draw(canvas, frame);
         }
-
-        for (Connection connector : FaceLandmarker.FACE_LANDMARKS_CONNECTORS) {
-            canvas.drawLine(
-                    results.faceLandmarks().get(0).get(connector.start()).x() * imageWidth * scaleFactor,
-                    results.faceLandmarks().get(0).get(connector.start()).y() * imageHeight * scaleFactor,
-                    results.faceLandmarks().get(0).get(connector.end()).x() * imageWidth * scaleFactor,
-                    results.faceLandmarks().get(0).get(connector.end()).y() * imageHeight * scaleFactor,
-                    linePaint);
+        if (pipelineMetrics != null) {
+            long drawEnd = System.nanoTime();
+            pipelineMetrics.record(PipelineMetrics.STAGE_DRAW, drawEnd - drawStart);
+            if (pendingCameraTimestampNanos != 0) {
+                pipelineMetrics.record(PipelineMetrics.STAGE_END_TO_END, drawEnd - pendingCameraTimestampNanos);
+                pendingCameraTimestampNanos = 0;
+            }
         }
     }
 
+    @Override
+    public void setResults(FaceLandmarkerHelper.ResultBundle resultBundle, RunningMode runningMode) {
+        ownFrame.setResultBundle(resultBundle);
+        setResults(ownFrame, runningMode);
+    }
+
     public void setResults(FaceLandmarkerResult faceLandmarkerResults, int imageHeight, int imageWidth, RunningMode runningMode) {
-        results = faceLandmarkerResults;
-        this.imageHeight = imageHeight;
-        this.imageWidth = imageWidth;
-
-        switch (runningMode) {
-            case IMAGE:
-            case VIDEO:
-                scaleFactor = Math.min(getWidth() * 1f / imageWidth, getHeight() * 1f / imageHeight);
-                break;
-            case LIVE_STREAM:
-                scaleFactor = Math.max(getWidth() * 1f / imageWidth, getHeight() * 1f / imageHeight);
-                break;
-        }
+        setResults(faceLandmarkerResults, imageHeight, imageWidth, runningMode, 0, false);
+    }
+
+    // imageHeight and imageWidth are the display-space size of the input image.
+    // rotationDegrees (clockwise) and mirrored describe how the normalized
+    // landmarks in faceLandmarkerResults have to be turned to reach that space.
+    public void setResults(FaceLandmarkerResult faceLandmarkerResults, int imageHeight, int imageWidth, RunningMode runningMode,
+                           int rotationDegrees, boolean mirrored) {
+        ownFrame.setResult(faceLandmarkerResults);
+        ownFrame.setFrameInfo(0, imageHeight, imageWidth, rotationDegrees, mirrored, 0, 0);
+        setResults(ownFrame, runningMode);
+    }
+
+    @Override
+    public void setResults(LandmarkFrame landmarkFrame, RunningMode runningMode) {
+        showFrame(landmarkFrame);
+        renderer.setTransform(getWidth(), getHeight(), landmarkFrame.getInputImageWidth(),
+                landmarkFrame.getInputImageHeight(), runningMode, landmarkFrame.getRotationDegrees(),
+                landmarkFrame.isMirrored());
+        pendingCameraTimestampNanos = landmarkFrame.getCameraTimestampNanos();
         invalidate();
     }
 
-    private static final float LANDMARK_STROKE_WIDTH = 8F;
+    private void showFrame(LandmarkFrame landmarkFrame) {
+        if (landmarkFrame == frame) {
+            return;
+        }
+        if (landmarkFrame != null) {
+            landmarkFrame.retain();
+        }
+        if (frame != null) {
+            frame.release();
+        }
+        frame = landmarkFrame;
+    }
+
     private static final String TAG = "Face Landmarker Overlay";
 }
-
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A FrameSource that produces bitmaps on its own thread.
+ *
+ * At a fixed rate a frame is produced every period, whether or not the sink
+ * is done with the previous one, and dropped when it isn't, like a camera
+ * with a keep-only-latest analyzer. At rate 0 the next frame is produced
+ * while the sink works on the previous one and handed over as soon as the
+ * sink is done, which drives the pipeline as fast as it can go. Subclasses
+ * produce the frames; the source restarts from the first one when it runs
+ * out, unless looping is off.
+ */
+public abstract class PacedFrameSource implements FrameSource {
+    private static final String TAG = "PacedFrameSource";
+    // How long the source thread waits for the frame being delivered before
+    // closing.
+    private static final long CLOSE_TIMEOUT_MS = 1000;
+    private static final long JOIN_TIMEOUT_MS = 500;
+
+    // One frame is with the sink at a time.
+    private final Semaphore deliverySlot = new Semaphore(1);
+    private final AtomicLong producedCount = new AtomicLong();
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile float rateHz = 0f;
+    private volatile boolean looping = true;
+    private Thread thread;
+
+    // Prepares the first frame; runs on the source thread.
+    protected abstract void open() throws Exception;
+
+    // The next frame, or null at the end. Two frames may be out at a time:
+    // one with the sink and the one produced next.
+    protected abstract Bitmap nextFrame() throws Exception;
+
+    // Goes back to the first frame. Returns false when that isn't possible.
+    protected abstract boolean rewind() throws Exception;
+
+    // The sink is done with frame; runs on any thread.
+    protected void recycleFrame(Bitmap frame) {
+    }
+
+    // Releases what open acquired; runs on the source thread.
+    protected void close() {
+    }
+
+    // Rotation the frames need to be upright.
+    protected int getRotationDegrees() {
+        return 0;
+    }
+
+    public void setLooping(boolean looping) {
+        this.looping = looping;
+    }
+
+    @Override
+    public void setRateHz(float rateHz) {
+        this.rateHz = Math.max(0f, rateHz);
+    }
+
+    @Override
+    public synchronized void start(Executor executor, FrameSink sink) {
+        if (thread != null) {
+            throw new IllegalStateException("Frame source already started.");
+        }
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                produce(executor, sink);
+            }
+        }, "frame-source");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        Thread stopping;
+        synchronized (this) {
+            stopping = thread;
+            thread = null;
+        }
+        if (stopping == null) {
+            return;
+        }
+        stopping.interrupt();
+        try {
+            stopping.join(JOIN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void produce(Executor executor, FrameSink sink) {
+        try {
+            open();
+            long nextFrameNanos = System.nanoTime();
+            while (!Thread.currentThread().isInterrupted()) {
+                float rate = rateHz;
+                if (rate > 0f) {
+                    long periodNanos = (long) (1_000_000_000L / rate);
+                    long waitNanos = nextFrameNanos - System.nanoTime();
+                    if (waitNanos > 0) {
+                        TimeUnit.NANOSECONDS.sleep(waitNanos);
+                    }
+                    // A slow frame doesn't cause a burst of catch-up frames.
+                    nextFrameNanos = Math.max(nextFrameNanos + periodNanos, System.nanoTime());
+                }
+
+                // Produced without holding the slot, so decoding overlaps the
+                // sink's work on the previous frame.
+                Bitmap frame = nextFrame();
+                if (frame == null && looping && rewind()) {
+                    frame = nextFrame();
+                }
+                if (frame == null) {
+                    break;
+                }
+                producedCount.incrementAndGet();
+                if (rate > 0f) {
+                    if (!deliverySlot.tryAcquire()) {
+                        // The sink is still busy with the previous frame.
+                        droppedCount.incrementAndGet();
+                        recycleFrame(frame);
+                        continue;
+                    }
+                } else {
+                    try {
+                        deliverySlot.acquire();
+                    } catch (InterruptedException e) {
+                        recycleFrame(frame);
+                        throw e;
+                    }
+                }
+                deliver(executor, sink, frame, System.nanoTime());
+            }
+        } catch (InterruptedException e) {
+            // Stopped.
+        } catch (Exception e) {
+            Log.e(TAG, "Frame source failed", e);
+        } finally {
+            closeWhenDelivered();
+        }
+    }
+
+    private void deliver(Executor executor, FrameSink sink, Bitmap frame, long timestampNanos) {
+        int rotationDegrees = getRotationDegrees();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        sink.onBitmap(frame, timestampNanos, rotationDegrees);
+                    } finally {
+                        recycleFrame(frame);
+                        deliverySlot.release();
+                    }
+                }
+            });
+            deliveredCount.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            // The conversion stage is full or shut down.
+            droppedCount.incrementAndGet();
+            recycleFrame(frame);
+            deliverySlot.release();
+        }
+    }
+
+    // Frames share buffers with the source, so it only closes once the sink
+    // is done with the last one. If that takes too long the buffers are left
+    // to the garbage collector instead.
+    private void closeWhenDelivered() {
+        boolean interrupted = Thread.interrupted();
+        try {
+            if (deliverySlot.tryAcquire(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                deliverySlot.release();
+                close();
+            } else {
+                Log.w(TAG, "Frame still with the sink, not closing");
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public String describe() {
+        float rate = rateHz;
+        return String.format(Locale.US, "%s at %s, produced %d, delivered %d, dropped %d",
+                getName(), rate > 0f ? String.format(Locale.US, "%.0f Hz", rate) : "max",
+                producedCount.get(), deliveredCount.get(), droppedCount.get());
+    }
+
+    // Short name for describe.
+    protected abstract String getName();
+}
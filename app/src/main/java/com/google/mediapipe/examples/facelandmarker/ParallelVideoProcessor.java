@@ -0,0 +1,401 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import android.content.Context;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Processes long videos on several VIDEO mode landmarkers at once.
+ *
+ * The video is split at keyframes into segments (see VideoSegmentPlanner),
+ * and a fixed pool of workers, each with its own landmarker and
+ * VideoLandmarkProcessor, takes them in order. A segment starts decoding a
+ * little before its range, so tracking has warmed up when its own frames
+ * start. The results are stitched back into one stream in timestamp order.
+ * Landmarkers are created on first use and kept for later jobs until close.
+ */
+public class ParallelVideoProcessor {
+    private static final String TAG = "ParallelVideoProcessor";
+    // Each landmarker holds its own graph and runs its own threads, so more
+    // instances than this mostly add memory.
+    public static final int MAX_WORKERS = 4;
+
+    /**
+     * Creates the landmarker helper for one worker, in RunningMode.VIDEO.
+     */
+    public interface HelperFactory {
+        FaceLandmarkerHelper create();
+    }
+
+    private final Context context;
+    private final HelperFactory helperFactory;
+    private final int workerCount;
+    // Idle workers; created lazily up to workerCount.
+    private final BlockingQueue<VideoLandmarkProcessor> idleWorkers;
+    private final FaceLandmarkerHelper[] helpers;
+    private int createdWorkers = 0;
+    private volatile int frameStride = 1;
+    private volatile long overlapUs = VideoSegmentPlanner.DEFAULT_OVERLAP_US;
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private final VideoLandmarkProcessor[] running;
+
+    public ParallelVideoProcessor(Context context, HelperFactory helperFactory, int workerCount) {
+        this.context = context;
+        this.helperFactory = helperFactory;
+        this.workerCount = Math.max(1, Math.min(workerCount, MAX_WORKERS));
+        this.idleWorkers = new ArrayBlockingQueue<>(this.workerCount);
+        this.helpers = new FaceLandmarkerHelper[this.workerCount];
+        this.running = new VideoLandmarkProcessor[this.workerCount];
+    }
+
+    // Workers for this device: half the cores, as decoding and conversion
+    // run next to each inference, within MAX_WORKERS.
+    public static int defaultWorkerCount() {
+        return Math.max(1, Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    public void setFrameStride(int frameStride) {
+        if (frameStride < 1) {
+            throw new IllegalArgumentException("frameStride must be at least 1.");
+        }
+        this.frameStride = frameStride;
+    }
+
+    // Video decoded ahead of each segment but the first, to warm up tracking.
+    public void setOverlapUs(long overlapUs) {
+        this.overlapUs = Math.max(0, overlapUs);
+    }
+
+    public void cancel() {
+        cancelled.set(true);
+        synchronized (running) {
+            for (VideoLandmarkProcessor processor : running) {
+                if (processor != null) {
+                    processor.cancel();
+                }
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    // Processes the video at uri with up to the given number of workers, at
+    // most getWorkerCount(), and returns once it is done, cancelled or
+    // failed. The listener gets every frame once, in timestamp order, on
+    // whichever worker thread completes it.
+    public VideoProcessingStats process(Uri uri, int workers, VideoLandmarkProcessor.Listener listener) {
+        cancelled.set(false);
+        VideoProcessingStats stats = new VideoProcessingStats();
+        stats.onStarted(SystemClock.uptimeMillis());
+        int jobWorkers = Math.max(1, Math.min(workers, workerCount));
+
+        List<VideoSegmentPlanner.Segment> segments;
+        long durationUs;
+        try {
+            KeyframeIndex index = scanKeyframes(uri);
+            durationUs = index.durationUs;
+            segments = VideoSegmentPlanner.plan(index.keyframesUs, durationUs, jobWorkers, overlapUs);
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Could not read " + uri, e);
+            listener.onError("Could not read the video: " + e.getMessage());
+            stats.onFinished(SystemClock.uptimeMillis());
+            return stats;
+        }
+
+        SegmentStitcher<LandmarkFrame> stitcher = new SegmentStitcher<>(segments.size(),
+                new SegmentStitcher.Sink<LandmarkFrame>() {
+                    @Override
+                    public void emit(LandmarkFrame frame) {
+                        try {
+                            listener.onFrame(frame);
+                        } finally {
+                            frame.release();
+                        }
+                    }
+
+                    @Override
+                    public void discard(LandmarkFrame frame) {
+                        frame.release();
+                    }
+                });
+        AtomicLong positionUs = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(segments.size());
+        ExecutorService executor = Executors.newFixedThreadPool(jobWorkers, runnable -> {
+            Thread thread = new Thread(runnable, "video-segment");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            // The executor's queue is FIFO, so segments start in order.
+            for (VideoSegmentPlanner.Segment segment : segments) {
+                executor.execute(() -> {
+                    try {
+                        runSegment(uri, segment, segments.size() == 1, durationUs, stats, stitcher, positionUs,
+                            listener);
+                    } finally {
+                        stitcher.finish(segment.index);
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+        if (cancelled.get()) {
+            stitcher.cancel();
+        }
+        stats.onFinished(SystemClock.uptimeMillis());
+        Log.i(TAG, segments.size() + " segments on " + jobWorkers + " workers, at most "
+                + stitcher.getMaxHeldCount() + " frames held back: " + stats.describe());
+        return stats;
+    }
+
+    private void runSegment(Uri uri, VideoSegmentPlanner.Segment segment, boolean only, long durationUs,
+                            VideoProcessingStats stats, SegmentStitcher<LandmarkFrame> stitcher,
+                            AtomicLong positionUs, VideoLandmarkProcessor.Listener listener) {
+        if (cancelled.get()) {
+            return;
+        }
+        VideoLandmarkProcessor processor;
+        try {
+            processor = takeWorker();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        // Left cancelled by an earlier job; register cancels it again if
+        // this one is.
+        processor.clearCancelled();
+        int slot = register(processor);
+        try {
+            processor.setFrameStride(frameStride);
+            processor.processRange(uri, segment.warmUpFromUs, segment.startUs, segment.endUs, stats,
+                    new VideoLandmarkProcessor.Listener() {
+                        @Override
+                        public void onFrame(LandmarkFrame frame) {
+                            // Held past the callback until its turn comes.
+                            frame.retain();
+                            stitcher.add(segment.index, frame);
+                        }
+
+                        @Override
+                        public void onProgress(long framePositionUs, long frameDurationUs) {
+                            // With several segments, progress moves as
+                            // segments finish.
+                            if (only) {
+                                listener.onProgress(framePositionUs, frameDurationUs);
+                            }
+                        }
+
+                        @Override
+                        public void onError(String error) {
+                            if (!cancelled.getAndSet(true)) {
+                                listener.onError(error);
+                                cancel();
+                            }
+                        }
+                    });
+        } finally {
+            unregister(slot);
+            idleWorkers.add(processor);
+        }
+        if (!only) {
+            long segmentUs = Math.max(0, Math.min(segment.endUs, durationUs) - segment.startUs);
+            listener.onProgress(positionUs.addAndGet(segmentUs), durationUs);
+        }
+    }
+
+    // Creates every worker and runs a first inference on each, so that
+    // neither loading the model nor setting up the graph lands inside a
+    // later job. Waits for running jobs to give their workers back.
+    public void prepareWorkers() throws InterruptedException {
+        VideoLandmarkProcessor[] taken = new VideoLandmarkProcessor[workerCount];
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                taken[i] = takeWorker();
+                taken[i].warmUp();
+            }
+        } finally {
+            for (VideoLandmarkProcessor processor : taken) {
+                if (processor != null) {
+                    idleWorkers.add(processor);
+                }
+            }
+        }
+    }
+
+    private VideoLandmarkProcessor takeWorker() throws InterruptedException {
+        synchronized (idleWorkers) {
+            VideoLandmarkProcessor idle = idleWorkers.poll();
+            if (idle != null) {
+                return idle;
+            }
+            if (createdWorkers < workerCount) {
+                FaceLandmarkerHelper helper = helperFactory.create();
+                helpers[createdWorkers++] = helper;
+                return new VideoLandmarkProcessor(context, helper);
+            }
+        }
+        return idleWorkers.take();
+    }
+
+    private int register(VideoLandmarkProcessor processor) {
+        synchronized (running) {
+            for (int slot = 0; slot < running.length; slot++) {
+                if (running[slot] == null) {
+                    running[slot] = processor;
+                    if (cancelled.get()) {
+                        processor.cancel();
+                    }
+                    return slot;
+                }
+            }
+        }
+        throw new IllegalStateException("More segments running than workers.");
+    }
+
+    private void unregister(int slot) {
+        synchronized (running) {
+            running[slot] = null;
+        }
+    }
+
+    // Closes the landmarkers. The processor can't be used afterwards.
+    public void close() {
+        cancel();
+        synchronized (idleWorkers) {
+            for (int i = 0; i < createdWorkers; i++) {
+                helpers[i].clearFaceLandmarker();
+            }
+        }
+    }
+
+    // Runs the same job with 1, 2, 4 ... up to getWorkerCount() workers and
+    // reports the throughput of each. Results are discarded. All workers are
+    // set up before the first run, so every run times processing alone.
+    public VideoScalingReport runScalingBenchmark(Uri uri, VideoLandmarkProcessor.Listener listener) {
+        VideoScalingReport report = new VideoScalingReport();
+        try {
+            prepareWorkers();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return report;
+        }
+        VideoLandmarkProcessor.Listener progressOnly = new VideoLandmarkProcessor.Listener() {
+            @Override
+            public void onFrame(LandmarkFrame frame) {
+            }
+
+            @Override
+            public void onProgress(long positionUs, long durationUs) {
+                listener.onProgress(positionUs, durationUs);
+            }
+
+            @Override
+            public void onError(String error) {
+                listener.onError(error);
+            }
+        };
+        for (int workers = 1; workers <= workerCount && !cancelled.get(); workers = nextWorkerCount(workers)) {
+            VideoProcessingStats stats = process(uri, workers, progressOnly);
+            if (cancelled.get()) {
+                break;
+            }
+            report.add(workers, stats.getFramesPerSecond());
+            Log.i(TAG, workers + " workers: " + stats.describe());
+        }
+        return report;
+    }
+
+    private int nextWorkerCount(int workers) {
+        return workers < workerCount && workers * 2 > workerCount ? workerCount : workers * 2;
+    }
+
+    /**
+     * Keyframe times of a video track, in increasing order, and its duration.
+     */
+    private static final class KeyframeIndex {
+        final long[] keyframesUs;
+        final long durationUs;
+
+        KeyframeIndex(long[] keyframesUs, long durationUs) {
+            this.keyframesUs = keyframesUs;
+            this.durationUs = durationUs;
+        }
+    }
+
+    // Walks the samples of the first video track without decoding them.
+    private KeyframeIndex scanKeyframes(Uri uri) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(context, uri, null);
+            int track = -1;
+            for (int i = 0; i < extractor.getTrackCount() && track < 0; i++) {
+                String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("video/")) {
+                    track = i;
+                }
+            }
+            if (track < 0) {
+                throw new IOException("No video track in " + uri);
+            }
+            MediaFormat format = extractor.getTrackFormat(track);
+            extractor.selectTrack(track);
+            long[] keyframes = new long[16];
+            int found = 0;
+            for (long timeUs = extractor.getSampleTime(); timeUs >= 0; timeUs = extractor.getSampleTime()) {
+                if ((extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0) {
+                    if (found == keyframes.length) {
+                        keyframes = Arrays.copyOf(keyframes, found * 2);
+                    }
+                    keyframes[found++] = timeUs;
+                }
+                extractor.advance();
+            }
+            long durationUs = format.containsKey(MediaFormat.KEY_DURATION)
+                    ? format.getLong(MediaFormat.KEY_DURATION) : 0;
+            return new KeyframeIndex(Arrays.copyOf(keyframes, found), durationUs);
+        } finally {
+            extractor.release();
+        }
+    }
+}
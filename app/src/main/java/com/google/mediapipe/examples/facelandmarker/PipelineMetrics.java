@@ -0,0 +1,127 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import android.os.SystemClock;
+
+import java.util.Locale;
+
+/**
+ * Per-stage latency histograms for the live stream pipeline.
+ *
+ * Every stage owns one {@link LatencyHistogram}, so recording a sample is a
+ * handful of atomic increments. All durations are measured with
+ * System.nanoTime(); camera timestamps are converted to that clock with
+ * {@link #cameraTimestampToNanoTime(long)}.
+ */
+public class PipelineMetrics {
+    // Camera sensor timestamp to ImageAnalysis callback.
+    public static final int STAGE_RECEIPT = 0;
+    // Copying (or converting) the camera planes into a bitmap.
+    public static final int STAGE_PIXEL_COPY = 1;
+    // Rendering the frame upright when rotation is done in the bitmap.
+    public static final int STAGE_ROTATION = 2;
+    // Wrapping the pixels as an MPImage.
+    public static final int STAGE_MPIMAGE_BUILD = 3;
+    // Time spent inside detectAsync.
+    public static final int STAGE_SUBMIT = 4;
+    // detectAsync returning to the result callback.
+    public static final int STAGE_RESULT = 5;
+    // Result callback to the UI thread picking the result up.
+    public static final int STAGE_UI_POST = 6;
+    // OverlayView.onDraw.
+    public static final int STAGE_DRAW = 7;
+    // Camera sensor timestamp to the end of the overlay draw.
+    public static final int STAGE_END_TO_END = 8;
+    public static final int STAGE_COUNT = 9;
+
+    private static final String[] STAGE_NAMES = {
+            "receipt", "copy", "rotate", "mpimage", "submit", "result", "ui post", "draw", "end-to-end"
+    };
+    // Camera timestamps further than this from System.nanoTime() are assumed
+    // to be on the elapsedRealtime clock instead.
+    private static final long CLOCK_MATCH_TOLERANCE_NS = 1_000_000_000L;
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGE_COUNT];
+
+    public PipelineMetrics() {
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(int stage, long durationNanos) {
+        histograms[stage].recordNanos(durationNanos);
+    }
+
+    public void recordSince(int stage, long startNanos) {
+        histograms[stage].recordNanos(System.nanoTime() - startNanos);
+    }
+
+    public LatencyHistogram.Snapshot snapshot(int stage) {
+        return histograms[stage].snapshot();
+    }
+
+    public LatencyHistogram.Snapshot[] snapshotAll() {
+        LatencyHistogram.Snapshot[] snapshots = new LatencyHistogram.Snapshot[STAGE_COUNT];
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            snapshots[i] = histograms[i].snapshot();
+        }
+        return snapshots;
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    public static String getStageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    // CameraX reports sensor timestamps on either the System.nanoTime() or the
+    // elapsedRealtimeNanos() time base depending on the device. Picks whichever
+    // is plausible and returns the timestamp on the System.nanoTime() base.
+    public static long cameraTimestampToNanoTime(long cameraTimestampNs) {
+        long now = System.nanoTime();
+        if (Math.abs(now - cameraTimestampNs) < CLOCK_MATCH_TOLERANCE_NS) {
+            return cameraTimestampNs;
+        }
+        return cameraTimestampNs + (now - SystemClock.elapsedRealtimeNanos());
+    }
+
+    // One line per stage with samples, for the bottom sheet and logs.
+    public String describe() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            LatencyHistogram.Snapshot snapshot = histograms[i].snapshot();
+            if (snapshot.getCount() == 0) {
+                continue;
+            }
+            if (builder.length() > 0) {
+                builder.append('\n');
+            }
+            builder.append(String.format(Locale.US, "%-10s %6.1f %6.1f %6.1f %6.1f",
+                    STAGE_NAMES[i],
+                    snapshot.getP50Micros() / 1000f,
+                    snapshot.getP90Micros() / 1000f,
+                    snapshot.getP99Micros() / 1000f,
+                    snapshot.getMaxMicros() / 1000f));
+        }
+        return builder.toString();
+    }
+}
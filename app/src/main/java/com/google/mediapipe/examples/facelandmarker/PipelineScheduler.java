@@ -0,0 +1,176 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One thread per live stream pipeline stage, connected by bounded queues.
+ *
+ * Frame conversion, inference submission, result post-processing and control
+ * operations (building, swapping and closing the landmarker) each get their
+ * own thread, so converting the next frame overlaps inference on the current
+ * one and a model load never holds up the camera. Queues are bounded; a full
+ * stage rejects work instead of building a backlog, and the caller decides
+ * what to drop. Shutdown waits at most a given time for all stages together.
+ */
+public class PipelineScheduler {
+    public static final int STAGE_CONVERSION = 0;
+    public static final int STAGE_SUBMISSION = 1;
+    public static final int STAGE_POST_PROCESSING = 2;
+    public static final int STAGE_CONTROL = 3;
+    public static final int STAGE_COUNT = 4;
+
+    private static final String[] STAGE_NAMES = {"convert", "submit", "post", "control"};
+    // Frames hand over one at a time; control operations are rare but must
+    // not be lost, so they get more room.
+    private static final int[] DEFAULT_QUEUE_CAPACITIES = {1, 1, 1, 16};
+
+    private final ThreadPoolExecutor[] executors = new ThreadPoolExecutor[STAGE_COUNT];
+    private final int controlCapacity;
+    private final AtomicLong[] rejectedCounts = new AtomicLong[STAGE_COUNT];
+
+    public PipelineScheduler() {
+        this(DEFAULT_QUEUE_CAPACITIES);
+    }
+
+    // queueCapacities holds one entry per stage.
+    public PipelineScheduler(int[] queueCapacities) {
+        if (queueCapacities.length != STAGE_COUNT) {
+            throw new IllegalArgumentException("One queue capacity per stage is required.");
+        }
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            if (queueCapacities[stage] <= 0) {
+                throw new IllegalArgumentException("Queue capacities must be positive.");
+            }
+            rejectedCounts[stage] = new AtomicLong();
+            if (stage != STAGE_CONTROL) {
+                executors[stage] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(queueCapacities[stage]), threadFactory(stage));
+            }
+        }
+        // The control stage also runs delayed work, e.g. debounced rebuilds.
+        // Its queue is unbounded by construction and bounded on submission.
+        controlCapacity = queueCapacities[STAGE_CONTROL];
+        ScheduledThreadPoolExecutor control = new ScheduledThreadPoolExecutor(1, threadFactory(STAGE_CONTROL));
+        control.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        control.setRemoveOnCancelPolicy(true);
+        executors[STAGE_CONTROL] = control;
+    }
+
+    private static ThreadFactory threadFactory(int stage) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-" + STAGE_NAMES[stage]);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // The stage's executor as-is, e.g. for the CameraX analyzer. It throws
+    // RejectedExecutionException when the stage is full.
+    public Executor getExecutor(int stage) {
+        return executors[stage];
+    }
+
+    // Queues task on stage. Returns false, without running it, when the stage
+    // is full or shut down.
+    public boolean offer(int stage, Runnable task) {
+        ThreadPoolExecutor executor = executors[stage];
+        if (stage == STAGE_CONTROL && executor.getQueue().size() >= controlCapacity) {
+            rejectedCounts[stage].incrementAndGet();
+            return false;
+        }
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejectedCounts[stage].incrementAndGet();
+            return false;
+        }
+    }
+
+    // Runs task on the control stage after delayMs. Returns null when the
+    // stage is full or shut down.
+    public ScheduledFuture<?> schedule(Runnable task, long delayMs) {
+        ScheduledThreadPoolExecutor control = (ScheduledThreadPoolExecutor) executors[STAGE_CONTROL];
+        if (control.getQueue().size() >= controlCapacity) {
+            rejectedCounts[STAGE_CONTROL].incrementAndGet();
+            return null;
+        }
+        try {
+            return control.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            rejectedCounts[STAGE_CONTROL].incrementAndGet();
+            return null;
+        }
+    }
+
+    public boolean isShutdown() {
+        return executors[STAGE_CONTROL].isShutdown();
+    }
+
+    // Lets queued work finish for up to timeoutMs in total, then interrupts
+    // whatever is still running. Returns true when every stage finished in
+    // time. Pending delayed control work is dropped.
+    public boolean shutdown(long timeoutMs) {
+        for (ThreadPoolExecutor executor : executors) {
+            executor.shutdown();
+        }
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        boolean terminated = true;
+        try {
+            for (ThreadPoolExecutor executor : executors) {
+                long remainingNanos = deadlineNanos - System.nanoTime();
+                terminated &= executor.awaitTermination(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            terminated = false;
+        }
+        if (!terminated) {
+            for (ThreadPoolExecutor executor : executors) {
+                executor.shutdownNow();
+            }
+        }
+        return terminated;
+    }
+
+    public long getRejectedCount(int stage) {
+        return rejectedCounts[stage].get();
+    }
+
+    // Queue depth and rejections per stage, for the stats panel.
+    public String describe() {
+        StringBuilder builder = new StringBuilder();
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            if (stage > 0) {
+                builder.append(", ");
+            }
+            builder.append(String.format(Locale.US, "%s q%d r%d", STAGE_NAMES[stage],
+                    executors[stage].getQueue().size(), rejectedCounts[stage].get()));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import android.os.PowerManager;
+
+import java.util.Locale;
+
+/**
+ * Steps the pipeline down a quality ladder while inference latency or the
+ * device temperature is too high, and back up once it has recovered.
+ *
+ * Level 0 is whatever the user configured; every further level gives up a
+ * little more, cheapest to apply first: inference rate, overlay detail,
+ * blendshapes, the number of faces and finally the analysis resolution. The
+ * user's settings stay the ceiling, a level never raises anything above them.
+ *
+ * Latency has to stay above the high watermark for a while before a step
+ * down and below the (much lower) low watermark for longer before a step up,
+ * and every step is followed by a cooldown, so the governor doesn't
+ * oscillate. A step down shortly after a step up doubles the time needed for
+ * the next step up. The thermal status sets a floor the level can't go
+ * below, whatever the latency. The governor only decides; the caller
+ * applies the level.
+ */
+public class QualityGovernor {
+    public static final int MAX_LEVEL = 6;
+    public static final float DEFAULT_HIGH_LATENCY_MS = 50f;
+    public static final float DEFAULT_LOW_LATENCY_MS = 30f;
+
+    static final long DEGRADE_HOLD_MS = 1_500;
+    static final long UPGRADE_HOLD_MS = 10_000;
+    static final long MAX_UPGRADE_HOLD_MS = 80_000;
+    static final long STEP_COOLDOWN_MS = 3_000;
+
+    // Per level: inference rate cap (0 for none), faces, blendshapes, overlay
+    // detail and the long edge of the analysis resolution (0 for the camera
+    // default).
+    private static final float[] RATE_CAP_HZ = {0f, 15f, 15f, 15f, 10f, 10f, 5f};
+    private static final int[] MAX_FACES = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+            Integer.MAX_VALUE, 1, 1, 1};
+    private static final boolean[] BLENDSHAPES = {true, true, true, false, false, false, false};
+    private static final int[] OVERLAY_DETAIL = {LandmarkRenderer.DETAIL_FULL, LandmarkRenderer.DETAIL_FULL,
+            LandmarkRenderer.DETAIL_CONTOURS, LandmarkRenderer.DETAIL_CONTOURS, LandmarkRenderer.DETAIL_CONTOURS,
+            LandmarkRenderer.DETAIL_CONTOURS, LandmarkRenderer.DETAIL_CONTOURS};
+    private static final int[] ANALYSIS_LONG_EDGE = {0, 0, 0, 0, 0, 480, 320};
+
+    private float highLatencyMs = DEFAULT_HIGH_LATENCY_MS;
+    private float lowLatencyMs = DEFAULT_LOW_LATENCY_MS;
+
+    private int level = 0;
+    private int thermalStatus = PowerManager.THERMAL_STATUS_NONE;
+    private long highSinceMs = -1;
+    private long lowSinceMs = -1;
+    private long lastStepMs = Long.MIN_VALUE / 2;
+    private long lastUpgradeMs = Long.MIN_VALUE / 2;
+    private long upgradeHoldMs = UPGRADE_HOLD_MS;
+
+    private long degradeCount = 0;
+    private long upgradeCount = 0;
+
+    // Latency above highLatencyMs counts as overloaded, below lowLatencyMs as
+    // having headroom.
+    public synchronized void setLatencyWatermarksMs(float lowLatencyMs, float highLatencyMs) {
+        if (lowLatencyMs <= 0 || lowLatencyMs >= highLatencyMs) {
+            throw new IllegalArgumentException("Watermarks must satisfy 0 < low < high.");
+        }
+        this.lowLatencyMs = lowLatencyMs;
+        this.highLatencyMs = highLatencyMs;
+    }
+
+    // Feeds one measurement. latencyMs <= 0 means nothing was measured (e.g.
+    // no face yet) and only the thermal floor applies. Returns the level to
+    // run at.
+    public synchronized int onSample(long nowMs, float latencyMs, int thermalStatus) {
+        this.thermalStatus = thermalStatus;
+        int floor = thermalFloor(thermalStatus);
+        if (level < floor) {
+            // Heat is not debounced, it only gets worse by waiting.
+            step(floor, nowMs);
+            degradeCount++;
+            return level;
+        }
+
+        if (latencyMs <= 0) {
+            highSinceMs = -1;
+            lowSinceMs = -1;
+            return level;
+        }
+        if (latencyMs > highLatencyMs) {
+            lowSinceMs = -1;
+            if (highSinceMs < 0) {
+                highSinceMs = nowMs;
+            }
+            if (level < MAX_LEVEL && nowMs - highSinceMs >= DEGRADE_HOLD_MS
+                    && nowMs - lastStepMs >= STEP_COOLDOWN_MS) {
+                if (nowMs - lastUpgradeMs < upgradeHoldMs) {
+                    // The last step up didn't hold, wait longer next time.
+                    upgradeHoldMs = Math.min(upgradeHoldMs * 2, MAX_UPGRADE_HOLD_MS);
+                }
+                step(level + 1, nowMs);
+                degradeCount++;
+            }
+        } else if (latencyMs < lowLatencyMs) {
+            highSinceMs = -1;
+            if (lowSinceMs < 0) {
+                lowSinceMs = nowMs;
+            }
+            if (level > floor && nowMs - lowSinceMs >= upgradeHoldMs
+                    && nowMs - lastStepMs >= STEP_COOLDOWN_MS) {
+                step(level - 1, nowMs);
+                lastUpgradeMs = nowMs;
+                upgradeCount++;
+            }
+        } else {
+            // Between the watermarks: keep the level and start over.
+            highSinceMs = -1;
+            lowSinceMs = -1;
+        }
+        return level;
+    }
+
+    private void step(int newLevel, long nowMs) {
+        level = newLevel;
+        lastStepMs = nowMs;
+        highSinceMs = -1;
+        lowSinceMs = -1;
+    }
+
+    // Back to full quality, e.g. when the governor is switched off.
+    public synchronized void reset() {
+        level = 0;
+        highSinceMs = -1;
+        lowSinceMs = -1;
+        lastStepMs = Long.MIN_VALUE / 2;
+        lastUpgradeMs = Long.MIN_VALUE / 2;
+        upgradeHoldMs = UPGRADE_HOLD_MS;
+    }
+
+    public synchronized int getLevel() {
+        return level;
+    }
+
+    synchronized long getUpgradeHoldMs() {
+        return upgradeHoldMs;
+    }
+
+    // The lowest level allowed at a thermal status.
+    static int thermalFloor(int thermalStatus) {
+        if (thermalStatus >= PowerManager.THERMAL_STATUS_CRITICAL) {
+            return MAX_LEVEL;
+        }
+        if (thermalStatus >= PowerManager.THERMAL_STATUS_SEVERE) {
+            return 4;
+        }
+        if (thermalStatus >= PowerManager.THERMAL_STATUS_MODERATE) {
+            return 2;
+        }
+        return 0;
+    }
+
+    // The settings at a level, given the user's settings as the ceiling.
+
+    // 0 means no cap.
+    public static float effectiveRateCapHz(int level, float ceilingHz) {
+        float capHz = RATE_CAP_HZ[level];
+        if (capHz == 0f) {
+            return ceilingHz;
+        }
+        return ceilingHz == 0f ? capHz : Math.min(ceilingHz, capHz);
+    }
+
+    public static int effectiveMaxFaces(int level, int ceilingFaces) {
+        return Math.min(ceilingFaces, MAX_FACES[level]);
+    }
+
+    public static boolean effectiveBlendshapes(int level, boolean ceilingEnabled) {
+        return ceilingEnabled && BLENDSHAPES[level];
+    }
+
+    public static int overlayDetail(int level) {
+        return OVERLAY_DETAIL[level];
+    }
+
+    // 0 keeps the camera's default analysis resolution.
+    public static int analysisLongEdge(int level) {
+        return ANALYSIS_LONG_EDGE[level];
+    }
+
+    public synchronized String describe() {
+        return String.format(Locale.US, "level %d/%d, thermal %d, down %d, up %d, up hold %d ms",
+                level, MAX_LEVEL, thermalStatus, degradeCount, upgradeCount, upgradeHoldMs);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Tells whether a camera frame shows the same scene as the last frame that
+ * went through inference, so its result can be reused.
+ *
+ * Each frame is reduced to a small grid of mean luminance values, read
+ * straight from the camera plane at a few hundred pixels. A frame whose
+ * grid differs from the reference grid by less than the threshold (mean
+ * absolute difference, 0..255) is unchanged, unless the reference is older
+ * than the maximum staleness, which forces a real inference now and then.
+ * The reference is the last frame passed to onInferred.
+ *
+ * Sampling and the decision run on the conversion thread; the counters may
+ * be read from anywhere.
+ */
+public class SceneChangeDetector {
+    public static final float DEFAULT_THRESHOLD = 2.5f;
+    public static final long DEFAULT_MAX_STALENESS_MS = 1000;
+    static final int GRID_COLUMNS = 16;
+    static final int GRID_ROWS = 12;
+    // Pixels averaged per cell along each axis.
+    private static final int SAMPLES_PER_CELL_AXIS = 2;
+
+    private volatile boolean enabled = true;
+    private volatile float threshold = DEFAULT_THRESHOLD;
+    private volatile long maxStalenessMs = DEFAULT_MAX_STALENESS_MS;
+
+    private float[] signature = new float[GRID_COLUMNS * GRID_ROWS];
+    private float[] reference = new float[GRID_COLUMNS * GRID_ROWS];
+    private boolean hasReference = false;
+    private long referenceTimeMs;
+    private float lastDifference = Float.NaN;
+
+    private long inferredCount = 0;
+    private long skippedCount = 0;
+    private float savedMs = 0f;
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setThreshold(float threshold) {
+        this.threshold = threshold;
+    }
+
+    public void setMaxStalenessMs(long maxStalenessMs) {
+        this.maxStalenessMs = Math.max(0, maxStalenessMs);
+    }
+
+    // Forgets the reference, e.g. when earlier results can't be reused.
+    public synchronized void reset() {
+        hasReference = false;
+    }
+
+    // Samples a Y (luminance) plane of width x height pixels.
+    public synchronized void sampleLuma(ByteBuffer plane, int rowStride, int pixelStride, int width, int height) {
+        int cell = 0;
+        for (int gridRow = 0; gridRow < GRID_ROWS; gridRow++) {
+            for (int gridCol = 0; gridCol < GRID_COLUMNS; gridCol++) {
+                int sum = 0;
+                for (int sy = 0; sy < SAMPLES_PER_CELL_AXIS; sy++) {
+                    int row = sampleCoordinate(gridRow, sy, GRID_ROWS, height);
+                    for (int sx = 0; sx < SAMPLES_PER_CELL_AXIS; sx++) {
+                        int col = sampleCoordinate(gridCol, sx, GRID_COLUMNS, width);
+                        sum += plane.get(row * rowStride + col * pixelStride) & 0xff;
+                    }
+                }
+                signature[cell++] = sum / (float) (SAMPLES_PER_CELL_AXIS * SAMPLES_PER_CELL_AXIS);
+            }
+        }
+    }
+
+    // Samples an RGBA_8888 plane of width x height pixels.
+    public synchronized void sampleRgba(ByteBuffer plane, int rowStride, int width, int height) {
+        int cell = 0;
+        for (int gridRow = 0; gridRow < GRID_ROWS; gridRow++) {
+            for (int gridCol = 0; gridCol < GRID_COLUMNS; gridCol++) {
+                int sum = 0;
+                for (int sy = 0; sy < SAMPLES_PER_CELL_AXIS; sy++) {
+                    int row = sampleCoordinate(gridRow, sy, GRID_ROWS, height);
+                    for (int sx = 0; sx < SAMPLES_PER_CELL_AXIS; sx++) {
+                        int col = sampleCoordinate(gridCol, sx, GRID_COLUMNS, width);
+                        int index = row * rowStride + col * 4;
+                        int r = plane.get(index) & 0xff;
+                        int g = plane.get(index + 1) & 0xff;
+                        int b = plane.get(index + 2) & 0xff;
+                        // BT.601 luma in 8 bit fixed point.
+                        sum += (77 * r + 150 * g + 29 * b) >> 8;
+                    }
+                }
+                signature[cell++] = sum / (float) (SAMPLES_PER_CELL_AXIS * SAMPLES_PER_CELL_AXIS);
+            }
+        }
+    }
+
+    // Evenly spread sample positions, centred in their share of the cell.
+    private static int sampleCoordinate(int gridIndex, int sample, int gridSize, int size) {
+        int samples = gridSize * SAMPLES_PER_CELL_AXIS;
+        int position = gridIndex * SAMPLES_PER_CELL_AXIS + sample;
+        return Math.min(size - 1, (2 * position + 1) * size / (2 * samples));
+    }
+
+    // Whether the last sampled frame matches the reference closely enough,
+    // and recently enough, to reuse its result.
+    public synchronized boolean isUnchanged(long nowMs) {
+        if (!enabled || !hasReference || nowMs - referenceTimeMs >= maxStalenessMs) {
+            return false;
+        }
+        float total = 0f;
+        for (int i = 0; i < signature.length; i++) {
+            total += Math.abs(signature[i] - reference[i]);
+        }
+        lastDifference = total / signature.length;
+        return lastDifference < threshold;
+    }
+
+    // The last sampled frame goes through inference and becomes the reference.
+    public synchronized void onInferred(long nowMs) {
+        float[] previous = reference;
+        reference = signature;
+        signature = previous;
+        hasReference = true;
+        referenceTimeMs = nowMs;
+        inferredCount++;
+    }
+
+    // The last sampled frame reused the previous result, saving about
+    // inferenceMs of inference.
+    public synchronized void onSkipped(float inferenceMs) {
+        skippedCount++;
+        savedMs += inferenceMs;
+    }
+
+    public synchronized long getSkippedCount() {
+        return skippedCount;
+    }
+
+    public synchronized long getInferredCount() {
+        return inferredCount;
+    }
+
+    // Share of sampled frames that reused a result.
+    public synchronized float getSkipRatio() {
+        long total = skippedCount + inferredCount;
+        return total > 0 ? skippedCount / (float) total : 0f;
+    }
+
+    public synchronized float getSavedMs() {
+        return savedMs;
+    }
+
+    public synchronized String describe() {
+        return String.format(Locale.US, "skipped %d/%d (%.0f%%), saved ~%.0f ms inference, last diff %.1f",
+                skippedCount, skippedCount + inferredCount, getSkipRatio() * 100f, savedMs, lastDifference);
+    }
+}
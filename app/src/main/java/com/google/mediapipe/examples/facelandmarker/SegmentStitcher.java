@@ -0,0 +1,117 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import java.util.ArrayDeque;
+
+/**
+ * Turns results of segments processed in parallel back into one stream in
+ * segment order.
+ *
+ * Results of the earliest unfinished segment pass straight through; later
+ * segments are held until every segment before them has finished. Segments
+ * are expected to be started roughly in order, which keeps what is held to
+ * a few segments' worth. The sink runs under the stitcher's lock, so it is
+ * never called concurrently.
+ */
+public class SegmentStitcher<T> {
+    /**
+     * Receives the stitched stream, and the items that never make it into it.
+     */
+    public interface Sink<T> {
+        void emit(T item);
+
+        // Called instead of emit for items dropped by cancel.
+        void discard(T item);
+    }
+
+    private final Sink<T> sink;
+    private final ArrayDeque<T>[] held;
+    private final boolean[] finished;
+    private int head = 0;
+    private boolean cancelled = false;
+    private long heldCount = 0;
+    private long maxHeldCount = 0;
+
+    @SuppressWarnings("unchecked")
+    public SegmentStitcher(int segmentCount, Sink<T> sink) {
+        this.sink = sink;
+        this.held = new ArrayDeque[segmentCount];
+        this.finished = new boolean[segmentCount];
+    }
+
+    public synchronized void add(int segment, T item) {
+        if (cancelled) {
+            sink.discard(item);
+            return;
+        }
+        if (segment == head) {
+            sink.emit(item);
+            return;
+        }
+        if (held[segment] == null) {
+            held[segment] = new ArrayDeque<>();
+        }
+        held[segment].add(item);
+        heldCount++;
+        maxHeldCount = Math.max(maxHeldCount, heldCount);
+    }
+
+    // segment has delivered all its items.
+    public synchronized void finish(int segment) {
+        finished[segment] = true;
+        while (head < finished.length && finished[head]) {
+            head++;
+            if (head < held.length) {
+                flush(head);
+            }
+        }
+    }
+
+    private void flush(int segment) {
+        ArrayDeque<T> items = held[segment];
+        if (items == null) {
+            return;
+        }
+        held[segment] = null;
+        heldCount -= items.size();
+        for (T item : items) {
+            if (cancelled) {
+                sink.discard(item);
+            } else {
+                sink.emit(item);
+            }
+        }
+    }
+
+    // Discards everything held and anything added later.
+    public synchronized void cancel() {
+        cancelled = true;
+        for (int segment = 0; segment < held.length; segment++) {
+            flush(segment);
+        }
+    }
+
+    // Whether every segment has finished, and so everything was emitted.
+    public synchronized boolean isComplete() {
+        return head == finished.length;
+    }
+
+    // Most items held at once, i.e. how far workers ran ahead of the output.
+    public synchronized long getMaxHeldCount() {
+        return maxHeldCount;
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import com.google.mediapipe.tasks.vision.core.RunningMode;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Landmark overlay drawn on its own Surface from a dedicated render thread.
+ *
+ * Results can be handed over from any thread, typically straight from the
+ * MediaPipe result callback. Only the latest result is kept; the render
+ * thread picks it up on the next vsync through its own Choreographer, so a
+ * busy UI thread no longer costs overlay frames. {@link OverlayView} remains
+ * the fallback when a separate surface is not wanted.
+ */
+public class SurfaceOverlayView extends SurfaceView implements SurfaceHolder.Callback, LandmarkOverlay {
+    private static final String TAG = "SurfaceOverlayView";
+
+    private final LandmarkRenderer renderer;
+    // Latest frame not yet picked up by the render thread, retained.
+    private final AtomicReference<LandmarkFrame> latestFrame = new AtomicReference<>();
+    private final AtomicBoolean frameScheduled = new AtomicBoolean(false);
+    private volatile RunningMode runningMode = RunningMode.LIVE_STREAM;
+    private volatile boolean clearRequested = false;
+    private volatile PipelineMetrics pipelineMetrics;
+    private volatile LandmarkInterpolator interpolator;
+
+    // Render thread only: the frame on screen, retained, and the interpolated
+    // landmarks drawn with its geometry.
+    private LandmarkFrame currentFrame;
+    private final LandmarkInterpolator.Sample sample = new LandmarkInterpolator.Sample();
+
+    // Vsync-to-vsync time between rendered frames while the loop is busy,
+    // and time spent rendering one. The interval only counts frames that were
+    // already scheduled when the previous one finished, so it shows render
+    // pacing and missed vsyncs rather than gaps between results.
+    private final LatencyHistogram frameIntervalHistogram = new LatencyHistogram();
+    private final LatencyHistogram renderTimeHistogram = new LatencyHistogram();
+    // Vsync of the previous frame, 0 when the loop went idle after it.
+    private long lastFrameTimeNanos = 0;
+
+    private HandlerThread renderThread;
+    private Handler renderHandler;
+    private Choreographer renderChoreographer;
+    private volatile boolean surfaceReady = false;
+    private volatile int surfaceWidth = 1;
+    private volatile int surfaceHeight = 1;
+
+    private final Runnable scheduleFrame = new Runnable() {
+        @Override
+        public void run() {
+            renderChoreographer.postFrameCallback(frameCallback);
+        }
+    };
+
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            frameScheduled.set(false);
+            renderFrame(frameTimeNanos);
+        }
+    };
+
+    public SurfaceOverlayView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        renderer = new LandmarkRenderer(context);
+        setZOrderMediaOverlay(true);
+        getHolder().setFormat(PixelFormat.TRANSLUCENT);
+        getHolder().addCallback(this);
+    }
+
+    @Override
+    public void setResults(FaceLandmarkerHelper.ResultBundle resultBundle, RunningMode runningMode) {
+        // Off the live stream path, so an unpooled frame is fine here.
+        LandmarkFrame frame = new LandmarkFrame();
+        frame.setResultBundle(resultBundle);
+        setResults(frame, runningMode);
+    }
+
+    @Override
+    public void setResults(LandmarkFrame frame, RunningMode runningMode) {
+        this.runningMode = runningMode;
+        frame.retain();
+        releaseFrame(latestFrame.getAndSet(frame));
+        requestRender();
+    }
+
+    @Override
+    public void clear() {
+        releaseFrame(latestFrame.getAndSet(null));
+        clearRequested = true;
+        requestRender();
+    }
+
+    private static void releaseFrame(LandmarkFrame frame) {
+        if (frame != null) {
+            frame.release();
+        }
+    }
+
+    @Override
+    public void setPipelineMetrics(PipelineMetrics pipelineMetrics) {
+        this.pipelineMetrics = pipelineMetrics;
+    }
+
+    @Override
+    public void setInterpolator(LandmarkInterpolator interpolator) {
+        this.interpolator = interpolator;
+        requestRender();
+    }
+
+    @Override
+    public void setDetailLevel(int detailLevel) {
+        renderer.setDetailLevel(detailLevel);
+        requestRender();
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    public LatencyHistogram.Snapshot getFrameIntervalSnapshot() {
+        return frameIntervalHistogram.snapshot();
+    }
+
+    public LatencyHistogram.Snapshot getRenderTimeSnapshot() {
+        return renderTimeHistogram.snapshot();
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        renderThread = new HandlerThread(TAG);
+        renderThread.start();
+        renderHandler = new Handler(renderThread.getLooper());
+        renderHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // Choreographer instances are per looper thread.
+                renderChoreographer = Choreographer.getInstance();
+                surfaceReady = true;
+                frameScheduled.set(false);
+                requestRender();
+            }
+        });
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        surfaceWidth = width;
+        surfaceHeight = height;
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        surfaceReady = false;
+        // The surface must not be touched once this returns, so wait for the
+        // render thread to finish the frame it may be drawing.
+        renderThread.quitSafely();
+        try {
+            renderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        renderThread = null;
+        renderHandler = null;
+        renderChoreographer = null;
+        releaseFrame(currentFrame);
+        currentFrame = null;
+    }
+
+    private void requestRender() {
+        Handler handler = renderHandler;
+        if (surfaceReady && handler != null && frameScheduled.compareAndSet(false, true)) {
+            handler.post(scheduleFrame);
+        }
+    }
+
+    // Runs on the render thread once per vsync with pending work.
+    private void renderFrame(long frameTimeNanos) {
+        LandmarkFrame frame = latestFrame.getAndSet(null);
+        boolean clear = clearRequested;
+        clearRequested = false;
+        LandmarkInterpolator interpolator = this.interpolator;
+        if (clear || frame != null) {
+            releaseFrame(currentFrame);
+            currentFrame = frame;
+        }
+        boolean animating = interpolator != null && currentFrame != null;
+        if (!surfaceReady || (frame == null && !clear && !animating)) {
+            lastFrameTimeNanos = 0;
+            return;
+        }
+
+        long renderStart = System.nanoTime();
+        SurfaceHolder holder = getHolder();
+        Canvas canvas = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                ? holder.lockHardwareCanvas()
+                : holder.lockCanvas();
+        if (canvas == null) {
+            lastFrameTimeNanos = 0;
+            return;
+        }
+        try {
+            canvas.drawColor(0, PorterDuff.Mode.CLEAR);
+            if (currentFrame != null) {
+                renderer.setTransform(
+                        surfaceWidth, surfaceHeight,
+                        currentFrame.getInputImageWidth(), currentFrame.getInputImageHeight(),
+                        runningMode, currentFrame.getRotationDegrees(), currentFrame.isMirrored());
+                if (interpolator != null) {
+                    if (interpolator.sample(frameTimeNanos, sample)) {
+                        renderer.draw(canvas, sample);
+                    }
+                } else if (currentFrame.getFaceCount() > 0) {
+                    renderer.draw(canvas, currentFrame);
+                }
+            }
+        } finally {
+            holder.unlockCanvasAndPost(canvas);
+        }
+        // Keep rendering every vsync while the interpolated landmarks move.
+        if (animating && !sample.settled && frameScheduled.compareAndSet(false, true)) {
+            renderChoreographer.postFrameCallback(frameCallback);
+        }
+
+        long renderEnd = System.nanoTime();
+        renderTimeHistogram.recordNanos(renderEnd - renderStart);
+        if (lastFrameTimeNanos != 0) {
+            frameIntervalHistogram.recordNanos(frameTimeNanos - lastFrameTimeNanos);
+        }
+        // With no next frame scheduled yet the loop goes idle, and the wait
+        // for the next result is not a render interval.
+        lastFrameTimeNanos = frameScheduled.get() ? frameTimeNanos : 0;
+
+        PipelineMetrics metrics = pipelineMetrics;
+        if (metrics != null && frame != null) {
+            metrics.record(PipelineMetrics.STAGE_DRAW, renderEnd - renderStart);
+            if (frame.getCameraTimestampNanos() != 0) {
+                metrics.record(PipelineMetrics.STAGE_END_TO_END, renderEnd - frame.getCameraTimestampNanos());
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import java.util.ArrayDeque;
+
+/**
+ * Generated frames: a template image, or a plain face-like shape without
+ * one, moving along a circle over a flat background. Costs next to nothing
+ * to produce, so it measures the pipeline alone.
+ */
+public class SyntheticFrameSource extends PacedFrameSource {
+    // One frame with the sink and one being drawn.
+    private static final int BUFFER_COUNT = 2;
+    // Frames per trip around the circle.
+    private static final int FRAMES_PER_CYCLE = 120;
+
+    private final int width;
+    private final int height;
+    private final Bitmap template;
+    private final ArrayDeque<Bitmap> freeBuffers = new ArrayDeque<>();
+    private final Canvas canvas = new Canvas();
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+    private final RectF bounds = new RectF();
+    private int frameIndex;
+
+    // template may be null.
+    public SyntheticFrameSource(int width, int height, Bitmap template) {
+        this.width = width;
+        this.height = height;
+        this.template = template;
+    }
+
+    @Override
+    protected void open() {
+        synchronized (freeBuffers) {
+            while (freeBuffers.size() < BUFFER_COUNT) {
+                freeBuffers.add(Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888));
+            }
+        }
+        frameIndex = 0;
+    }
+
+    @Override
+    protected Bitmap nextFrame() {
+        Bitmap frame;
+        synchronized (freeBuffers) {
+            frame = freeBuffers.poll();
+        }
+        if (frame == null) {
+            // Can't happen while one frame at a time is with the sink.
+            return null;
+        }
+        double angle = 2 * Math.PI * (frameIndex++ % FRAMES_PER_CYCLE) / FRAMES_PER_CYCLE;
+        float size = Math.min(width, height) * 0.5f;
+        float centerX = width / 2f + (float) Math.cos(angle) * width / 8f;
+        float centerY = height / 2f + (float) Math.sin(angle) * height / 8f;
+        bounds.set(centerX - size / 2f, centerY - size / 2f, centerX + size / 2f, centerY + size / 2f);
+
+        canvas.setBitmap(frame);
+        canvas.drawColor(Color.DKGRAY);
+        if (template != null) {
+            canvas.drawBitmap(template, null, bounds, paint);
+        } else {
+            drawFace();
+        }
+        canvas.setBitmap(null);
+        return frame;
+    }
+
+    private void drawFace() {
+        float size = bounds.width();
+        paint.setColor(Color.rgb(224, 172, 140));
+        canvas.drawOval(bounds.left + size * 0.1f, bounds.top, bounds.right - size * 0.1f, bounds.bottom, paint);
+        paint.setColor(Color.rgb(40, 30, 30));
+        float eyeY = bounds.top + size * 0.4f;
+        canvas.drawCircle(bounds.centerX() - size * 0.15f, eyeY, size * 0.05f, paint);
+        canvas.drawCircle(bounds.centerX() + size * 0.15f, eyeY, size * 0.05f, paint);
+        paint.setColor(Color.rgb(160, 60, 60));
+        canvas.drawOval(bounds.centerX() - size * 0.15f, bounds.top + size * 0.68f,
+                bounds.centerX() + size * 0.15f, bounds.top + size * 0.76f, paint);
+    }
+
+    @Override
+    protected boolean rewind() {
+        // Never runs out.
+        return true;
+    }
+
+    @Override
+    protected void recycleFrame(Bitmap frame) {
+        synchronized (freeBuffers) {
+            freeBuffers.add(frame);
+        }
+    }
+
+    @Override
+    protected void close() {
+        synchronized (freeBuffers) {
+            for (Bitmap buffer : freeBuffers) {
+                buffer.recycle();
+            }
+            freeBuffers.clear();
+        }
+    }
+
+    @Override
+    protected String getName() {
+        return "synthetic";
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import android.graphics.Bitmap;
+import android.media.MediaMetadataRetriever;
+import android.os.Build;
+
+import java.io.File;
+
+/**
+ * Frames of a video file, decoded one by one.
+ *
+ * On API 28+ frames are read by index; before that by time, one frame
+ * interval apart. The retriever returns frames upright already.
+ */
+public class VideoFileFrameSource extends PacedFrameSource {
+    // Step between frames when they can only be read by time.
+    private static final long FRAME_INTERVAL_US = 33_333;
+
+    private final File file;
+    private MediaMetadataRetriever retriever;
+    private int frameCount;
+    private long durationUs;
+    private int nextIndex;
+
+    public VideoFileFrameSource(File file) {
+        this.file = file;
+    }
+
+    @Override
+    protected void open() {
+        retriever = new MediaMetadataRetriever();
+        retriever.setDataSource(file.getAbsolutePath());
+        frameCount = 0;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            String count = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_FRAME_COUNT);
+            frameCount = count != null ? Integer.parseInt(count) : 0;
+        }
+        String duration = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+        durationUs = duration != null ? Long.parseLong(duration) * 1000 : 0;
+        nextIndex = 0;
+    }
+
+    @Override
+    protected Bitmap nextFrame() {
+        Bitmap frame;
+        if (frameCount > 0) {
+            if (nextIndex >= frameCount) {
+                return null;
+            }
+            frame = retriever.getFrameAtIndex(nextIndex);
+        } else {
+            long timeUs = nextIndex * FRAME_INTERVAL_US;
+            if (timeUs >= durationUs) {
+                return null;
+            }
+            frame = retriever.getFrameAtTime(timeUs, MediaMetadataRetriever.OPTION_CLOSEST);
+        }
+        nextIndex++;
+        return frame;
+    }
+
+    @Override
+    protected boolean rewind() {
+        nextIndex = 0;
+        return frameCount > 0 || durationUs > 0;
+    }
+
+    @Override
+    protected void recycleFrame(Bitmap frame) {
+        // Every frame is decoded into a new bitmap.
+        frame.recycle();
+    }
+
+    @Override
+    protected void close() {
+        if (retriever != null) {
+            try {
+                retriever.release();
+            } catch (Exception e) {
+                // Nothing left to release.
+            }
+            retriever = null;
+        }
+    }
+
+    @Override
+    protected String getName() {
+        return "video " + file.getName();
+    }
+}
@@ -0,0 +1,511 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.media.Image;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.mediapipe.framework.image.BitmapImageBuilder;
+import com.google.mediapipe.framework.image.MPImage;
+import com.google.mediapipe.tasks.vision.facelandmarker.FaceLandmarkerResult;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Runs a VIDEO mode landmarker over every frame of a video file.
+ *
+ * Decoding, conversion to RGB and inference run as three overlapping
+ * stages. MediaCodec decodes into YUV buffers that are copied out and
+ * handed to the conversion thread, which fills reusable bitmaps for the
+ * inference thread. Each hand-off has a fixed number of buffers in
+ * circulation, so a slow stage holds up the ones before it instead of
+ * letting frames pile up. Results stream to the listener one frame at a
+ * time, in timestamp order.
+ *
+ * Frames can be sampled with a stride; skipped frames are still decoded,
+ * which the codec needs anyway, but never converted. A range of the video
+ * can be processed on its own, which ParallelVideoProcessor uses to spread
+ * a video over several landmarkers. One job runs at a time per processor;
+ * the helper must be set up in RunningMode.VIDEO.
+ */
+public class VideoLandmarkProcessor {
+    private static final String TAG = "VideoLandmarkProcessor";
+    // Buffers per hand-off: one for each side and one queued.
+    public static final int DEFAULT_BUFFERS_PER_STAGE = 3;
+    private static final long CODEC_TIMEOUT_US = 10_000;
+
+    private final Context context;
+    private final FaceLandmarkerHelper faceLandmarkerHelper;
+    private final int buffersPerStage;
+    private final LandmarkFramePool framePool = new LandmarkFramePool();
+    // Only used on the conversion thread.
+    private final FrameConverter frameConverter = new FrameConverter();
+    private volatile int frameStride = 1;
+    private volatile boolean cancelled = false;
+    private volatile Thread conversionThread;
+    private volatile Thread inferenceThread;
+    // VIDEO timestamps must keep increasing across jobs on one landmarker,
+    // so each job is shifted past the last one.
+    private long timestampOffsetMs = 0;
+
+    /**
+     * Receives the results of a job. Called on the inference thread.
+     */
+    public interface Listener {
+        // One frame's result. frame goes back to its pool after the call
+        // unless retained.
+        void onFrame(LandmarkFrame frame);
+
+        // The job reached positionUs of a durationUs long video.
+        default void onProgress(long positionUs, long durationUs) {
+        }
+
+        void onError(String error);
+    }
+
+    public VideoLandmarkProcessor(Context context, FaceLandmarkerHelper faceLandmarkerHelper) {
+        this(context, faceLandmarkerHelper, DEFAULT_BUFFERS_PER_STAGE);
+    }
+
+    public VideoLandmarkProcessor(Context context, FaceLandmarkerHelper faceLandmarkerHelper, int buffersPerStage) {
+        if (buffersPerStage < 2) {
+            throw new IllegalArgumentException("At least two buffers per stage are needed to overlap.");
+        }
+        this.context = context;
+        this.faceLandmarkerHelper = faceLandmarkerHelper;
+        this.buffersPerStage = buffersPerStage;
+    }
+
+    // Only every frameStride-th frame goes through inference.
+    public void setFrameStride(int frameStride) {
+        if (frameStride < 1) {
+            throw new IllegalArgumentException("frameStride must be at least 1.");
+        }
+        this.frameStride = frameStride;
+    }
+
+    // Stops the running job; process returns soon after. Later ranges are
+    // skipped until clearCancelled.
+    public void cancel() {
+        cancelled = true;
+        interrupt(conversionThread);
+        interrupt(inferenceThread);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Makes the processor usable again after cancel.
+    public void clearCancelled() {
+        cancelled = false;
+    }
+
+    // Runs one inference on a blank frame, so the first frame of the next job
+    // doesn't pay for the lazy setup of the graph. Must not overlap a job.
+    public void warmUp() {
+        Bitmap blank = Bitmap.createBitmap(FaceLandmarkerHelper.WARM_UP_FRAME_SIZE,
+                FaceLandmarkerHelper.WARM_UP_FRAME_SIZE, Bitmap.Config.ARGB_8888);
+        long timestampMs = timestampOffsetMs;
+        try {
+            faceLandmarkerHelper.detectVideoFrame(new BitmapImageBuilder(blank).build(), 0, timestampMs);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Warm-up inference failed", e);
+        } finally {
+            timestampOffsetMs = timestampMs + 1;
+            blank.recycle();
+        }
+    }
+
+    // Processes the video at uri, decoding on the calling thread, and returns
+    // once every frame is done, the job was cancelled or it failed. Failures
+    // are reported to the listener.
+    public VideoProcessingStats process(Uri uri, Listener listener) {
+        cancelled = false;
+        VideoProcessingStats stats = new VideoProcessingStats();
+        stats.onStarted(SystemClock.uptimeMillis());
+        processRange(uri, 0, 0, Long.MAX_VALUE, stats, listener);
+        stats.onFinished(SystemClock.uptimeMillis());
+        return stats;
+    }
+
+    // Processes the frames in [startUs, endUs) of the video at uri, like
+    // process, adding to stats. Frames from warmUpFromUs on also go through
+    // the landmarker, so face tracking has settled by startUs, but only the
+    // ones from startUs on are reported. endUs should be a keyframe, where
+    // decoding can stop cleanly. Returns right away if cancelled before.
+    public void processRange(Uri uri, long warmUpFromUs, long startUs, long endUs,
+                             VideoProcessingStats stats, Listener listener) {
+        if (cancelled) {
+            return;
+        }
+
+        BlockingQueue<YuvBuffer> freeYuv = new ArrayBlockingQueue<>(buffersPerStage);
+        BlockingQueue<YuvBuffer> decoded = new ArrayBlockingQueue<>(buffersPerStage + 1);
+        BlockingQueue<RgbBuffer> freeRgb = new ArrayBlockingQueue<>(buffersPerStage);
+        BlockingQueue<RgbBuffer> converted = new ArrayBlockingQueue<>(buffersPerStage + 1);
+        for (int i = 0; i < buffersPerStage; i++) {
+            freeYuv.add(new YuvBuffer());
+            freeRgb.add(new RgbBuffer());
+        }
+
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(context, uri, null);
+            int track = selectVideoTrack(extractor);
+            if (track < 0) {
+                throw new IOException("No video track in " + uri);
+            }
+            MediaFormat format = extractor.getTrackFormat(track);
+            extractor.selectTrack(track);
+            if (warmUpFromUs > 0) {
+                extractor.seekTo(warmUpFromUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            }
+            long durationUs = format.containsKey(MediaFormat.KEY_DURATION)
+                    ? format.getLong(MediaFormat.KEY_DURATION) : 0;
+            int rotationDegrees = format.containsKey(MediaFormat.KEY_ROTATION)
+                    ? format.getInteger(MediaFormat.KEY_ROTATION) : 0;
+
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Flexible);
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            long baseMs = timestampOffsetMs;
+            conversionThread = new Thread(() -> convert(freeYuv, decoded, freeRgb, converted, listener),
+                    "video-convert");
+            inferenceThread = new Thread(() -> infer(freeRgb, converted, rotationDegrees, durationUs, baseMs,
+                    startUs, stats, listener), "video-infer");
+            conversionThread.start();
+            inferenceThread.start();
+
+            decode(extractor, codec, warmUpFromUs, endUs, freeYuv, decoded, stats);
+            conversionThread.join();
+            inferenceThread.join();
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Video processing failed", e);
+            cancel();
+            listener.onError("Video processing failed: " + e.getMessage());
+        } finally {
+            joinQuietly(conversionThread);
+            joinQuietly(inferenceThread);
+            conversionThread = null;
+            inferenceThread = null;
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (IllegalStateException e) {
+                    // Never started.
+                }
+                codec.release();
+            }
+            extractor.release();
+            for (RgbBuffer buffer : freeRgb) {
+                buffer.recycle();
+            }
+            frameConverter.release();
+        }
+    }
+
+    private static int selectVideoTrack(MediaExtractor extractor) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("video/")) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Decode stage: feeds the codec up to the keyframe at endUs and copies
+    // every kept frame in [fromUs, endUs) out of it.
+    private void decode(MediaExtractor extractor, MediaCodec codec, long fromUs, long endUs,
+                        BlockingQueue<YuvBuffer> freeYuv, BlockingQueue<YuvBuffer> decoded,
+                        VideoProcessingStats stats) throws InterruptedException {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        boolean inputDone = false;
+        long frameIndex = 0;
+        long lastKeptMs = Long.MIN_VALUE;
+        try {
+            while (!cancelled) {
+                if (!inputDone) {
+                    int inputIndex = codec.dequeueInputBuffer(CODEC_TIMEOUT_US);
+                    if (inputIndex >= 0) {
+                        ByteBuffer input = codec.getInputBuffer(inputIndex);
+                        int size = extractor.readSampleData(input, 0);
+                        boolean nextSegment = size >= 0 && extractor.getSampleTime() >= endUs
+                                && (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0;
+                        if (size < 0 || nextSegment) {
+                            codec.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(inputIndex, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+
+                int outputIndex = codec.dequeueOutputBuffer(info, CODEC_TIMEOUT_US);
+                if (outputIndex < 0) {
+                    // Try again later, or a format or buffer change that
+                    // getOutputImage picks up on its own.
+                    continue;
+                }
+                boolean endOfStream = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                // Seeking lands on the keyframe before fromUs.
+                if (info.size > 0 && info.presentationTimeUs >= fromUs && info.presentationTimeUs < endUs) {
+                    stats.onDecoded();
+                    // VIDEO mode needs strictly increasing millisecond timestamps.
+                    long timestampMs = info.presentationTimeUs / 1000;
+                    if (frameIndex++ % frameStride == 0 && timestampMs > lastKeptMs) {
+                        lastKeptMs = timestampMs;
+                        YuvBuffer buffer = freeYuv.take();
+                        try (Image image = codec.getOutputImage(outputIndex)) {
+                            if (image == null) {
+                                throw new IllegalStateException("Decoder has no YUV_420_888 output");
+                            }
+                            buffer.copyFrom(image, info.presentationTimeUs);
+                        }
+                        decoded.put(buffer);
+                    }
+                }
+                codec.releaseOutputBuffer(outputIndex, false);
+                if (endOfStream) {
+                    break;
+                }
+            }
+        } finally {
+            // Always lets the other stages finish, also when cancelled.
+            decoded.put(YuvBuffer.END);
+        }
+    }
+
+    // Conversion stage: YUV to RGB into the next free bitmap.
+    private void convert(BlockingQueue<YuvBuffer> freeYuv, BlockingQueue<YuvBuffer> decoded,
+                         BlockingQueue<RgbBuffer> freeRgb, BlockingQueue<RgbBuffer> converted, Listener listener) {
+        try {
+            while (true) {
+                YuvBuffer yuv = decoded.take();
+                if (yuv == YuvBuffer.END) {
+                    break;
+                }
+                if (cancelled) {
+                    freeYuv.offer(yuv);
+                    break;
+                }
+                RgbBuffer rgb = freeRgb.take();
+                rgb.ensureSize(yuv.width, yuv.height);
+                frameConverter.convertYuv(yuv.y, yuv.yRowStride, yuv.u, yuv.v, yuv.uvRowStride, yuv.uvPixelStride,
+                        rgb.bitmap);
+                rgb.timestampUs = yuv.timestampUs;
+                freeYuv.put(yuv);
+                converted.put(rgb);
+            }
+        } catch (InterruptedException e) {
+            // Cancelled.
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Frame conversion failed", e);
+            cancelled = true;
+            listener.onError("Frame conversion failed: " + e.getMessage());
+        } finally {
+            // The decoder may be waiting for a free buffer.
+            drainTo(decoded, freeYuv);
+            converted.offer(RgbBuffer.END);
+        }
+    }
+
+    // Inference stage: runs the landmarker and streams the results.
+    private void infer(BlockingQueue<RgbBuffer> freeRgb, BlockingQueue<RgbBuffer> converted, int rotationDegrees,
+                       long durationUs, long baseMs, long reportFromUs, VideoProcessingStats stats,
+                       Listener listener) {
+        boolean swapsAxes = rotationDegrees == 90 || rotationDegrees == 270;
+        try {
+            while (true) {
+                RgbBuffer rgb = converted.take();
+                if (rgb == RgbBuffer.END) {
+                    break;
+                }
+                if (cancelled) {
+                    freeRgb.offer(rgb);
+                    break;
+                }
+                long timestampMs = baseMs + rgb.timestampUs / 1000;
+                long startNanos = System.nanoTime();
+                MPImage mpImage = new BitmapImageBuilder(rgb.bitmap).build();
+                FaceLandmarkerResult result =
+                        faceLandmarkerHelper.detectVideoFrame(mpImage, rotationDegrees, timestampMs);
+                long resultTimeNanos = System.nanoTime();
+                float inferenceMs = (resultTimeNanos - startNanos) / 1e6f;
+                timestampOffsetMs = timestampMs + 1;
+
+                if (rgb.timestampUs < reportFromUs) {
+                    // Warm-up frame ahead of the range.
+                    freeRgb.put(rgb);
+                    continue;
+                }
+                if (result != null) {
+                    LandmarkFrame frame = framePool.acquire();
+                    frame.setResult(result);
+                    frame.setFrameInfo((long) inferenceMs,
+                            swapsAxes ? rgb.bitmap.getWidth() : rgb.bitmap.getHeight(),
+                            swapsAxes ? rgb.bitmap.getHeight() : rgb.bitmap.getWidth(),
+                            rotationDegrees, false, 0, resultTimeNanos);
+                    // Report the position in the video, not the shifted timestamp.
+                    frame.restamp(rgb.timestampUs / 1000, 0, resultTimeNanos);
+                    try {
+                        listener.onFrame(frame);
+                    } finally {
+                        frame.release();
+                    }
+                }
+                stats.onProcessed(rgb.timestampUs, inferenceMs, SystemClock.uptimeMillis());
+                listener.onProgress(rgb.timestampUs, durationUs);
+                freeRgb.put(rgb);
+            }
+        } catch (InterruptedException e) {
+            // Cancelled.
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Video inference failed", e);
+            cancelled = true;
+            listener.onError("Video inference failed: " + e.getMessage());
+        } finally {
+            // The conversion stage may be waiting for a free bitmap.
+            drainTo(converted, freeRgb);
+        }
+    }
+
+    // Moves whatever is queued in from back to free, ignoring end markers.
+    private static <T> void drainTo(BlockingQueue<T> from, BlockingQueue<T> free) {
+        T item;
+        while ((item = from.poll()) != null) {
+            if (item != YuvBuffer.END && item != RgbBuffer.END) {
+                free.offer(item);
+            }
+        }
+    }
+
+    private static void interrupt(Thread thread) {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private static void joinQuietly(Thread thread) {
+        if (thread == null) {
+            return;
+        }
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+                thread.interrupt();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * One decoded frame, copied out of the codec plane by plane with the
+     * codec's strides. The arrays only grow.
+     */
+    private static final class YuvBuffer {
+        static final YuvBuffer END = new YuvBuffer();
+
+        ByteBuffer y = ByteBuffer.allocate(0);
+        ByteBuffer u = ByteBuffer.allocate(0);
+        ByteBuffer v = ByteBuffer.allocate(0);
+        int yRowStride;
+        int uvRowStride;
+        int uvPixelStride;
+        int width;
+        int height;
+        long timestampUs;
+
+        void copyFrom(Image image, long timestampUs) {
+            // Planes are copied from the crop origin on, so the conversion
+            // sees the visible frame only.
+            Rect crop = image.getCropRect();
+            Image.Plane[] planes = image.getPlanes();
+            yRowStride = planes[0].getRowStride();
+            uvRowStride = planes[1].getRowStride();
+            uvPixelStride = planes[1].getPixelStride();
+            width = crop.width() & ~1;
+            height = crop.height() & ~1;
+            int yOffset = crop.top * yRowStride + crop.left * planes[0].getPixelStride();
+            int uvOffset = (crop.top / 2) * uvRowStride + (crop.left / 2) * uvPixelStride;
+            y = copyPlane(planes[0].getBuffer(), yOffset, y);
+            u = copyPlane(planes[1].getBuffer(), uvOffset, u);
+            v = copyPlane(planes[2].getBuffer(), uvOffset, v);
+            this.timestampUs = timestampUs;
+        }
+
+        private static ByteBuffer copyPlane(ByteBuffer plane, int offset, ByteBuffer target) {
+            plane.position(offset);
+            int size = plane.remaining();
+            if (target.capacity() < size) {
+                target = ByteBuffer.allocate(size);
+            }
+            target.clear();
+            target.put(plane);
+            target.flip();
+            return target;
+        }
+    }
+
+    /**
+     * One converted frame. The bitmap is reused while the size stays.
+     */
+    private static final class RgbBuffer {
+        static final RgbBuffer END = new RgbBuffer();
+
+        Bitmap bitmap;
+        long timestampUs;
+
+        void ensureSize(int width, int height) {
+            if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+                recycle();
+                bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            }
+        }
+
+        void recycle() {
+            if (bitmap != null) {
+                bitmap.recycle();
+                bitmap = null;
+            }
+        }
+    }
+}
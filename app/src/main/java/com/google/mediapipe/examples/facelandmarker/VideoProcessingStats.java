@@ -0,0 +1,114 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import java.util.Locale;
+
+/**
+ * Throughput of an offline video job, compared with the video's own rate.
+ *
+ * Counts decoded and processed frames and the span of video time the
+ * processed frames cover. A real-time factor above 1 means the job runs
+ * faster than the video plays. Safe to update from several threads.
+ */
+public class VideoProcessingStats {
+    private long startMs = -1;
+    private long lastUpdateMs = -1;
+    private boolean finished = false;
+
+    private long decodedFrames = 0;
+    private long processedFrames = 0;
+    private long firstTimestampUs = Long.MAX_VALUE;
+    private long lastTimestampUs = Long.MIN_VALUE;
+    private double inferenceMsTotal = 0;
+
+    public synchronized void onStarted(long nowMs) {
+        startMs = nowMs;
+        lastUpdateMs = nowMs;
+        finished = false;
+    }
+
+    public synchronized void onDecoded() {
+        decodedFrames++;
+    }
+
+    // A frame at timestampUs into the video went through inference, taking
+    // inferenceMs.
+    public synchronized void onProcessed(long timestampUs, float inferenceMs, long nowMs) {
+        processedFrames++;
+        firstTimestampUs = Math.min(firstTimestampUs, timestampUs);
+        lastTimestampUs = Math.max(lastTimestampUs, timestampUs);
+        inferenceMsTotal += inferenceMs;
+        if (!finished) {
+            lastUpdateMs = nowMs;
+        }
+    }
+
+    public synchronized void onFinished(long nowMs) {
+        lastUpdateMs = nowMs;
+        finished = true;
+    }
+
+    public synchronized long getDecodedFrames() {
+        return decodedFrames;
+    }
+
+    public synchronized long getProcessedFrames() {
+        return processedFrames;
+    }
+
+    public synchronized long getElapsedMs() {
+        return startMs < 0 ? 0 : lastUpdateMs - startMs;
+    }
+
+    // Video time the processed frames stand for: their span plus one average
+    // frame interval, so N frames at 30 fps cover N / 30 seconds.
+    public synchronized long getCoveredVideoUs() {
+        if (processedFrames < 2) {
+            return 0;
+        }
+        return (lastTimestampUs - firstTimestampUs) * processedFrames / (processedFrames - 1);
+    }
+
+    public synchronized float getFramesPerSecond() {
+        long elapsedMs = getElapsedMs();
+        return elapsedMs > 0 ? processedFrames * 1000f / elapsedMs : 0f;
+    }
+
+    // Processed frames per second of video, i.e. the rate the job has to keep
+    // up with to run in real time. Lower than the video's frame rate when
+    // frames are skipped.
+    public synchronized float getVideoFramesPerSecond() {
+        long coveredUs = getCoveredVideoUs();
+        return coveredUs > 0 ? processedFrames * 1_000_000f / coveredUs : 0f;
+    }
+
+    public synchronized float getRealtimeFactor() {
+        long elapsedMs = getElapsedMs();
+        return elapsedMs > 0 ? getCoveredVideoUs() / 1000f / elapsedMs : 0f;
+    }
+
+    public synchronized float getAverageInferenceMs() {
+        return processedFrames > 0 ? (float) (inferenceMsTotal / processedFrames) : 0f;
+    }
+
+    public synchronized String describe() {
+        return String.format(Locale.US,
+                "%d/%d frames in %d ms, %.1f fps (video %.1f fps), %.2fx real time, inference %.1f ms",
+                processedFrames, decodedFrames, getElapsedMs(), getFramesPerSecond(), getVideoFramesPerSecond(),
+                getRealtimeFactor(), getAverageInferenceMs());
+    }
+}
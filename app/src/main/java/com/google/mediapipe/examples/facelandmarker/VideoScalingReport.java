@@ -0,0 +1,59 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Throughput of the same video job at different worker counts, relative to
+ * the first run added (normally one worker).
+ */
+public class VideoScalingReport {
+    private final List<Integer> workerCounts = new ArrayList<>();
+    private final List<Float> framesPerSecond = new ArrayList<>();
+
+    public synchronized void add(int workers, float fps) {
+        workerCounts.add(workers);
+        framesPerSecond.add(fps);
+    }
+
+    // Throughput of run i divided by that of the first run.
+    public synchronized float getSpeedup(int run) {
+        float baseline = framesPerSecond.isEmpty() ? 0f : framesPerSecond.get(0);
+        return baseline > 0f ? framesPerSecond.get(run) / baseline : 0f;
+    }
+
+    // Speedup per worker, scaled to the first run's worker count; 1 is
+    // perfect scaling.
+    public synchronized float getEfficiency(int run) {
+        return getSpeedup(run) * workerCounts.get(0) / workerCounts.get(run);
+    }
+
+    public synchronized int size() {
+        return workerCounts.size();
+    }
+
+    public synchronized String describe() {
+        StringBuilder builder = new StringBuilder("workers    fps  speedup  efficiency");
+        for (int run = 0; run < workerCounts.size(); run++) {
+            builder.append(String.format(Locale.US, "\n%7d %6.1f %7.2fx %10.0f%%", workerCounts.get(run),
+                    framesPerSecond.get(run), getSpeedup(run), getEfficiency(run) * 100f));
+        }
+        return builder.toString();
+    }
+}
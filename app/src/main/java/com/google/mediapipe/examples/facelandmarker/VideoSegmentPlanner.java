@@ -0,0 +1,82 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a video at keyframes into segments that can be processed in
+ * parallel.
+ *
+ * Aims for a few segments per worker, so a worker that finishes early picks
+ * up another one, within bounds on the segment length: short segments waste
+ * their warm-up overlap, long ones hold back the ordered output. Every
+ * segment but the first starts decoding the overlap earlier than its own
+ * range, so face tracking has settled by the time its frames count.
+ */
+public final class VideoSegmentPlanner {
+    static final int SEGMENTS_PER_WORKER = 2;
+    static final long MIN_SEGMENT_US = 2_000_000;
+    static final long MAX_SEGMENT_US = 10_000_000;
+    public static final long DEFAULT_OVERLAP_US = 500_000;
+
+    private VideoSegmentPlanner() {
+    }
+
+    /**
+     * A range of the video. The last segment ends at Long.MAX_VALUE, so
+     * frames past the reported duration are not lost.
+     */
+    public static final class Segment {
+        public final int index;
+        public final long warmUpFromUs;
+        public final long startUs;
+        public final long endUs;
+
+        Segment(int index, long warmUpFromUs, long startUs, long endUs) {
+            this.index = index;
+            this.warmUpFromUs = warmUpFromUs;
+            this.startUs = startUs;
+            this.endUs = endUs;
+        }
+    }
+
+    // keyframesUs holds the keyframe times in increasing order.
+    public static List<Segment> plan(long[] keyframesUs, long durationUs, int workers, long overlapUs) {
+        List<Segment> segments = new ArrayList<>();
+        if (workers <= 1 || keyframesUs.length < 2) {
+            segments.add(new Segment(0, 0, 0, Long.MAX_VALUE));
+            return segments;
+        }
+        long targetUs = durationUs / ((long) workers * SEGMENTS_PER_WORKER);
+        targetUs = Math.max(MIN_SEGMENT_US, Math.min(MAX_SEGMENT_US, targetUs));
+
+        long startUs = 0;
+        for (long keyframeUs : keyframesUs) {
+            if (keyframeUs - startUs >= targetUs && durationUs - keyframeUs >= MIN_SEGMENT_US / 2) {
+                segments.add(newSegment(segments.size(), startUs, keyframeUs, overlapUs));
+                startUs = keyframeUs;
+            }
+        }
+        segments.add(newSegment(segments.size(), startUs, Long.MAX_VALUE, overlapUs));
+        return segments;
+    }
+
+    private static Segment newSegment(int index, long startUs, long endUs, long overlapUs) {
+        return new Segment(index, index == 0 ? 0 : Math.max(0, startUs - overlapUs), startUs, endUs);
+    }
+}
@@ -16,10 +16,20 @@
 package com.google.mediapipe.examples.facelandmarker.fragment;
 
 import android.annotation.SuppressLint;
+import android.content.ComponentCallbacks2;
 import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.Size;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
+import android.view.Surface;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
@@ -36,22 +46,37 @@ import androidx.camera.core.Preview;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.navigation.Navigation;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import static androidx.viewpager2.widget.ViewPager2.SCROLL_STATE_DRAGGING;
 
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.mediapipe.examples.facelandmarker.CameraFrameSource;
 import com.google.mediapipe.examples.facelandmarker.FaceLandmarkerHelper;
+import com.google.mediapipe.examples.facelandmarker.FrameSource;
+import com.google.mediapipe.examples.facelandmarker.ImageDirectoryFrameSource;
+import com.google.mediapipe.examples.facelandmarker.KeepWarmPolicy;
+import com.google.mediapipe.examples.facelandmarker.LandmarkFrame;
+import com.google.mediapipe.examples.facelandmarker.LandmarkInterpolator;
+import com.google.mediapipe.examples.facelandmarker.LandmarkOverlay;
+import com.google.mediapipe.examples.facelandmarker.LatestValueMailbox;
 import com.google.mediapipe.examples.facelandmarker.MainViewModel;
+import com.google.mediapipe.examples.facelandmarker.OutputDemand;
+import com.google.mediapipe.examples.facelandmarker.PipelineMetrics;
+import com.google.mediapipe.examples.facelandmarker.PipelineScheduler;
+import com.google.mediapipe.examples.facelandmarker.QualityGovernor;
 import com.google.mediapipe.examples.facelandmarker.R;
+import com.google.mediapipe.examples.facelandmarker.SurfaceOverlayView;
+import com.google.mediapipe.examples.facelandmarker.SyntheticFrameSource;
+import com.google.mediapipe.examples.facelandmarker.VideoFileFrameSource;
 import com.google.mediapipe.examples.facelandmarker.databinding.FragmentCameraBinding;
 import com.google.mediapipe.tasks.vision.core.RunningMode;
 
+import java.io.File;
 import java.util.Locale;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author LiHao Liao
@@ -63,9 +88,19 @@ import java.util.concurrent.TimeUnit;
  */
 public class CameraFragment extends Fragment implements FaceLandmarkerHelper.LandmarkerListener{
     private static final String TAG = "Face Landmarker";
+    // How often the optional pipeline stats panel is refreshed.
+    private static final long PIPELINE_STATS_INTERVAL_MS = 500;
+    // Upper bound on how long onDestroyView waits for the pipeline threads.
+    private static final long PIPELINE_SHUTDOWN_TIMEOUT_MS = 1000;
+    // How often the quality governor samples latency and temperature.
+    private static final long QUALITY_SAMPLE_INTERVAL_MS = 500;
+    // Frames of the synthetic source, 4:3 like the camera's.
+    private static final int SYNTHETIC_FRAME_WIDTH = 640;
+    private static final int SYNTHETIC_FRAME_HEIGHT = 480;
 
     private FragmentCameraBinding fragmentCameraBinding = null;
-    private FaceLandmarkerHelper faceLandmarkerHelper;
+    // Created on the control stage, read by the conversion stage.
+    private volatile FaceLandmarkerHelper faceLandmarkerHelper;
     private MainViewModel viewModel;
     private FaceBlendshapesResultAdapter faceBlendshapesResultAdapter;
 
@@ -74,13 +109,99 @@ public class CameraFragment extends Fragment implements FaceLandmarkerHelper.Lan
     private Camera camera = null;
     private ProcessCameraProvider cameraProvider = null;
     private int cameraFacing = CameraSelector.LENS_FACING_FRONT;
-    private ExecutorService backgroundExecutor;
+    // Conversion runs the CameraX analyzer; building, swapping and closing
+    // the landmarker runs on the control stage.
+    private PipelineScheduler pipelineScheduler;
+    private long lastPipelineStatsUpdateMs = 0;
+    // Feeds the conversion stage: the camera, or a replayed or synthetic
+    // source driven at its own rate. Only touched on the UI thread.
+    private FrameSource frameSource;
+    private final FrameSource.FrameSink frameSink = new FrameSource.FrameSink() {
+        @Override
+        public void onImage(ImageProxy image) {
+            detectFace(image);
+        }
+
+        @Override
+        public void onBitmap(Bitmap bitmap, long timestampNanos, int rotationDegrees) {
+            FaceLandmarkerHelper faceLandmarkerHelper = CameraFragment.this.faceLandmarkerHelper;
+            if (faceLandmarkerHelper != null) {
+                faceLandmarkerHelper.detectLiveStream(bitmap, timestampNanos, rotationDegrees, false);
+            }
+        }
+    };
+    // Either the binding's OverlayView or its SurfaceOverlayView. Read from the
+    // MediaPipe callback thread when the overlay renders off the UI thread.
+    private volatile LandmarkOverlay landmarkOverlay;
+    // Smooths and resamples landmarks to the display rate; non-null only
+    // while interpolation is on. Fed from the MediaPipe callback thread.
+    private final LandmarkInterpolator landmarkInterpolator = new LandmarkInterpolator();
+    // The landmarker outlives a pause by the keep-warm timeout, or until
+    // memory pressure says otherwise.
+    private final KeepWarmPolicy keepWarmPolicy = new KeepWarmPolicy();
+    private final Runnable idleRelease = new Runnable() {
+        @Override
+        public void run() {
+            if (keepWarmPolicy.onIdleTimeout(SystemClock.uptimeMillis())) {
+                releaseLandmarker();
+            }
+        }
+    };
+    private final ComponentCallbacks2 memoryCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            onMemoryPressure(level);
+        }
+
+        @Override
+        public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        }
+
+        @Override
+        public void onLowMemory() {
+            onMemoryPressure(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        }
+    };
+    private volatile LandmarkInterpolator activeInterpolator;
+    // Steps below the bottom sheet settings, which act as the ceiling, while
+    // the device is too slow or too hot. Sampled on the UI thread.
+    private final QualityGovernor qualityGovernor = new QualityGovernor();
+    private int appliedQualityLevel = 0;
+    // Long edge of the analysis resolution at the applied level, 0 for the
+    // camera default.
+    private int analysisLongEdge = 0;
+    private PowerManager powerManager;
+    private final Runnable qualityTick = new Runnable() {
+        @Override
+        public void run() {
+            sampleQuality();
+            mainHandler.postDelayed(this, QUALITY_SAMPLE_INTERVAL_MS);
+        }
+    };
+
+    // The blendshape panel redraws at most this often, independent of the
+    // inference rate, and only lists the highest scoring entries.
+    private static final long BLENDSHAPE_REFRESH_INTERVAL_MS = 100;
+    private static final int BLENDSHAPE_TOP_K = 10;
+    // Ranges of the bottom sheet settings, as in the other sample apps.
+    private static final int THRESHOLD_MIN_TENTHS = 1;
+    private static final int THRESHOLD_MAX_TENTHS = 9;
+    private static final int MIN_FACES = 1;
+    private static final int MAX_FACES = 2;
+
+    // Results travel from the MediaPipe callback thread to the UI thread
+    // through single-slot mailboxes drained once per vsync. A frame in the
+    // mailbox is retained until the UI thread is done with it.
+    private static final LandmarkFrame EMPTY_FRAME = new LandmarkFrame();
+    private final LatestValueMailbox<LandmarkFrame> resultMailbox = new LatestValueMailbox<>();
+    private final LatestValueMailbox<UiError> errorMailbox = new LatestValueMailbox<>();
+    private final AtomicBoolean uiFrameScheduled = new AtomicBoolean(false);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     public CameraFragment() {
         // Initialize lazy properties here or in another appropriate place
-        faceBlendshapesResultAdapter = new FaceBlendshapesResultAdapter();
-        // ViewModel initialization (use ViewModelProviders)
-        viewModel = new MainViewModel();
+        faceBlendshapesResultAdapter = new FaceBlendshapesResultAdapter(BLENDSHAPE_TOP_K);
+        faceBlendshapesResultAdapter.setRefreshIntervalMs(BLENDSHAPE_REFRESH_INTERVAL_MS);
     }
 
     @Override
@@ -93,8 +214,20 @@ public class CameraFragment extends Fragment implements FaceLandmarkerHelper.Lan
                     .navigate(R.id.action_camera_to_permissions);
         }
 
+        // A landmarker kept warm across the pause is simply reused.
+        mainHandler.removeCallbacks(idleRelease);
+        keepWarmPolicy.setIdleTimeoutMs(viewModel.getKeepWarmTimeoutMs());
+        keepWarmPolicy.onResume(SystemClock.uptimeMillis());
+        mainHandler.removeCallbacks(qualityTick);
+        if (viewModel.isAdaptiveQualityEnabled()) {
+            mainHandler.postDelayed(qualityTick, QUALITY_SAMPLE_INTERVAL_MS);
+        }
+        if (imageAnalyzer != null) {
+            startFrameSource();
+        }
+
         // Restart or initialize FaceLandmarkerHelper when the app returns to the foreground
-        backgroundExecutor.execute(new Runnable() {
+        runControl(new Runnable() {
             @Override
             public void run() {
                 if (faceLandmarkerHelper.isClose()) {
@@ -107,37 +240,94 @@ public class CameraFragment extends Fragment implements FaceLandmarkerHelper.Lan
     @Override
     public void onPause() {
         super.onPause();
+        mainHandler.removeCallbacks(qualityTick);
+        stopFrameSource();
         if (faceLandmarkerHelper != null) {
-            viewModel.setMaxFaces(faceLandmarkerHelper.getMaxNumFaces());
+            // The face count is kept in the view model already, the helper
+            // only has the governed value.
             viewModel.setMinFaceDetectionConfidence(faceLandmarkerHelper.getMinFaceDetectionConfidence());
             viewModel.setMinFaceTrackingConfidence(faceLandmarkerHelper.getMinFaceTrackingConfidence());
             viewModel.setMinFacePresenceConfidence(faceLandmarkerHelper.getMinFacePresenceConfidence());
             viewModel.setDelegate(faceLandmarkerHelper.getCurrentDelegate());
 
-            // Close the FaceLandmarkerHelper and release resources
-            backgroundExecutor.execute(new Runnable() {
+            // Keep the landmarker loaded for a while, so a quick return
+            // doesn't reload the model.
+            long releaseDelayMs = keepWarmPolicy.onPause(SystemClock.uptimeMillis());
+            if (releaseDelayMs == 0) {
+                releaseLandmarker();
+            } else if (releaseDelayMs > 0) {
+                mainHandler.postDelayed(idleRelease, releaseDelayMs);
+            }
+        }
+    }
+
+    // Closes the landmarker and frees its pools and caches on the control
+    // stage. The next onResume sets it up again.
+    private void releaseLandmarker() {
+        mainHandler.removeCallbacks(idleRelease);
+        landmarkInterpolator.clear();
+        runControl(new Runnable() {
+            @Override
+            public void run() {
+                faceLandmarkerHelper.releaseResources();
+            }
+        });
+    }
+
+    private void runControl(Runnable task) {
+        if (!pipelineScheduler.offer(PipelineScheduler.STAGE_CONTROL, task)) {
+            Log.w(TAG, "Control stage is full or shut down, dropping task");
+        }
+    }
+
+    private void onMemoryPressure(int level) {
+        if (faceLandmarkerHelper == null) {
+            return;
+        }
+        switch (keepWarmPolicy.onTrimMemory(level)) {
+            case KeepWarmPolicy.ACTION_RELEASE:
+                releaseLandmarker();
+                break;
+            case KeepWarmPolicy.ACTION_TRIM_POOLS:
+                faceLandmarkerHelper.trimPools();
+                break;
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        requireContext().unregisterComponentCallbacks(memoryCallbacks);
+        mainHandler.removeCallbacks(idleRelease);
+        mainHandler.removeCallbacks(qualityTick);
+        stopFrameSource();
+        if (faceLandmarkerHelper != null) {
+            // Whatever was kept warm goes with the view.
+            runControl(new Runnable() {
                 @Override
                 public void run() {
-                    faceLandmarkerHelper.clearFaceLandmarker();
+                    faceLandmarkerHelper.releaseResources();
                 }
             });
         }
-    }
 
-    @Override
-    public void onDestroyView() {
         // Release the binding
+        Choreographer.getInstance().removeFrameCallback(uiFrameCallback);
+        mainHandler.removeCallbacks(postUiFrameCallback);
+        uiFrameScheduled.set(false);
+        LandmarkFrame pending = resultMailbox.take();
+        if (pending != null) {
+            pending.release();
+        }
+        landmarkOverlay = null;
         fragmentCameraBinding = null;
         super.onDestroyView();
 
-        // Shut down the background executor
-        backgroundExecutor.shutdown();
-        try {
-            if (!backgroundExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
-                backgroundExecutor.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            backgroundExecutor.shutdownNow();
+        // Let the release above run, but never hang the main thread on it.
+        if (!pipelineScheduler.shutdown(PIPELINE_SHUTDOWN_TIMEOUT_MS)) {
+            Log.w(TAG, "Pipeline did not stop within " + PIPELINE_SHUTDOWN_TIMEOUT_MS + " ms, interrupted it");
+        }
+        if (faceLandmarkerHelper != null) {
+            faceLandmarkerHelper.shutdown();
         }
     }
 
@@ -152,13 +342,21 @@ public class CameraFragment extends Fragment implements FaceLandmarkerHelper.Lan
     @Override
     public void onViewCreated(View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
+        // Shared through the activity, so the gallery runs with these settings.
+        viewModel = new ViewModelProvider(requireActivity()).get(MainViewModel.class);
 
         // Set up RecyclerView with its layout manager and adapter
         fragmentCameraBinding.recyclerviewResults.setLayoutManager(new LinearLayoutManager(getContext()));
         fragmentCameraBinding.recyclerviewResults.setAdapter(faceBlendshapesResultAdapter);
 
-        // Initialize the background executor
-        backgroundExecutor = Executors.newSingleThreadExecutor();
+        selectOverlay(viewModel.getCurrentOverlayMode());
+        applyInterpolation(viewModel.isInterpolationEnabled());
+        applyBlendshapesVisibility(viewModel.isBlendshapesEnabled());
+
+        // Initialize the pipeline threads
+        pipelineScheduler = new PipelineScheduler();
+        requireContext().registerComponentCallbacks(memoryCallbacks);
+        powerManager = requireContext().getSystemService(PowerManager.class);
 
         // Set up the camera after the layout has been properly laid out
         fragmentCameraBinding.viewFinder.post(new Runnable() {
@@ -169,10 +367,10 @@ public class CameraFragment extends Fragment implements FaceLandmarkerHelper.Lan
         });
 
         // Initialize the FaceLandmarkerHelper in the background
-        backgroundExecutor.execute(new Runnable() {
+        runControl(new Runnable() {
             @Override
             public void run() {
-                faceLandmarkerHelper = new FaceLandmarkerHelper(
+                FaceLandmarkerHelper helper = new FaceLandmarkerHelper(
                         viewModel.getCurrentMinFaceDetectionConfidence(),
                         viewModel.getCurrentMinFaceTrackingConfidence(),
                         viewModel.getCurrentMinFacePresenceConfidence(),
@@ -180,8 +378,14 @@ public class CameraFragment extends Fragment implements FaceLandmarkerHelper.Lan
                         viewModel.getCurrentDelegate(),
                         RunningMode.LIVE_STREAM,
                         getContext(),
-                        CameraFragment.this // Assuming 'this' refers to an implementation of FaceLandmarkerHelperListener
+                        CameraFragment.this, // Assuming 'this' refers to an implementation of FaceLandmarkerHelperListener
+                        requiredOutputs(viewModel.isBlendshapesEnabled())
                 );
+                helper.setPipelineScheduler(pipelineScheduler);
+                helper.setIngestionMode(viewModel.getCurrentIngestionMode());
+                helper.setMaxInferenceRateHz(viewModel.getCurrentMaxInferenceRateHz());
+                // Published last, so frames never reach a half set up helper.
+                faceLandmarkerHelper = helper;
                 if (getActivity() != null) {
                     getActivity().runOnUiThread(new Runnable() {
                         @Override
@@ -198,28 +402,95 @@ public class CameraFragment extends Fragment implements FaceLandmarkerHelper.Lan
     }
 
     private void initBottomSheetControls() {
+        fragmentCameraBinding.overlay.setPipelineMetrics(faceLandmarkerHelper.getPipelineMetrics());
+        fragmentCameraBinding.surfaceOverlay.setPipelineMetrics(faceLandmarkerHelper.getPipelineMetrics());
+        fragmentCameraBinding.bottomSheetLayout.pipelineStatsSwitch.setOnCheckedChangeListener(
+                (buttonView, isChecked) -> fragmentCameraBinding.bottomSheetLayout.pipelineStatsVal.setVisibility(
+                        isChecked ? View.VISIBLE : View.GONE));
+
         // Initialize bottom sheet settings
-        fragmentCameraBinding.bottomSheetLayout.maxFacesValue.setText(String.valueOf(faceLandmarkerHelper.getMaxNumFaces()));
+        fragmentCameraBinding.bottomSheetLayout.maxFacesValue.setText(String.valueOf(viewModel.getCurrentMaxFaces()));
         fragmentCameraBinding.bottomSheetLayout.detectionThresholdValue.setText(String.format(Locale.US, "%.2f", faceLandmarkerHelper.getMinFaceDetectionConfidence()));
         fragmentCameraBinding.bottomSheetLayout.trackingThresholdValue.setText(String.format(Locale.US, "%.2f", faceLandmarkerHelper.getMinFaceTrackingConfidence()));
         fragmentCameraBinding.bottomSheetLayout.presenceThresholdValue.setText(String.format(Locale.US, "%.2f", faceLandmarkerHelper.getMinFacePresenceConfidence()));
 
-        // Set click listeners for each control button
-        fragmentCameraBinding.bottomSheetLayout.detectionThresholdMinus.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View view) {
-                // Decrease detection threshold and update UI
-                // Similar implementation as in Kotlin
+        // Set click listeners for each control button. Every change goes
+        // through updateControlsUi, which hot swaps the landmarker.
+        fragmentCameraBinding.bottomSheetLayout.detectionThresholdMinus.setOnClickListener(view -> {
+            float threshold = faceLandmarkerHelper.getMinFaceDetectionConfidence();
+            float stepped = stepThreshold(threshold, -1);
+            if (stepped != threshold) {
+                faceLandmarkerHelper.setMinFaceDetectionConfidence(stepped);
+                updateControlsUi();
+            }
+        });
+        fragmentCameraBinding.bottomSheetLayout.detectionThresholdPlus.setOnClickListener(view -> {
+            float threshold = faceLandmarkerHelper.getMinFaceDetectionConfidence();
+            float stepped = stepThreshold(threshold, 1);
+            if (stepped != threshold) {
+                faceLandmarkerHelper.setMinFaceDetectionConfidence(stepped);
+                updateControlsUi();
+            }
+        });
+        fragmentCameraBinding.bottomSheetLayout.trackingThresholdMinus.setOnClickListener(view -> {
+            float threshold = faceLandmarkerHelper.getMinFaceTrackingConfidence();
+            float stepped = stepThreshold(threshold, -1);
+            if (stepped != threshold) {
+                faceLandmarkerHelper.setMinFaceTrackingConfidence(stepped);
+                updateControlsUi();
+            }
+        });
+        fragmentCameraBinding.bottomSheetLayout.trackingThresholdPlus.setOnClickListener(view -> {
+            float threshold = faceLandmarkerHelper.getMinFaceTrackingConfidence();
+            float stepped = stepThreshold(threshold, 1);
+            if (stepped != threshold) {
+                faceLandmarkerHelper.setMinFaceTrackingConfidence(stepped);
+                updateControlsUi();
+            }
+        });
+        fragmentCameraBinding.bottomSheetLayout.presenceThresholdMinus.setOnClickListener(view -> {
+            float threshold = faceLandmarkerHelper.getMinFacePresenceConfidence();
+            float stepped = stepThreshold(threshold, -1);
+            if (stepped != threshold) {
+                faceLandmarkerHelper.setMinFacePresenceConfidence(stepped);
+                updateControlsUi();
+            }
+        });
+        fragmentCameraBinding.bottomSheetLayout.presenceThresholdPlus.setOnClickListener(view -> {
+            float threshold = faceLandmarkerHelper.getMinFacePresenceConfidence();
+            float stepped = stepThreshold(threshold, 1);
+            if (stepped != threshold) {
+                faceLandmarkerHelper.setMinFacePresenceConfidence(stepped);
+                updateControlsUi();
+            }
+        });
+        // The face count, inference rate and blendshapes are ceilings for
+        // the quality governor, so they go through applyQuality.
+        fragmentCameraBinding.bottomSheetLayout.maxFacesMinus.setOnClickListener(view -> {
+            if (viewModel.getCurrentMaxFaces() > MIN_FACES) {
+                viewModel.setMaxFaces(viewModel.getCurrentMaxFaces() - 1);
+                fragmentCameraBinding.bottomSheetLayout.maxFacesValue.setText(String.valueOf(viewModel.getCurrentMaxFaces()));
+                applyQuality(appliedQualityLevel);
+            }
+        });
+        fragmentCameraBinding.bottomSheetLayout.maxFacesPlus.setOnClickListener(view -> {
+            if (viewModel.getCurrentMaxFaces() < MAX_FACES) {
+                viewModel.setMaxFaces(viewModel.getCurrentMaxFaces() + 1);
+                fragmentCameraBinding.bottomSheetLayout.maxFacesValue.setText(String.valueOf(viewModel.getCurrentMaxFaces()));
+                applyQuality(appliedQualityLevel);
             }
         });
 
-        // ... Additional click listeners for other controls ...
-
+        fragmentCameraBinding.bottomSheetLayout.spinnerDelegate.setSelection(
+                faceLandmarkerHelper.getCurrentDelegate(), false);
         fragmentCameraBinding.bottomSheetLayout.spinnerDelegate.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
-                // Handle item selection
-                // Similar implementation as in Kotlin
+                if (position == faceLandmarkerHelper.getCurrentDelegate()) {
+                    return;
+                }
+                faceLandmarkerHelper.setCurrentDelegate(position);
+                updateControlsUi();
             }
 
             @Override
@@ -227,26 +498,256 @@ public class CameraFragment extends Fragment implements FaceLandmarkerHelper.Lan
                 // Handle no selection
             }
         });
+
+        fragmentCameraBinding.bottomSheetLayout.spinnerOverlay.setSelection(
+                viewModel.getCurrentOverlayMode(), false);
+        fragmentCameraBinding.bottomSheetLayout.spinnerOverlay.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                if (position == viewModel.getCurrentOverlayMode()) {
+                    return;
+                }
+                viewModel.setOverlayMode(position);
+                selectOverlay(position);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+                // no-op
+            }
+        });
+
+        // Capping the inference rate below the display rate pairs with
+        // interpolation to keep the overlay smooth at lower compute.
+        final int[] inferenceRates = getResources().getIntArray(R.array.inference_rate_values);
+        int rateIndex = 0;
+        for (int i = 0; i < inferenceRates.length; i++) {
+            if (inferenceRates[i] == (int) viewModel.getCurrentMaxInferenceRateHz()) {
+                rateIndex = i;
+            }
+        }
+        fragmentCameraBinding.bottomSheetLayout.spinnerInferenceRate.setSelection(rateIndex, false);
+        fragmentCameraBinding.bottomSheetLayout.spinnerInferenceRate.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                viewModel.setMaxInferenceRateHz(inferenceRates[position]);
+                applyQuality(appliedQualityLevel);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+                // no-op
+            }
+        });
+
+        // The blendshape model only runs while the panel is shown.
+        fragmentCameraBinding.bottomSheetLayout.blendshapesSwitch.setChecked(viewModel.isBlendshapesEnabled());
+        fragmentCameraBinding.bottomSheetLayout.blendshapesSwitch.setOnCheckedChangeListener(
+                (buttonView, isChecked) -> {
+                    viewModel.setBlendshapesEnabled(isChecked);
+                    applyQuality(appliedQualityLevel);
+                });
+
+        fragmentCameraBinding.bottomSheetLayout.interpolationSwitch.setChecked(viewModel.isInterpolationEnabled());
+        fragmentCameraBinding.bottomSheetLayout.interpolationSwitch.setOnCheckedChangeListener(
+                (buttonView, isChecked) -> {
+                    viewModel.setInterpolationEnabled(isChecked);
+                    applyInterpolation(isChecked);
+                });
+
+        // Switching the input path needs a different ImageAnalysis output
+        // format, so the camera use cases are rebound.
+        fragmentCameraBinding.bottomSheetLayout.spinnerIngestion.setSelection(
+                viewModel.getCurrentIngestionMode(), false);
+        fragmentCameraBinding.bottomSheetLayout.spinnerIngestion.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                if (position == viewModel.getCurrentIngestionMode()) {
+                    return;
+                }
+                viewModel.setIngestionMode(position);
+                faceLandmarkerHelper.setIngestionMode(position);
+                if (cameraProvider != null) {
+                    bindCameraUseCases();
+                }
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+                // no-op
+            }
+        });
+
+        // Other sources replace the camera frames; the preview keeps running.
+        fragmentCameraBinding.bottomSheetLayout.spinnerFrameSource.setSelection(
+                viewModel.getCurrentFrameSourceMode(), false);
+        fragmentCameraBinding.bottomSheetLayout.spinnerFrameSource.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                if (position == viewModel.getCurrentFrameSourceMode()) {
+                    return;
+                }
+                viewModel.setFrameSourceMode(position);
+                if (imageAnalyzer != null) {
+                    startFrameSource();
+                }
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+                // no-op
+            }
+        });
+
+        final int[] sourceRates = getResources().getIntArray(R.array.frame_source_rate_values);
+        int sourceRateIndex = 0;
+        for (int i = 0; i < sourceRates.length; i++) {
+            if (sourceRates[i] == (int) viewModel.getCurrentFrameSourceRateHz()) {
+                sourceRateIndex = i;
+            }
+        }
+        fragmentCameraBinding.bottomSheetLayout.spinnerFrameSourceRate.setSelection(sourceRateIndex, false);
+        fragmentCameraBinding.bottomSheetLayout.spinnerFrameSourceRate.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                viewModel.setFrameSourceRateHz(sourceRates[position]);
+                if (frameSource != null) {
+                    frameSource.setRateHz(sourceRates[position]);
+                }
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+                // no-op
+            }
+        });
+
+        // Switching the governor off goes straight back to the settings above.
+        fragmentCameraBinding.bottomSheetLayout.adaptiveQualitySwitch.setChecked(viewModel.isAdaptiveQualityEnabled());
+        fragmentCameraBinding.bottomSheetLayout.adaptiveQualitySwitch.setOnCheckedChangeListener(
+                (buttonView, isChecked) -> {
+                    viewModel.setAdaptiveQualityEnabled(isChecked);
+                    mainHandler.removeCallbacks(qualityTick);
+                    if (isChecked) {
+                        mainHandler.postDelayed(qualityTick, QUALITY_SAMPLE_INTERVAL_MS);
+                    } else {
+                        qualityGovernor.reset();
+                        applyQuality(0);
+                    }
+                });
+
+        // The helper was built from the ceiling; bring it to the current level.
+        applyQuality(appliedQualityLevel);
+    }
+
+    // Feeds the governor the current inference latency and thermal status
+    // and applies the level it picks.
+    private void sampleQuality() {
+        FaceLandmarkerHelper helper = faceLandmarkerHelper;
+        if (helper == null || fragmentCameraBinding == null) {
+            return;
+        }
+        int level = qualityGovernor.onSample(SystemClock.uptimeMillis(),
+                helper.getAdmissionController().getLatencyEmaMs(), currentThermalStatus());
+        if (level != appliedQualityLevel) {
+            Log.i(TAG, "Quality level " + appliedQualityLevel + " -> " + level + ": " + qualityGovernor.describe());
+            applyQuality(level);
+        }
+    }
+
+    private int currentThermalStatus() {
+        if (powerManager != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return powerManager.getCurrentThermalStatus();
+        }
+        return PowerManager.THERMAL_STATUS_NONE;
+    }
+
+    // Applies the quality level on top of the view model settings. Only what
+    // changed is rebuilt: the face count and outputs through a hot swap, the
+    // analysis resolution through rebinding the camera.
+    private void applyQuality(int level) {
+        FaceLandmarkerHelper helper = faceLandmarkerHelper;
+        if (helper == null || fragmentCameraBinding == null) {
+            return;
+        }
+        appliedQualityLevel = level;
+        helper.setMaxInferenceRateHz(QualityGovernor.effectiveRateCapHz(level, viewModel.getCurrentMaxInferenceRateHz()));
+
+        int maxFaces = QualityGovernor.effectiveMaxFaces(level, viewModel.getCurrentMaxFaces());
+        if (maxFaces != helper.getMaxNumFaces()) {
+            helper.setMaxNumFaces(maxFaces);
+            helper.reconfigure();
+        }
+
+        boolean blendshapes = QualityGovernor.effectiveBlendshapes(level, viewModel.isBlendshapesEnabled());
+        applyBlendshapesVisibility(blendshapes);
+        helper.registerOutputs(CameraFragment.this, requiredOutputs(blendshapes));
+
+        int detailLevel = QualityGovernor.overlayDetail(level);
+        fragmentCameraBinding.overlay.setDetailLevel(detailLevel);
+        fragmentCameraBinding.surfaceOverlay.setDetailLevel(detailLevel);
+
+        int longEdge = QualityGovernor.analysisLongEdge(level);
+        if (longEdge != analysisLongEdge) {
+            analysisLongEdge = longEdge;
+            if (cameraProvider != null) {
+                bindCameraUseCases();
+            }
+        }
+
+        fragmentCameraBinding.bottomSheetLayout.qualityLevelVal.setText(
+                getString(R.string.quality_level_format, level, QualityGovernor.MAX_LEVEL));
+    }
+
+    private static int requiredOutputs(boolean blendshapesEnabled) {
+        return blendshapesEnabled
+                ? OutputDemand.OUTPUT_LANDMARKS | OutputDemand.OUTPUT_BLENDSHAPES
+                : OutputDemand.OUTPUT_LANDMARKS;
+    }
+
+    private void applyBlendshapesVisibility(boolean enabled) {
+        fragmentCameraBinding.recyclerviewResults.setVisibility(enabled ? View.VISIBLE : View.GONE);
+        if (!enabled) {
+            faceBlendshapesResultAdapter.clear();
+        }
     }
 
-    // Implement updateControlsUi method as needed
+    // Both overlays share the interpolator so switching between them keeps
+    // the landmark history.
+    private void applyInterpolation(boolean enabled) {
+        landmarkInterpolator.clear();
+        activeInterpolator = enabled ? landmarkInterpolator : null;
+        fragmentCameraBinding.overlay.setInterpolator(activeInterpolator);
+        fragmentCameraBinding.surfaceOverlay.setInterpolator(activeInterpolator);
+    }
+
+    // Shows the overlay implementation for overlayMode and hides the other one.
+    private void selectOverlay(int overlayMode) {
+        LandmarkOverlay previous = landmarkOverlay;
+        if (previous != null) {
+            previous.clear();
+        }
+        boolean useSurface = overlayMode == MainViewModel.OVERLAY_SURFACE;
+        fragmentCameraBinding.overlay.setVisibility(useSurface ? View.GONE : View.VISIBLE);
+        fragmentCameraBinding.surfaceOverlay.setVisibility(useSurface ? View.VISIBLE : View.GONE);
+        landmarkOverlay = useSurface ? fragmentCameraBinding.surfaceOverlay : fragmentCameraBinding.overlay;
+    }
+
+    // Shows the current settings and applies them. The helper debounces the
+    // rebuild and keeps the old landmarker (and the overlay) running until the
+    // new one is warmed up.
     private void updateControlsUi() {
-        fragmentCameraBinding.bottomSheetLayout.maxFacesValue.setText(String.valueOf(faceLandmarkerHelper.getMaxNumFaces()));
         fragmentCameraBinding.bottomSheetLayout.detectionThresholdValue.setText(String.format(Locale.US, "%.2f", faceLandmarkerHelper.getMinFaceDetectionConfidence()));
         fragmentCameraBinding.bottomSheetLayout.trackingThresholdValue.setText(String.format(Locale.US, "%.2f", faceLandmarkerHelper.getMinFaceTrackingConfidence()));
         fragmentCameraBinding.bottomSheetLayout.presenceThresholdValue.setText(String.format(Locale.US, "%.2f", faceLandmarkerHelper.getMinFacePresenceConfidence()));
 
-        // Clearing and setting up the FaceLandmarkerHelper in the background
-        backgroundExecutor.execute(new Runnable() {
-            @Override
-            public void run() {
-                faceLandmarkerHelper.clearFaceLandmarker();
-                faceLandmarkerHelper.setupFaceLandmarker();
-            }
-        });
+        faceLandmarkerHelper.reconfigure();
+    }
 
-        // Clear the overlay
-        fragmentCameraBinding.overlay.clear();
+    // Moves threshold by steps tenths, kept on the tenths grid and in range.
+    private static float stepThreshold(float threshold, int steps) {
+        int tenths = Math.round(threshold * 10f) + steps;
+        return Math.max(THRESHOLD_MIN_TENTHS, Math.min(THRESHOLD_MAX_TENTHS, tenths)) / 10f;
     }
 
     private void setUpCamera() {
@@ -286,20 +787,27 @@ public class CameraFragment extends Fragment implements FaceLandmarkerHelper.Lan
                 .setTargetRotation(fragmentCameraBinding.viewFinder.getDisplay().getRotation())
                 .build();
 
-        // ImageAnalysis
-        ImageAnalysis imageAnalyzer = new ImageAnalysis.Builder()
-                .setTargetAspectRatio(AspectRatio.RATIO_4_3)
-                .setTargetRotation(fragmentCameraBinding.viewFinder.getDisplay().getRotation())
+        // ImageAnalysis. The MediaImage path consumes the camera's native YUV
+        // frames; the bitmap path lets CameraX convert to RGBA.
+        int outputImageFormat = viewModel.getCurrentIngestionMode() == FaceLandmarkerHelper.INGESTION_MEDIA_IMAGE
+                ? ImageAnalysis.OUTPUT_IMAGE_FORMAT_YUV_420_888
+                : ImageAnalysis.OUTPUT_IMAGE_FORMAT_RGBA_8888;
+        // The quality governor may ask for a lower 4:3 resolution than the
+        // default.
+        int rotation = fragmentCameraBinding.viewFinder.getDisplay().getRotation();
+        ImageAnalysis.Builder analysisBuilder = new ImageAnalysis.Builder()
+                .setTargetRotation(rotation)
                 .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
-                .setOutputImageFormat(ImageAnalysis.OUTPUT_IMAGE_FORMAT_RGBA_8888)
-                .build();
-
-        imageAnalyzer.setAnalyzer(backgroundExecutor, new ImageAnalysis.Analyzer() {
-            @Override
-            public void analyze(@NonNull ImageProxy image) {
-                detectFace(image);
-            }
-        });
+                .setOutputImageFormat(outputImageFormat);
+        if (analysisLongEdge > 0) {
+            analysisBuilder.setTargetResolution(analysisTargetSize(analysisLongEdge, rotation));
+        } else {
+            analysisBuilder.setTargetAspectRatio(AspectRatio.RATIO_4_3);
+        }
+        // The analyzer is set by startFrameSource, unless another source
+        // feeds the pipeline.
+        stopFrameSource();
+        imageAnalyzer = analysisBuilder.build();
 
         // Unbind use cases before rebinding
         cameraProvider.unbindAll();
@@ -315,12 +823,66 @@ public class CameraFragment extends Fragment implements FaceLandmarkerHelper.Lan
         } catch (Exception e) {
             Log.e(TAG, "Use case binding failed", e);
         }
+        startFrameSource();
+    }
+
+    // (Re)starts the frame source the settings ask for. The camera preview
+    // keeps running whichever source feeds the landmarker.
+    private void startFrameSource() {
+        stopFrameSource();
+        frameSource = createFrameSource(viewModel.getCurrentFrameSourceMode());
+        frameSource.setRateHz(viewModel.getCurrentFrameSourceRateHz());
+        frameSource.start(pipelineScheduler.getExecutor(PipelineScheduler.STAGE_CONVERSION), frameSink);
+    }
+
+    private void stopFrameSource() {
+        if (frameSource != null) {
+            frameSource.stop();
+            frameSource = null;
+        }
+    }
+
+    private FrameSource createFrameSource(int mode) {
+        if (mode == MainViewModel.FRAME_SOURCE_SYNTHETIC) {
+            return new SyntheticFrameSource(SYNTHETIC_FRAME_WIDTH, SYNTHETIC_FRAME_HEIGHT, null);
+        }
+        if (mode == MainViewModel.FRAME_SOURCE_REPLAY) {
+            // A video in the replay directory wins over images.
+            File directory = requireContext().getExternalFilesDir("replay");
+            File[] videos = directory != null ? directory.listFiles((dir, name) -> {
+                String lower = name.toLowerCase(Locale.US);
+                return lower.endsWith(".mp4") || lower.endsWith(".3gp") || lower.endsWith(".webm");
+            }) : null;
+            if (videos != null && videos.length > 0) {
+                return new VideoFileFrameSource(videos[0]);
+            }
+            if (directory != null && ImageDirectoryFrameSource.hasImages(directory)) {
+                return new ImageDirectoryFrameSource(directory);
+            }
+            Toast.makeText(requireContext(), "Nothing to replay in " + directory + ", using the camera",
+                    Toast.LENGTH_LONG).show();
+        }
+        return new CameraFrameSource(imageAnalyzer);
+    }
+
+    // setTargetResolution takes the size in the target rotation's frame, so
+    // it is portrait for a portrait display.
+    private static Size analysisTargetSize(int longEdge, int rotation) {
+        int shortEdge = longEdge * 3 / 4;
+        boolean portrait = rotation == Surface.ROTATION_0 || rotation == Surface.ROTATION_180;
+        return portrait ? new Size(shortEdge, longEdge) : new Size(longEdge, shortEdge);
     }
 
     private void detectFace(ImageProxy imageProxy) {
+        FaceLandmarkerHelper faceLandmarkerHelper = this.faceLandmarkerHelper;
+        if (faceLandmarkerHelper == null) {
+            // Still being set up on the control stage.
+            imageProxy.close();
+            return;
+        }
         faceLandmarkerHelper.detectLiveStream(
                 imageProxy,
-                cameraFacing == CameraSelector.LENS_FACING_BACK
+                cameraFacing == CameraSelector.LENS_FACING_FRONT
         );
     }
 
@@ -331,73 +893,191 @@ public class CameraFragment extends Fragment implements FaceLandmarkerHelper.Lan
             imageAnalyzer.setTargetRotation(fragmentCameraBinding.viewFinder.getDisplay().getRotation());
         }
     }
+    @Override
+    public boolean prefersLandmarkFrames() {
+        return true;
+    }
+
     @Override
     public void onResults(FaceLandmarkerHelper.ResultBundle resultBundle) {
-        if (getActivity() != null) {
-            getActivity().runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    if (fragmentCameraBinding != null) {
-                        if (fragmentCameraBinding.recyclerviewResults.getScrollState() != SCROLL_STATE_DRAGGING) {
-                            faceBlendshapesResultAdapter.updateResults(resultBundle.getResult());
-                            faceBlendshapesResultAdapter.notifyDataSetChanged();
-                        }
+        // Only reached if the helper stops delivering frames; flatten here.
+        LandmarkFrame frame = new LandmarkFrame();
+        frame.setResultBundle(resultBundle);
+        onResults(frame);
+    }
 
-                        fragmentCameraBinding.bottomSheetLayout.inferenceTimeVal.setText(
-                                String.format(Locale.getDefault(), "%d ms", resultBundle.getInferenceTime())
-                        );
-
-                        // Update OverlayView with the results
-                        fragmentCameraBinding.overlay.setResults(
-                                resultBundle.getResult(),
-                                resultBundle.getInputImageHeight(),
-                                resultBundle.getInputImageWidth(),
-                                RunningMode.LIVE_STREAM
-                        );
-                        // Redraw the OverlayView
-                        fragmentCameraBinding.overlay.invalidate();
-                    }
-                }
-            });
+    @Override
+    public void onResults(LandmarkFrame frame) {
+        recordFirstResultAfterResume();
+        LandmarkInterpolator interpolator = activeInterpolator;
+        if (interpolator != null) {
+            interpolator.push(frame, System.nanoTime());
+        }
+        // A thread-safe overlay takes the result right here, without waiting
+        // for the UI thread.
+        LandmarkOverlay overlay = landmarkOverlay;
+        if (overlay != null && overlay.isThreadSafe()) {
+            overlay.setResults(frame, RunningMode.LIVE_STREAM);
+        }
+        frame.retain();
+        postResult(frame);
+    }
+
+    private void recordFirstResultAfterResume() {
+        long sinceResumeMs = keepWarmPolicy.onResult(SystemClock.uptimeMillis());
+        if (sinceResumeMs >= 0) {
+            Log.i(TAG, "First result " + sinceResumeMs + " ms after resume");
+        }
+    }
+
+    // Replaces whatever the UI thread has not picked up yet.
+    private void postResult(LandmarkFrame frame) {
+        LandmarkFrame displaced = resultMailbox.post(frame);
+        if (displaced != null) {
+            displaced.release();
         }
+        scheduleUiFrame();
     }
+
     public void onEmpty() {
-        fragmentCameraBinding.overlay.clear();
-        if (getActivity() != null) {
-            getActivity().runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    faceBlendshapesResultAdapter.updateResults(null);
-                    faceBlendshapesResultAdapter.notifyDataSetChanged();
-                }
-            });
+        recordFirstResultAfterResume();
+        LandmarkInterpolator interpolator = activeInterpolator;
+        if (interpolator != null) {
+            interpolator.clear();
         }
+        LandmarkOverlay overlay = landmarkOverlay;
+        if (overlay != null && overlay.isThreadSafe()) {
+            overlay.clear();
+        }
+        postResult(EMPTY_FRAME);
     }
 
     public void onError(String error, int errorCode) {
-        if (getActivity() != null) {
-            getActivity().runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    Toast.makeText(requireContext(), error, Toast.LENGTH_SHORT).show();
-                    faceBlendshapesResultAdapter.updateResults(null);
-                    faceBlendshapesResultAdapter.notifyDataSetChanged();
-
-                    if (errorCode == FaceLandmarkerHelper.GPU_ERROR) {
-                        fragmentCameraBinding.bottomSheetLayout.spinnerDelegate.setSelection(
-                                FaceLandmarkerHelper.DELEGATE_CPU, false
-                        );
-                    }
+        errorMailbox.post(new UiError(error, errorCode));
+        scheduleUiFrame();
+    }
+
+    // Asks for one UI frame callback; further posts before it runs only
+    // replace the mailbox contents.
+    private void scheduleUiFrame() {
+        if (uiFrameScheduled.compareAndSet(false, true)) {
+            mainHandler.post(postUiFrameCallback);
+        }
+    }
+
+    private final Runnable postUiFrameCallback = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(uiFrameCallback);
+        }
+    };
+
+    // Runs on the UI thread at most once per vsync and applies only the most
+    // recent result; anything posted in between was coalesced.
+    private final Choreographer.FrameCallback uiFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            uiFrameScheduled.set(false);
+            UiError error = errorMailbox.take();
+            LandmarkFrame frame = resultMailbox.take();
+            if (fragmentCameraBinding != null && landmarkOverlay != null) {
+                if (error != null) {
+                    showError(error);
                 }
-            });
+                if (frame == EMPTY_FRAME) {
+                    showEmpty();
+                } else if (frame != null) {
+                    showResults(frame);
+                }
+            }
+            if (frame != null) {
+                frame.release();
+            }
+        }
+    };
+
+    private void showResults(LandmarkFrame frame) {
+        if (frame.getResultTimeNanos() != 0) {
+            faceLandmarkerHelper.getPipelineMetrics().record(
+                    PipelineMetrics.STAGE_UI_POST,
+                    System.nanoTime() - frame.getResultTimeNanos());
+        }
+        updatePipelineStats();
+
+        if (fragmentCameraBinding.recyclerviewResults.getScrollState() != SCROLL_STATE_DRAGGING) {
+            faceBlendshapesResultAdapter.updateResults(frame);
+        }
+
+        fragmentCameraBinding.bottomSheetLayout.inferenceTimeVal.setText(
+                String.format(Locale.getDefault(), "%d ms", frame.getInferenceTime())
+        );
+
+        // Update OverlayView with the results
+        if (!landmarkOverlay.isThreadSafe()) {
+            landmarkOverlay.setResults(
+                    frame,
+                    RunningMode.LIVE_STREAM
+            );
         }
     }
 
+    private void showEmpty() {
+        if (!landmarkOverlay.isThreadSafe()) {
+            landmarkOverlay.clear();
+        }
+        faceBlendshapesResultAdapter.clear();
+    }
 
+    private void showError(UiError error) {
+        Toast.makeText(requireContext(), error.message, Toast.LENGTH_SHORT).show();
+        faceBlendshapesResultAdapter.clear();
 
+        if (error.errorCode == FaceLandmarkerHelper.GPU_ERROR) {
+            fragmentCameraBinding.bottomSheetLayout.spinnerDelegate.setSelection(
+                    FaceLandmarkerHelper.DELEGATE_CPU, false
+            );
+        }
+    }
 
+    private void updatePipelineStats() {
+        if (fragmentCameraBinding.bottomSheetLayout.pipelineStatsVal.getVisibility() != View.VISIBLE) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        if (now - lastPipelineStatsUpdateMs < PIPELINE_STATS_INTERVAL_MS) {
+            return;
+        }
+        lastPipelineStatsUpdateMs = now;
+        fragmentCameraBinding.bottomSheetLayout.pipelineStatsVal.setText(
+                getString(R.string.pipeline_stats_header) + "\n"
+                        + faceLandmarkerHelper.getPipelineMetrics().describe()
+                        + "\ningestion: " + faceLandmarkerHelper.describeIngestion()
+                        + "\n" + faceLandmarkerHelper.getAdmissionController()
+                        + "\ninference by outputs: " + faceLandmarkerHelper.getOutputDemand().describe()
+                        + "\ncrop: " + faceLandmarkerHelper.getRoiTracker().describe()
+                        + "\nstatic scene: " + faceLandmarkerHelper.getSceneChangeDetector().describe()
+                        + "\ninit: " + faceLandmarkerHelper.getInitMetrics().describe()
+                        + "\nkeep-warm: " + keepWarmPolicy.describe()
+                        + "\nquality: " + qualityGovernor.describe()
+                        + "\nsource: " + (frameSource != null ? frameSource.describe() : "none")
+                        + "\nstages: " + pipelineScheduler.describe()
+                        + "\nui coalesced " + resultMailbox.getCoalescedCount()
+                        + "/" + resultMailbox.getPostedCount()
+                        + (landmarkOverlay instanceof SurfaceOverlayView
+                        ? "\noverlay interval " + ((SurfaceOverlayView) landmarkOverlay).getFrameIntervalSnapshot()
+                        + "\noverlay render " + ((SurfaceOverlayView) landmarkOverlay).getRenderTimeSnapshot()
+                        : ""));
+    }
 
+    private static class UiError {
+        final String message;
+        final int errorCode;
 
+        UiError(String message, int errorCode) {
+            this.message = message;
+            this.errorCode = errorCode;
+        }
+    }
 
     // ... Additional methods and lifecycle implementations ...
 }
@@ -16,37 +16,196 @@
 
 package com.google.mediapipe.examples.facelandmarker.fragment;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.view.LayoutInflater;
 import android.view.ViewGroup;
+import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
+import com.google.mediapipe.examples.facelandmarker.LandmarkFrame;
 import com.google.mediapipe.examples.facelandmarker.databinding.FaceBlendshapesResultBinding;
 import com.google.mediapipe.tasks.components.containers.Category;
 import com.google.mediapipe.tasks.vision.facelandmarker.FaceLandmarkerResult;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
+/**
+ * Shows the highest scoring blendshapes of the first face.
+ *
+ * Scores are kept in a fixed primitive array indexed by blendshape, the top
+ * K are picked by partial selection and only rows whose blendshape or
+ * displayed (two decimal) score changed are rebound. The panel refreshes at
+ * most once per refresh interval regardless of the inference rate; scores
+ * arriving in between are kept and shown when the interval ends.
+ */
 public class FaceBlendshapesResultAdapter extends RecyclerView.Adapter<FaceBlendshapesResultAdapter.ViewHolder> {
     private static final String NO_VALUE = "--";
+    private static final int BLENDSHAPE_COUNT = 52;
+    public  static final int DEFAULT_TOP_K = 10;
+    public  static final long DEFAULT_REFRESH_INTERVAL_MS = 100;
+    // Passed with every change so the item animator rebinds in place instead
+    // of cross-fading a new view holder.
+    private static final Object PAYLOAD_ROW = new Object();
+
+    private final String[] names = new String[BLENDSHAPE_COUNT];
+    private final float[] scores = new float[BLENDSHAPE_COUNT];
+    private int scoreCount = 0;
+
+    // What every row currently shows: the blendshape index and the score in
+    // hundredths, -1 for an empty row.
+    private int[] rowIndex;
+    private int[] rowHundredths;
+    // Scratch for the selection, same length as the rows.
+    private int[] selectedIndex;
+
+    private int topK;
+    private long refreshIntervalMs = DEFAULT_REFRESH_INTERVAL_MS;
+    private long lastRefreshMs = Long.MIN_VALUE / 2;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private boolean refreshPosted = false;
+    private final Runnable trailingRefresh = new Runnable() {
+        @Override
+        public void run() {
+            refreshPosted = false;
+            lastRefreshMs = SystemClock.uptimeMillis();
+            applySelection();
+        }
+    };
+
+    public FaceBlendshapesResultAdapter() {
+        this(DEFAULT_TOP_K);
+    }
+
+    public FaceBlendshapesResultAdapter(int topK) {
+        allocateRows(topK);
+    }
+
+    public void setRefreshIntervalMs(long refreshIntervalMs) {
+        this.refreshIntervalMs = Math.max(0, refreshIntervalMs);
+    }
 
-    private List<Category> categories = new ArrayList<>(Collections.nCopies(52, null));
+    public void setTopK(int topK) {
+        allocateRows(topK);
+        notifyDataSetChanged();
+    }
+
+    private void allocateRows(int topK) {
+        this.topK = Math.max(1, Math.min(topK, BLENDSHAPE_COUNT));
+        rowIndex = new int[this.topK];
+        rowHundredths = new int[this.topK];
+        selectedIndex = new int[this.topK];
+        Arrays.fill(rowIndex, -1);
+        Arrays.fill(rowHundredths, -1);
+        lastRefreshMs = Long.MIN_VALUE / 2;
+    }
 
+    // Must be called on the UI thread. A null result clears the panel right
+    // away; otherwise the scores are shown now, or when the refresh interval
+    // of the last refresh ends, whichever result is the latest by then.
     public void updateResults(FaceLandmarkerResult faceLandmarkerResult) {
-        categories = new ArrayList<>(Collections.nCopies(52, null));
-        if (faceLandmarkerResult != null) {
-            Optional<List<List<Category>>> optionalFaceBlendShapes = faceLandmarkerResult.faceBlendshapes(); // Update this based on the actual method name
-
-            // Unwrap the Optional and get the inner list
-            List<List<Category>> faceBlendShapes = optionalFaceBlendShapes.orElse(Collections.emptyList());
-            if (!faceBlendShapes.isEmpty()) {
-                List<Category> sortedCategories = faceBlendShapes.get(0);
-                sortedCategories.sort((category1, category2) -> Float.compare(category2.score(), category1.score()));
-                int min = Math.min(sortedCategories.size(), categories.size());
-                for (int i = 0; i < min; i++) {
-                    categories.set(i, sortedCategories.get(i));
+        if (faceLandmarkerResult == null) {
+            clear();
+            return;
+        }
+        scoreCount = 0;
+        Optional<List<List<Category>>> optionalFaceBlendShapes = faceLandmarkerResult.faceBlendshapes();
+        if (optionalFaceBlendShapes.isPresent() && !optionalFaceBlendShapes.get().isEmpty()) {
+            List<Category> categories = optionalFaceBlendShapes.get().get(0);
+            scoreCount = Math.min(categories.size(), BLENDSHAPE_COUNT);
+            for (int i = 0; i < scoreCount; i++) {
+                Category category = categories.get(i);
+                // Blendshapes come in a fixed order, so the name of a slot
+                // only has to be read once.
+                if (names[i] == null) {
+                    names[i] = category.categoryName();
                 }
+                scores[i] = category.score();
+            }
+        }
+        refresh();
+    }
+
+    // Same as above, reading the first face's scores straight from the frame.
+    public void updateResults(LandmarkFrame frame) {
+        if (frame == null) {
+            clear();
+            return;
+        }
+        scoreCount = frame.getFaceCount() > 0 ? Math.min(frame.getBlendshapesPerFace(), BLENDSHAPE_COUNT) : 0;
+        System.arraycopy(frame.getBlendshapes(), 0, scores, 0, scoreCount);
+        for (int i = 0; i < scoreCount; i++) {
+            if (names[i] == null) {
+                names[i] = frame.getBlendshapeName(i);
+            }
+        }
+        refresh();
+    }
+
+    // Empties the panel right away.
+    public void clear() {
+        cancelTrailingRefresh();
+        scoreCount = 0;
+        applySelection();
+    }
+
+    // Shows the stored scores if the refresh interval allows, otherwise
+    // makes sure one refresh follows when it ends.
+    private void refresh() {
+        if (refreshPosted) {
+            // Picks up these scores.
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        long waitMs = lastRefreshMs + refreshIntervalMs - now;
+        if (waitMs <= 0) {
+            lastRefreshMs = now;
+            applySelection();
+            return;
+        }
+        refreshPosted = true;
+        handler.postDelayed(trailingRefresh, waitMs);
+    }
+
+    private void cancelTrailingRefresh() {
+        if (refreshPosted) {
+            handler.removeCallbacks(trailingRefresh);
+            refreshPosted = false;
+        }
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        cancelTrailingRefresh();
+        super.onDetachedFromRecyclerView(recyclerView);
+    }
+
+    // Selects the top K scores by insertion into a K long ranking, which for
+    // small K is cheaper than sorting all 52, then notifies changed rows.
+    private void applySelection() {
+        int selected = 0;
+        for (int i = 0; i < scoreCount; i++) {
+            float score = scores[i];
+            if (selected == topK && score <= scores[selectedIndex[topK - 1]]) {
+                continue;
+            }
+            int position = selected < topK ? selected++ : topK - 1;
+            while (position > 0 && scores[selectedIndex[position - 1]] < score) {
+                selectedIndex[position] = selectedIndex[position - 1];
+                position--;
+            }
+            selectedIndex[position] = i;
+        }
+
+        for (int row = 0; row < topK; row++) {
+            int index = row < selected ? selectedIndex[row] : -1;
+            int hundredths = index >= 0 ? Math.round(scores[index] * 100f) : -1;
+            if (index != rowIndex[row] || hundredths != rowHundredths[row]) {
+                rowIndex[row] = index;
+                rowHundredths[row] = hundredths;
+                notifyItemChanged(row, PAYLOAD_ROW);
             }
         }
     }
@@ -60,27 +219,45 @@ public class FaceBlendshapesResultAdapter extends RecyclerView.Adapter<FaceBlend
 
     @Override
     public void onBindViewHolder(ViewHolder holder, int position) {
-        Category category = categories.get(position);
-        holder.bind(category != null ? category.categoryName() : null, category != null ? category.score() : null);
+        int index = rowIndex[position];
+        holder.bind(index >= 0 ? names[index] : null, rowHundredths[position]);
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        onBindViewHolder(holder, position);
     }
 
     @Override
     public int getItemCount() {
-        return categories.size();
+        return topK;
     }
 
     public static class ViewHolder extends RecyclerView.ViewHolder {
         private final FaceBlendshapesResultBinding binding;
+        // "d.dd", filled in place instead of going through String.format.
+        private final char[] scoreChars = new char[4];
+        private String boundLabel;
 
         public ViewHolder(FaceBlendshapesResultBinding binding) {
             super(binding.getRoot());
             this.binding = binding;
+            scoreChars[1] = '.';
         }
 
-        public void bind(String label, Float score) {
-            binding.tvLabel.setText(label != null ? label : NO_VALUE);
-            binding.tvScore.setText(score != null ? String.format("%.2f", score) : NO_VALUE);
+        public void bind(String label, int hundredths) {
+            if (label == null || !label.equals(boundLabel)) {
+                boundLabel = label;
+                binding.tvLabel.setText(label != null ? label : NO_VALUE);
+            }
+            if (hundredths < 0) {
+                binding.tvScore.setText(NO_VALUE);
+                return;
+            }
+            scoreChars[0] = (char) ('0' + hundredths / 100);
+            scoreChars[2] = (char) ('0' + hundredths / 10 % 10);
+            scoreChars[3] = (char) ('0' + hundredths % 10);
+            binding.tvScore.setText(scoreChars, 0, scoreChars.length);
         }
     }
 }
-
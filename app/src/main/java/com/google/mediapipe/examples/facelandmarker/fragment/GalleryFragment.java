@@ -15,30 +15,403 @@
  */
 package com.google.mediapipe.examples.facelandmarker.fragment;
 
-import android.graphics.Bitmap;
-import android.graphics.ImageDecoder;
+import android.content.ContentResolver;
+import android.content.Context;
 import android.net.Uri;
-import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.SystemClock;
-import android.provider.MediaStore;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.AdapterView;
 import android.widget.Toast;
+
+import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
-//import androidx.fragment.app.activityViewModels;
-import androidx.recyclerview.widget.LinearLayoutManager;
-import androidx.viewpager2.widget.ViewPager2;
-//import com.google.mediapipe.examples.facelandmarker.FaceLandmarkerHelper;
+import androidx.lifecycle.ViewModelProvider;
+
+import com.google.mediapipe.examples.facelandmarker.FaceLandmarkerHelper;
+import com.google.mediapipe.examples.facelandmarker.ImageBatchProcessor;
+import com.google.mediapipe.examples.facelandmarker.ImageBatchStats;
+import com.google.mediapipe.examples.facelandmarker.LandmarkFrame;
+import com.google.mediapipe.examples.facelandmarker.LandmarkResultCache;
 import com.google.mediapipe.examples.facelandmarker.MainViewModel;
+import com.google.mediapipe.examples.facelandmarker.ParallelVideoProcessor;
+import com.google.mediapipe.examples.facelandmarker.R;
+import com.google.mediapipe.examples.facelandmarker.VideoLandmarkProcessor;
+import com.google.mediapipe.examples.facelandmarker.VideoProcessingStats;
+import com.google.mediapipe.examples.facelandmarker.VideoScalingReport;
 import com.google.mediapipe.examples.facelandmarker.databinding.FragmentGalleryBinding;
 import com.google.mediapipe.tasks.vision.core.RunningMode;
-import java.util.Locale;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
+/**
+ * Runs the face landmarker offline, over a recorded video or a batch of
+ * photos, and reports how fast that goes. Long videos and photo batches are
+ * spread over several landmarkers; the scaling benchmark compares worker
+ * counts for a video.
+ */
+public class GalleryFragment extends Fragment {
+    private static final String TAG = "Gallery";
+    // How often progress reaches the UI.
+    private static final long PROGRESS_INTERVAL_MS = 200;
+    private static final String RESULT_CACHE_DIRECTORY = "landmark_results";
+
+    private FragmentGalleryBinding fragmentGalleryBinding;
+    // Shared with the camera screen, whose settings the jobs use.
+    private MainViewModel viewModel;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Jobs run one after another; the helper and processor are only touched
+    // there.
+    private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
+    private volatile ParallelVideoProcessor videoProcessor;
+    private volatile ImageBatchProcessor imageProcessor;
+    // What the processors' landmarkers were built with; only touched on the
+    // background executor.
+    private LandmarkerSettings videoProcessorSettings;
+    private LandmarkerSettings imageProcessorSettings;
+    // Photo results survive the app; only touched on the background executor.
+    private LandmarkResultCache resultCache;
+
+    private final ActivityResultLauncher<String[]> getContent =
+            registerForActivityResult(new ActivityResultContracts.OpenMultipleDocuments(), this::onContentPicked);
+
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
+                             @Nullable Bundle savedInstanceState) {
+        fragmentGalleryBinding = FragmentGalleryBinding.inflate(inflater, container, false);
+        return fragmentGalleryBinding.getRoot();
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        viewModel = new ViewModelProvider(requireActivity()).get(MainViewModel.class);
+        fragmentGalleryBinding.fabGetContent.setOnClickListener(
+                v -> getContent.launch(new String[]{"image/*", "video/*"}));
+    }
+
+    // A single video is processed as a video; otherwise the picked images
+    // are processed as a batch.
+    private void onContentPicked(List<Uri> uris) {
+        if (uris == null || uris.isEmpty() || fragmentGalleryBinding == null) {
+            return;
+        }
+        ContentResolver resolver = requireContext().getContentResolver();
+        List<Uri> images = new ArrayList<>();
+        for (Uri uri : uris) {
+            String type = resolver.getType(uri);
+            if (type != null && type.startsWith("video/") && uris.size() == 1) {
+                runVideo(uri);
+                return;
+            }
+            if (type != null && type.startsWith("image/")) {
+                images.add(uri);
+            }
+        }
+        if (images.isEmpty()) {
+            Toast.makeText(requireContext(), R.string.gallery_no_images, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        runImages(images);
+    }
+
+    // A new pick replaces the running job.
+    private void cancelRunning() {
+        ParallelVideoProcessor runningVideo = videoProcessor;
+        if (runningVideo != null) {
+            runningVideo.cancel();
+        }
+        ImageBatchProcessor runningImages = imageProcessor;
+        if (runningImages != null) {
+            runningImages.cancel();
+        }
+    }
+
+    private void showStarted() {
+        fragmentGalleryBinding.tvPlaceholder.setVisibility(View.GONE);
+        fragmentGalleryBinding.progress.setProgress(0);
+        fragmentGalleryBinding.progress.setVisibility(View.VISIBLE);
+        fragmentGalleryBinding.tvProcessingStats.setText("");
+    }
+
+    // Workers picked in the settings, 0 for the default.
+    private int selectedWorkers() {
+        int[] workerCounts = getResources().getIntArray(R.array.video_worker_values);
+        return workerCounts[fragmentGalleryBinding.spinnerVideoWorkers.getSelectedItemPosition()];
+    }
+
+    private void runVideo(Uri uri) {
+        cancelRunning();
+        int[] strides = getResources().getIntArray(R.array.frame_stride_values);
+        int stride = strides[fragmentGalleryBinding.spinnerFrameStride.getSelectedItemPosition()];
+        int selectedWorkers = selectedWorkers();
+        int workers = selectedWorkers > 0 ? selectedWorkers : ParallelVideoProcessor.defaultWorkerCount();
+        boolean benchmark = fragmentGalleryBinding.scalingBenchmarkSwitch.isChecked();
+        LandmarkerSettings settings = new LandmarkerSettings(viewModel);
+        showStarted();
+
+        Context context = requireContext().getApplicationContext();
+        backgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (videoProcessor != null && !settings.equals(videoProcessorSettings)) {
+                    // Changed on the camera screen since.
+                    videoProcessor.close();
+                    videoProcessor = null;
+                }
+                if (videoProcessor == null) {
+                    // Each worker gets its own landmarker.
+                    videoProcessor = new ParallelVideoProcessor(context,
+                            () -> settings.createHelper(RunningMode.VIDEO, context), ParallelVideoProcessor.MAX_WORKERS);
+                    videoProcessorSettings = settings;
+                }
+                ParallelVideoProcessor processor = videoProcessor;
+                processor.setFrameStride(stride);
+                VideoListener listener = new VideoListener();
+                if (benchmark) {
+                    VideoScalingReport report = processor.runScalingBenchmark(uri, listener);
+                    Log.i(TAG, "Scaling benchmark:\n" + report.describe());
+                    if (!processor.isCancelled()) {
+                        showText(report.describe());
+                    }
+                    return;
+                }
+                VideoProcessingStats stats = processor.process(uri, workers, listener);
+                Log.i(TAG, "Video done: " + stats.describe());
+                if (!processor.isCancelled()) {
+                    showText(stats.describe() + "\n" + context.getString(R.string.gallery_faces_format,
+                            listener.framesWithFaces, stats.getProcessedFrames()));
+                }
+            }
+        });
+    }
+
+    private void runImages(List<Uri> uris) {
+        cancelRunning();
+        int selectedWorkers = selectedWorkers();
+        int workers = selectedWorkers > 0 ? selectedWorkers : ImageBatchProcessor.defaultWorkerCount();
+        LandmarkerSettings settings = new LandmarkerSettings(viewModel);
+        showStarted();
+
+        Context context = requireContext().getApplicationContext();
+        backgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (imageProcessor != null && !settings.equals(imageProcessorSettings)) {
+                    // Changed on the camera screen since. Cached results stay;
+                    // the new settings give them a different fingerprint.
+                    imageProcessor.close();
+                    imageProcessor = null;
+                }
+                if (imageProcessor == null) {
+                    // Each worker gets its own landmarker.
+                    imageProcessor = new ImageBatchProcessor(context,
+                            () -> settings.createHelper(RunningMode.IMAGE, context), ImageBatchProcessor.MAX_WORKERS);
+                    imageProcessorSettings = settings;
+                    if (resultCache == null) {
+                        resultCache = new LandmarkResultCache(new File(context.getCacheDir(), RESULT_CACHE_DIRECTORY));
+                    }
+                    imageProcessor.setResultCache(resultCache);
+                }
+                ImageBatchProcessor processor = imageProcessor;
+                ImageBatchStats stats = processor.process(uris, workers, new ImageListener());
+                Log.i(TAG, "Images done: " + stats.describe() + ", " + resultCache.describe());
+                if (!processor.isCancelled()) {
+                    showText(stats.describe() + "\n" + resultCache.describe() + "\n"
+                            + context.getString(R.string.gallery_images_format,
+                            stats.getImagesWithFaces(), stats.getProcessedImages()));
+                }
+            }
+        });
+    }
+
+    // Shows the outcome of a finished job.
+    private void showText(String text) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (fragmentGalleryBinding == null) {
+                    return;
+                }
+                fragmentGalleryBinding.progress.setProgress(fragmentGalleryBinding.progress.getMax());
+                fragmentGalleryBinding.tvProcessingStats.setText(text);
+            }
+        });
+    }
+
+    private void postProgress(float progress) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (fragmentGalleryBinding != null) {
+                    fragmentGalleryBinding.progress.setProgress((int) (progress * 1000));
+                }
+            }
+        });
+    }
+
+    private void postError(String error) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (getContext() != null) {
+                    Toast.makeText(getContext(), error, Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onDestroyView() {
+        cancelRunning();
+        mainHandler.removeCallbacksAndMessages(null);
+        fragmentGalleryBinding = null;
+        super.onDestroyView();
+    }
+
+    @Override
+    public void onDestroy() {
+        backgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (videoProcessor != null) {
+                    videoProcessor.close();
+                }
+                if (imageProcessor != null) {
+                    imageProcessor.close();
+                }
+            }
+        });
+        backgroundExecutor.shutdown();
+        super.onDestroy();
+    }
+
+    /**
+     * The landmarker settings of the camera screen, read on the main thread
+     * when a job starts.
+     */
+    private static final class LandmarkerSettings {
+        final float minFaceDetectionConfidence;
+        final float minFaceTrackingConfidence;
+        final float minFacePresenceConfidence;
+        final int maxFaces;
+        final int delegate;
+
+        LandmarkerSettings(MainViewModel viewModel) {
+            minFaceDetectionConfidence = viewModel.getCurrentMinFaceDetectionConfidence();
+            minFaceTrackingConfidence = viewModel.getCurrentMinFaceTrackingConfidence();
+            minFacePresenceConfidence = viewModel.getCurrentMinFacePresenceConfidence();
+            maxFaces = viewModel.getCurrentMaxFaces();
+            delegate = viewModel.getCurrentDelegate();
+        }
+
+        FaceLandmarkerHelper createHelper(RunningMode runningMode, Context context) {
+            return new FaceLandmarkerHelper(
+                    minFaceDetectionConfidence,
+                    minFaceTrackingConfidence,
+                    minFacePresenceConfidence,
+                    maxFaces,
+                    delegate,
+                    runningMode,
+                    context,
+                    null
+            );
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof LandmarkerSettings)) {
+                return false;
+            }
+            LandmarkerSettings that = (LandmarkerSettings) other;
+            return minFaceDetectionConfidence == that.minFaceDetectionConfidence
+                    && minFaceTrackingConfidence == that.minFaceTrackingConfidence
+                    && minFacePresenceConfidence == that.minFacePresenceConfidence
+                    && maxFaces == that.maxFaces
+                    && delegate == that.delegate;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = Float.floatToIntBits(minFaceDetectionConfidence);
+            hash = 31 * hash + Float.floatToIntBits(minFaceTrackingConfidence);
+            hash = 31 * hash + Float.floatToIntBits(minFacePresenceConfidence);
+            hash = 31 * hash + maxFaces;
+            return 31 * hash + delegate;
+        }
+    }
+
+    /**
+     * Counts the frames with faces and posts progress now and then. Called
+     * on the processor's inference thread.
+     */
+    private class VideoListener implements VideoLandmarkProcessor.Listener {
+        volatile int framesWithFaces = 0;
+        private long lastProgressMs = 0;
+
+        @Override
+        public void onFrame(LandmarkFrame frame) {
+            if (frame.getFaceCount() > 0) {
+                framesWithFaces++;
+            }
+        }
+
+        @Override
+        public void onProgress(long positionUs, long durationUs) {
+            long now = SystemClock.uptimeMillis();
+            if (now - lastProgressMs < PROGRESS_INTERVAL_MS || durationUs <= 0) {
+                return;
+            }
+            lastProgressMs = now;
+            postProgress(Math.min(1f, positionUs / (float) durationUs));
+        }
+
+        @Override
+        public void onError(String error) {
+            postError(error);
+        }
+    }
+
+    /**
+     * Posts progress now and then; the stats count the faces. Called on the
+     * background executor.
+     */
+    private class ImageListener implements ImageBatchProcessor.Listener {
+        private long lastProgressMs = 0;
+
+        @Override
+        public void onResult(int index, Uri uri, LandmarkFrame frame) {
+        }
+
+        @Override
+        public void onProgress(int done, int total) {
+            long now = SystemClock.uptimeMillis();
+            if (now - lastProgressMs < PROGRESS_INTERVAL_MS) {
+                return;
+            }
+            lastProgressMs = now;
+            postProgress(done / (float) total);
+        }
+
+        @Override
+        public void onError(int index, Uri uri, String error) {
+            if (index < 0) {
+                postError(error);
+            } else {
+                // One bad file doesn't stop the batch; it shows in the stats.
+                Log.w(TAG, uri + ": " + error);
+            }
+        }
+    }
+}
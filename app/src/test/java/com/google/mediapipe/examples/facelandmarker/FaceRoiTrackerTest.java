@@ -0,0 +1,151 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FaceRoiTrackerTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    // One face whose landmarks span the given normalized box.
+    private static void feedFace(FaceRoiTracker tracker, float minX, float minY, float maxX, float maxY,
+                                 FaceRoiTracker.Region region) {
+        float[] xyz = {minX, minY, 0f, maxX, maxY, 0f};
+        tracker.onResult(xyz, new int[]{0, 2}, 1,
+                region.left / (float) WIDTH, region.top / (float) HEIGHT,
+                region.width / (float) WIDTH, region.height / (float) HEIGHT);
+    }
+
+    private static FaceRoiTracker.Region fullRegion() {
+        FaceRoiTracker.Region region = new FaceRoiTracker.Region();
+        region.width = WIDTH;
+        region.height = HEIGHT;
+        return region;
+    }
+
+    @Test
+    public void usesFullFrameUntilAFaceIsTracked() {
+        FaceRoiTracker tracker = new FaceRoiTracker();
+        FaceRoiTracker.Region region = new FaceRoiTracker.Region();
+        assertFalse(tracker.nextRegion(WIDTH, HEIGHT, region));
+        assertEquals(WIDTH, region.outputWidth);
+        assertEquals(HEIGHT, region.outputHeight);
+        assertEquals(0, tracker.getLastSavedBytes());
+    }
+
+    @Test
+    public void cropsAroundTrackedFace() {
+        FaceRoiTracker tracker = new FaceRoiTracker();
+        tracker.setTargetSize(128);
+        // 64 x 64 pixel face centred at (320, 240).
+        feedFace(tracker, 0.45f, 240f / HEIGHT - 32f / HEIGHT, 0.55f, 240f / HEIGHT + 32f / HEIGHT, fullRegion());
+
+        FaceRoiTracker.Region region = new FaceRoiTracker.Region();
+        assertTrue(tracker.nextRegion(WIDTH, HEIGHT, region));
+        assertEquals(128, region.width);
+        assertEquals(128, region.height);
+        assertEquals(320 - 64, region.left);
+        assertEquals(240 - 64, region.top);
+        assertEquals(128, region.outputWidth);
+        assertEquals((WIDTH * HEIGHT - 128 * 128) * 4L, tracker.getLastSavedBytes());
+    }
+
+    @Test
+    public void largeRegionIsDownscaledToTargetSize() {
+        FaceRoiTracker tracker = new FaceRoiTracker();
+        tracker.setTargetSize(100);
+        // 150 pixels wide, so the region is 300 pixels.
+        feedFace(tracker, 0.3f, 0.3f, 0.3f + 150f / WIDTH, 0.3f + 100f / HEIGHT, fullRegion());
+
+        FaceRoiTracker.Region region = new FaceRoiTracker.Region();
+        assertTrue(tracker.nextRegion(WIDTH, HEIGHT, region));
+        assertEquals(300, region.width);
+        assertEquals(100, region.outputWidth);
+        assertEquals(100, region.outputHeight);
+    }
+
+    @Test
+    public void regionIsClampedToFrame() {
+        FaceRoiTracker tracker = new FaceRoiTracker();
+        tracker.setTargetSize(128);
+        feedFace(tracker, 0f, 0f, 0.05f, 0.05f, fullRegion());
+
+        FaceRoiTracker.Region region = new FaceRoiTracker.Region();
+        assertTrue(tracker.nextRegion(WIDTH, HEIGHT, region));
+        assertEquals(0, region.left);
+        assertEquals(0, region.top);
+    }
+
+    @Test
+    public void faceFillingFrameUsesFullFrame() {
+        FaceRoiTracker tracker = new FaceRoiTracker();
+        feedFace(tracker, 0.2f, 0.2f, 0.8f, 0.8f, fullRegion());
+        assertFalse(tracker.nextRegion(WIDTH, HEIGHT, new FaceRoiTracker.Region()));
+    }
+
+    @Test
+    public void lostFaceFallsBackToFullFrame() {
+        FaceRoiTracker tracker = new FaceRoiTracker();
+        feedFace(tracker, 0.45f, 0.45f, 0.55f, 0.55f, fullRegion());
+        FaceRoiTracker.Region region = new FaceRoiTracker.Region();
+        assertTrue(tracker.nextRegion(WIDTH, HEIGHT, region));
+
+        tracker.onResult(new float[0], new int[]{0}, 0, 0f, 0f, 1f, 1f);
+        assertFalse(tracker.isTracking());
+        assertFalse(tracker.nextRegion(WIDTH, HEIGHT, region));
+    }
+
+    @Test
+    public void faceAtRegionBorderFallsBackToFullFrame() {
+        FaceRoiTracker tracker = new FaceRoiTracker();
+        tracker.setTargetSize(128);
+        feedFace(tracker, 0.45f, 0.45f, 0.55f, 0.55f, fullRegion());
+        FaceRoiTracker.Region region = new FaceRoiTracker.Region();
+        assertTrue(tracker.nextRegion(WIDTH, HEIGHT, region));
+
+        // The face moved to the right edge of the region.
+        float right = (region.left + region.width) / (float) WIDTH;
+        feedFace(tracker, right - 0.05f, 0.45f, right - 0.001f, 0.55f, region);
+        assertFalse(tracker.isTracking());
+        assertFalse(tracker.nextRegion(WIDTH, HEIGHT, region));
+    }
+
+    @Test
+    public void roomForMoreFacesForcesPeriodicFullFrames() {
+        FaceRoiTracker tracker = new FaceRoiTracker();
+        tracker.setMaxFaces(2);
+        feedFace(tracker, 0.45f, 0.45f, 0.55f, 0.55f, fullRegion());
+        FaceRoiTracker.Region region = new FaceRoiTracker.Region();
+        for (int i = 0; i < FaceRoiTracker.FULL_FRAME_INTERVAL; i++) {
+            assertTrue(tracker.nextRegion(WIDTH, HEIGHT, region));
+        }
+        assertFalse(tracker.nextRegion(WIDTH, HEIGHT, region));
+        assertTrue(tracker.nextRegion(WIDTH, HEIGHT, region));
+    }
+
+    @Test
+    public void disabledTrackerNeverCrops() {
+        FaceRoiTracker tracker = new FaceRoiTracker();
+        feedFace(tracker, 0.45f, 0.45f, 0.55f, 0.55f, fullRegion());
+        tracker.setEnabled(false);
+        assertFalse(tracker.nextRegion(WIDTH, HEIGHT, new FaceRoiTracker.Region()));
+    }
+}
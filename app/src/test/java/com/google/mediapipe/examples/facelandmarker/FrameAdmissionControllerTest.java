@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameAdmissionControllerTest {
+
+    @Test
+    public void skipsWhileRequestInFlight() {
+        FrameAdmissionController controller = new FrameAdmissionController();
+
+        assertTrue(controller.tryAdmit(0));
+        controller.onSubmitted(0);
+        assertFalse(controller.tryAdmit(33));
+
+        controller.onCompleted(0, 40);
+        assertTrue(controller.tryAdmit(66));
+        assertEquals(2, controller.getAdmittedCount());
+        assertEquals(1, controller.getSkippedCount());
+    }
+
+    @Test
+    public void adaptsIntervalToMeasuredLatency() {
+        FrameAdmissionController controller = new FrameAdmissionController();
+        controller.setMaxInFlight(2);
+
+        assertTrue(controller.tryAdmit(0));
+        controller.onSubmitted(0);
+        controller.onCompleted(0, 100);
+        assertEquals(100f, controller.getLatencyEmaMs(), 0.001f);
+
+        // Two requests may overlap, so one frame every ~45 ms keeps up.
+        assertFalse(controller.tryAdmit(30));
+        assertTrue(controller.tryAdmit(50));
+    }
+
+    @Test
+    public void expiresRequestsThatNeverComplete() {
+        FrameAdmissionController controller = new FrameAdmissionController();
+
+        assertTrue(controller.tryAdmit(0));
+        controller.onSubmitted(0);
+        assertFalse(controller.tryAdmit(100));
+        assertTrue(controller.tryAdmit(1000));
+        assertEquals(1, controller.getExpiredCount());
+    }
+
+    @Test
+    public void resultRetiresOlderDroppedRequests() {
+        FrameAdmissionController controller = new FrameAdmissionController();
+        controller.setMaxInFlight(3);
+        controller.onSubmitted(10);
+        controller.onSubmitted(20);
+        controller.onSubmitted(30);
+
+        controller.onCompleted(20, 60);
+        assertEquals(1, controller.getInFlightCount());
+    }
+
+    @Test
+    public void failedSubmissionDoesNotBlockAdmission() {
+        FrameAdmissionController controller = new FrameAdmissionController();
+
+        assertTrue(controller.tryAdmit(0));
+        controller.onSubmitted(0);
+        controller.onSubmitFailed(0);
+        assertEquals(0, controller.getInFlightCount());
+        assertTrue(controller.tryAdmit(33));
+    }
+
+    @Test
+    public void rateCapHoldsBackFasterAdmissions() {
+        FrameAdmissionController controller = new FrameAdmissionController();
+        controller.setMaxRateHz(10f);
+
+        assertTrue(controller.tryAdmit(0));
+        controller.onSubmitted(0);
+        controller.onCompleted(0, 20);
+
+        // The landmarker would keep up every 18 ms, the cap allows one per 100.
+        assertFalse(controller.tryAdmit(50));
+        assertTrue(controller.tryAdmit(100));
+    }
+}
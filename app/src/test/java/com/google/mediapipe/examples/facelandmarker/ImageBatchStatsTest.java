@@ -0,0 +1,89 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ImageBatchStatsTest {
+    @Test
+    public void ratesCountFailedImagesToo() {
+        ImageBatchStats stats = new ImageBatchStats();
+        stats.onStarted(4, 1000);
+        stats.onProcessed(20f, 40f, 1, 1100);
+        stats.onProcessed(10f, 20f, 0, 1200);
+        stats.onFailed(1300);
+        stats.onProcessed(30f, 30f, 2, 1500);
+        stats.onFinished(1500);
+        assertEquals(500, stats.getElapsedMs());
+        assertEquals(8f, stats.getImagesPerSecond(), 0.001f);
+        assertEquals(3, stats.getProcessedImages());
+        assertEquals(2, stats.getImagesWithFaces());
+        assertEquals(1, stats.getFailedImages());
+    }
+
+    @Test
+    public void averagesOnlyProcessedImages() {
+        ImageBatchStats stats = new ImageBatchStats();
+        stats.onStarted(3, 0);
+        stats.onProcessed(10f, 30f, 1, 10);
+        stats.onFailed(20);
+        stats.onProcessed(20f, 50f, 1, 30);
+        assertEquals(15f, stats.getAverageDecodeMs(), 0.001f);
+        assertEquals(40f, stats.getAverageInferenceMs(), 0.001f);
+    }
+
+    @Test
+    public void keepsTheLargestBacklog() {
+        ImageBatchStats stats = new ImageBatchStats();
+        stats.onDelivering(1);
+        stats.onDelivering(5);
+        stats.onDelivering(2);
+        assertEquals(5, stats.getMaxPendingResults());
+    }
+
+    @Test
+    public void sumsDecodedPixelsOverImages() {
+        ImageBatchStats stats = new ImageBatchStats();
+        assertEquals(1f, stats.getDecodedPixelRatio(), 0f);
+        stats.onDecoded(12_000_000, 3_000_000);
+        stats.onDecoded(300_000, 300_000);
+        assertEquals(3_300_000f / 12_300_000f, stats.getDecodedPixelRatio(), 1e-6f);
+    }
+
+    @Test
+    public void cacheHitsCountAsProcessedButNotInferred() {
+        ImageBatchStats stats = new ImageBatchStats();
+        stats.onStarted(3, 0);
+        stats.onProcessed(10f, 30f, 1, 10);
+        stats.onCacheHit(2f, 1, 12);
+        stats.onCacheHit(4f, 0, 14);
+        assertEquals(3, stats.getProcessedImages());
+        assertEquals(2, stats.getCachedImages());
+        assertEquals(2, stats.getImagesWithFaces());
+        assertEquals(30f, stats.getAverageInferenceMs(), 0.001f);
+        assertEquals(3f, stats.getAverageCacheMs(), 0.001f);
+    }
+
+    @Test
+    public void emptyBatchReportsZero() {
+        ImageBatchStats stats = new ImageBatchStats();
+        assertEquals(0f, stats.getImagesPerSecond(), 0f);
+        assertEquals(0f, stats.getAverageInferenceMs(), 0f);
+        assertEquals(0, stats.getElapsedMs());
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import android.media.ExifInterface;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ImageDecodePlanTest {
+    @Test
+    public void subsamplesLargePhotosToTheTarget() {
+        // 12 MP with one face: a 4000 pixel edge only needs 1024.
+        ImageDecodePlan plan = ImageDecodePlan.create(4000, 3000, ExifInterface.ORIENTATION_NORMAL, 1);
+        assertEquals(2, plan.sampleSize);
+        assertEquals(2000, plan.decodedWidth);
+        assertEquals(1500, plan.decodedHeight);
+
+        // 48 MP.
+        plan = ImageDecodePlan.create(8000, 6000, ExifInterface.ORIENTATION_NORMAL, 1);
+        assertEquals(4, plan.sampleSize);
+    }
+
+    @Test
+    public void moreFacesKeepMoreResolution() {
+        assertEquals(1024, ImageDecodePlan.targetLongEdge(1));
+        assertEquals(2048, ImageDecodePlan.targetLongEdge(4));
+        assertEquals(ImageDecodePlan.MAX_TARGET_LONG_EDGE, ImageDecodePlan.targetLongEdge(100));
+        ImageDecodePlan plan = ImageDecodePlan.create(8000, 6000, ExifInterface.ORIENTATION_NORMAL, 4);
+        assertEquals(2, plan.sampleSize);
+    }
+
+    @Test
+    public void smallImagesAreDecodedAsIs() {
+        ImageDecodePlan plan = ImageDecodePlan.create(640, 480, ExifInterface.ORIENTATION_NORMAL, 1);
+        assertEquals(1, plan.sampleSize);
+        assertEquals(0, plan.getSavedPixels());
+    }
+
+    @Test
+    public void oddSizesRoundUp() {
+        ImageDecodePlan plan = ImageDecodePlan.create(4033, 3025, ExifInterface.ORIENTATION_NORMAL, 1);
+        assertEquals(2, plan.sampleSize);
+        assertEquals(2017, plan.decodedWidth);
+        assertEquals(1513, plan.decodedHeight);
+    }
+
+    @Test
+    public void mapsEveryExifOrientation() {
+        int[] orientations = {
+                ExifInterface.ORIENTATION_NORMAL, ExifInterface.ORIENTATION_FLIP_HORIZONTAL,
+                ExifInterface.ORIENTATION_ROTATE_180, ExifInterface.ORIENTATION_FLIP_VERTICAL,
+                ExifInterface.ORIENTATION_TRANSPOSE, ExifInterface.ORIENTATION_ROTATE_90,
+                ExifInterface.ORIENTATION_TRANSVERSE, ExifInterface.ORIENTATION_ROTATE_270};
+        int[] rotations = {0, 0, 180, 180, 90, 90, 270, 270};
+        boolean[] mirrors = {false, true, false, true, true, false, true, false};
+        for (int i = 0; i < orientations.length; i++) {
+            assertEquals(rotations[i], ImageDecodePlan.rotationDegrees(orientations[i]));
+            assertEquals(mirrors[i], ImageDecodePlan.isMirrored(orientations[i]));
+        }
+        assertEquals(0, ImageDecodePlan.rotationDegrees(ExifInterface.ORIENTATION_UNDEFINED));
+        assertFalse(ImageDecodePlan.isMirrored(ExifInterface.ORIENTATION_UNDEFINED));
+    }
+
+    @Test
+    public void quarterTurnsSwapTheUprightSize() {
+        ImageDecodePlan plan = ImageDecodePlan.create(4000, 3000, ExifInterface.ORIENTATION_ROTATE_90, 1);
+        assertEquals(3000, plan.getUprightWidth());
+        assertEquals(4000, plan.getUprightHeight());
+        assertTrue(plan.getSavedPixels() > 0);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KeepWarmPolicyTest {
+
+    @Test
+    public void quickReturnResumesWarm() {
+        KeepWarmPolicy policy = new KeepWarmPolicy();
+        policy.setIdleTimeoutMs(1000);
+        assertFalse(policy.onResume(0));
+
+        assertEquals(1000, policy.onPause(100));
+        assertTrue(policy.onResume(600));
+        // The release scheduled by the pause is stale now.
+        assertFalse(policy.onIdleTimeout(1100));
+        assertEquals(50, policy.onResult(650));
+        assertEquals(50, policy.getLastWarmResumeMs());
+    }
+
+    @Test
+    public void idleTimeoutReleasesAndNextResumeIsCold() {
+        KeepWarmPolicy policy = new KeepWarmPolicy();
+        policy.setIdleTimeoutMs(1000);
+        policy.onResume(0);
+
+        policy.onPause(100);
+        assertFalse(policy.onIdleTimeout(900));
+        assertTrue(policy.onIdleTimeout(1100));
+        assertFalse(policy.onResume(5000));
+        assertEquals(300, policy.onResult(5300));
+        assertEquals(300, policy.getLastColdResumeMs());
+    }
+
+    @Test
+    public void zeroTimeoutReleasesOnPause() {
+        KeepWarmPolicy policy = new KeepWarmPolicy();
+        policy.setIdleTimeoutMs(0);
+        policy.onResume(0);
+        assertEquals(0, policy.onPause(100));
+        // Nothing left to release on the next pause without a resume.
+        assertEquals(-1, policy.onPause(200));
+    }
+
+    @Test
+    public void memoryPressureReleasesOnlyWhilePaused() {
+        KeepWarmPolicy policy = new KeepWarmPolicy();
+        policy.onResume(0);
+        assertEquals(KeepWarmPolicy.ACTION_TRIM_POOLS,
+                policy.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW));
+        assertEquals(KeepWarmPolicy.ACTION_NONE,
+                policy.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND));
+
+        policy.onPause(100);
+        assertEquals(KeepWarmPolicy.ACTION_NONE,
+                policy.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN));
+        assertEquals(KeepWarmPolicy.ACTION_RELEASE,
+                policy.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND));
+        assertEquals(KeepWarmPolicy.ACTION_NONE,
+                policy.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE));
+        assertFalse(policy.onResume(200));
+    }
+}
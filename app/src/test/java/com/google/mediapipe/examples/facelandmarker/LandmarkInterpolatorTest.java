@@ -0,0 +1,82 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LandmarkInterpolatorTest {
+    private static final long MS = 1_000_000L;
+
+    // One face with a single landmark at (x, 0, 0) and one blendshape score.
+    private static void push(LandmarkInterpolator interpolator, long timestampMs, float x, float score) {
+        interpolator.push(timestampMs * MS, timestampMs * MS, 1, 1, new float[]{x, 0f, 0f},
+                1, new float[]{score});
+    }
+
+    @Test
+    public void interpolatesBetweenResults() {
+        LandmarkInterpolator interpolator = new LandmarkInterpolator();
+        interpolator.setFilterEnabled(false);
+        interpolator.setDelayIntervals(0f);
+        push(interpolator, 0, 0f, 0f);
+        push(interpolator, 100, 1f, 1f);
+
+        LandmarkInterpolator.Sample sample = new LandmarkInterpolator.Sample();
+        assertTrue(interpolator.sample(25 * MS, sample));
+        assertEquals(0.25f, sample.landmarks[0], 1e-4f);
+        assertEquals(0.25f, sample.blendshapes[0], 1e-4f);
+        assertFalse(sample.settled);
+    }
+
+    @Test
+    public void extrapolatesUpToTheLimit() {
+        LandmarkInterpolator interpolator = new LandmarkInterpolator();
+        interpolator.setFilterEnabled(false);
+        interpolator.setDelayIntervals(0f);
+        interpolator.setMaxExtrapolationNanos(50 * MS);
+        push(interpolator, 0, 0f, 0.5f);
+        push(interpolator, 100, 1f, 1f);
+
+        LandmarkInterpolator.Sample sample = new LandmarkInterpolator.Sample();
+        interpolator.sample(120 * MS, sample);
+        assertEquals(1.2f, sample.landmarks[0], 1e-4f);
+        assertFalse(sample.settled);
+
+        interpolator.sample(500 * MS, sample);
+        assertEquals(1.5f, sample.landmarks[0], 1e-4f);
+        // Scores stay within [0, 1].
+        assertEquals(1f, sample.blendshapes[0], 1e-4f);
+        assertTrue(sample.settled);
+    }
+
+    @Test
+    public void doesNotBlendAcrossFaceCountChanges() {
+        LandmarkInterpolator interpolator = new LandmarkInterpolator();
+        interpolator.setFilterEnabled(false);
+        interpolator.setDelayIntervals(0f);
+        push(interpolator, 0, 0f, 0f);
+        interpolator.push(100 * MS, 100 * MS, 0, 0, new float[0], 0, null);
+
+        LandmarkInterpolator.Sample sample = new LandmarkInterpolator.Sample();
+        assertTrue(interpolator.sample(20 * MS, sample));
+        assertEquals(1, sample.faceCount);
+        assertFalse(interpolator.sample(80 * MS, sample));
+    }
+}
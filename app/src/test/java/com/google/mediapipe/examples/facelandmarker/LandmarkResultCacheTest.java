@@ -0,0 +1,142 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LandmarkResultCacheTest {
+    // One face with the given landmarks, x, y, z each, as 640 x 480, rotated
+    // by 90 degrees.
+    private static LandmarkFrame frame(float... xyz) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(1);
+        out.writeInt(xyz.length / 3);
+        for (float value : xyz) {
+            out.writeFloat(value);
+        }
+        out.writeBoolean(false);
+        out.writeInt(1);
+        out.writeUTF("jawOpen");
+        out.writeFloat(0.5f);
+        out.writeBoolean(false);
+        out.writeLong(12);
+        out.writeInt(640);
+        out.writeInt(480);
+        out.writeInt(90);
+        out.writeBoolean(false);
+        LandmarkFrame frame = new LandmarkFrame();
+        frame.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        return frame;
+    }
+
+    private static File newDirectory() throws IOException {
+        return Files.createTempDirectory("landmark-cache").toFile();
+    }
+
+    @Test
+    public void roundTripsThroughDisk() throws IOException {
+        File directory = newDirectory();
+        new LandmarkResultCache(directory).put("a", frame(0.1f, 0.2f, 0.3f, 0.4f, 0.5f, 0.6f));
+
+        // A new instance starts with an empty memory tier.
+        LandmarkResultCache cache = new LandmarkResultCache(directory);
+        LandmarkFrame read = new LandmarkFrame();
+        assertTrue(cache.get("a", read));
+        assertEquals(1, read.getFaceCount());
+        assertEquals(2, read.getLandmarkCount());
+        assertArrayEquals(new float[]{0.1f, 0.2f, 0.3f, 0.4f, 0.5f, 0.6f},
+                Arrays.copyOf(read.getLandmarks(), 6), 0f);
+        assertTrue(Float.isNaN(read.getVisibility()[0]));
+        assertEquals("jawOpen", read.getBlendshapeName(0));
+        assertEquals(0.5f, read.getBlendshapes()[0], 0f);
+        assertEquals(640, read.getInputImageHeight());
+        assertEquals(90, read.getRotationDegrees());
+        assertEquals(1, cache.getDiskHits());
+    }
+
+    @Test
+    public void memoryTierServesRepeats() throws IOException {
+        LandmarkResultCache cache = new LandmarkResultCache(newDirectory());
+        cache.put("a", frame(0.1f, 0.2f, 0.3f));
+        LandmarkFrame read = new LandmarkFrame();
+        assertTrue(cache.get("a", read));
+        assertFalse(cache.get("b", read));
+        assertEquals(1, cache.getMemoryHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5f, cache.getHitRate(), 0f);
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedBySize() throws IOException {
+        File directory = newDirectory();
+        LandmarkFrame frame = frame(0.1f, 0.2f, 0.3f);
+        LandmarkResultCache probe = new LandmarkResultCache(newDirectory());
+        probe.put("x", frame);
+        long entryBytes = probe.getDiskBytes();
+
+        // Room for two entries, on disk and in memory.
+        LandmarkResultCache cache = new LandmarkResultCache(directory, 2 * entryBytes, 2 * entryBytes);
+        cache.put("a", frame);
+        cache.put("b", frame);
+        LandmarkFrame read = new LandmarkFrame();
+        assertTrue(cache.get("a", read));
+        cache.put("c", frame);
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2 * entryBytes, cache.getDiskBytes());
+        assertFalse(new File(directory, "b.lmk").exists());
+        assertTrue(cache.get("a", read));
+        assertFalse(cache.get("b", read));
+    }
+
+    @Test
+    public void unreadableEntriesMissAndAreDropped() throws IOException {
+        File directory = newDirectory();
+        try (FileOutputStream out = new FileOutputStream(new File(directory, "a.lmk"))) {
+            out.write(new byte[]{0, 0, 0, 99, 1, 2});
+        }
+        LandmarkResultCache cache = new LandmarkResultCache(directory);
+        assertFalse(cache.get("a", new LandmarkFrame()));
+        assertEquals(1, cache.getMisses());
+        assertFalse(new File(directory, "a.lmk").exists());
+    }
+
+    @Test
+    public void keyCoversConfigurationAndContent() throws IOException {
+        byte[] image = {1, 2, 3};
+        String key = LandmarkResultCache.key("faces=1", new ByteArrayInputStream(image));
+        assertEquals(64, key.length());
+        assertEquals(key, LandmarkResultCache.key("faces=1", new ByteArrayInputStream(image)));
+        assertNotEquals(key, LandmarkResultCache.key("faces=2", new ByteArrayInputStream(image)));
+        assertNotEquals(key, LandmarkResultCache.key("faces=1", new ByteArrayInputStream(new byte[]{1, 2, 4})));
+    }
+}
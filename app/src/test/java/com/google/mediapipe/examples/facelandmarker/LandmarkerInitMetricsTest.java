@@ -0,0 +1,47 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LandmarkerInitMetricsTest {
+
+    @Test
+    public void firstSetupIsColdStartLaterOnesAreReopens() {
+        LandmarkerInitMetrics metrics = new LandmarkerInitMetrics();
+        metrics.onSetupStarted(1000);
+        assertEquals(400, metrics.onResult(1400));
+        // Only the first result after a setup is measured.
+        assertEquals(-1, metrics.onResult(1450));
+
+        metrics.onSetupStarted(5000);
+        assertEquals(120, metrics.onResult(5120));
+        assertEquals(400, metrics.getColdStartMs());
+        assertEquals(120, metrics.getLastReopenMs());
+    }
+
+    @Test
+    public void averagesBuildTimes() {
+        LandmarkerInitMetrics metrics = new LandmarkerInitMetrics();
+        metrics.recordBuild(80, 20);
+        metrics.recordBuild(50, 10);
+        assertEquals(2, metrics.getBuildCount());
+        assertEquals(60, metrics.getLastBuildMs());
+        assertEquals(80f, metrics.getAverageBuildMs(), 1e-3f);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketBoundsContainTheirValues() {
+        for (long micros = 0; micros < 1_000_000; micros = micros * 3 / 2 + 1) {
+            int bucket = LatencyHistogram.bucketOf(micros);
+            assertTrue(LatencyHistogram.bucketLowerBound(bucket) <= micros);
+            assertTrue(LatencyHistogram.bucketLowerBound(bucket + 1) > micros);
+        }
+    }
+
+    @Test
+    public void topBucketEndsAtTwoToTheTwentySeventhMicros() {
+        int top = LatencyHistogram.bucketOf((1L << 27) - 1);
+        assertEquals(15L << 23, LatencyHistogram.bucketLowerBound(top));
+        assertEquals(top, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.recordMicros(i * 100L);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(50_000, snapshot.getP50Micros(), 50_000 * 0.125);
+        assertEquals(90_000, snapshot.getP90Micros(), 90_000 * 0.125);
+        assertEquals(99_000, snapshot.getP99Micros(), 99_000 * 0.125);
+        assertEquals(100_000, snapshot.getMaxMicros());
+        assertEquals(50_050, snapshot.getMeanMicros());
+    }
+
+    @Test
+    public void resetClearsSamples() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(5_000_000);
+        histogram.reset();
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMaxMicros());
+    }
+}
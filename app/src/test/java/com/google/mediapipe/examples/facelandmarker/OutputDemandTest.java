@@ -0,0 +1,54 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OutputDemandTest {
+
+    @Test
+    public void requiresUnionOfRegisteredOutputs() {
+        OutputDemand demand = new OutputDemand();
+        Object panel = new Object();
+        Object tracker = new Object();
+        assertEquals(OutputDemand.OUTPUT_LANDMARKS, demand.getRequiredOutputs());
+
+        assertTrue(demand.register(panel, OutputDemand.OUTPUT_BLENDSHAPES));
+        assertTrue(demand.register(tracker, OutputDemand.OUTPUT_TRANSFORMATION_MATRICES));
+        assertEquals(OutputDemand.OUTPUT_LANDMARKS | OutputDemand.OUTPUT_BLENDSHAPES
+                | OutputDemand.OUTPUT_TRANSFORMATION_MATRICES, demand.getRequiredOutputs());
+
+        assertTrue(demand.unregister(panel));
+        assertEquals(OutputDemand.OUTPUT_LANDMARKS | OutputDemand.OUTPUT_TRANSFORMATION_MATRICES,
+                demand.getRequiredOutputs());
+    }
+
+    @Test
+    public void reportsNoChangeWhenUnionIsUnaffected() {
+        OutputDemand demand = new OutputDemand();
+        Object first = new Object();
+        Object second = new Object();
+        demand.register(first, OutputDemand.OUTPUT_BLENDSHAPES);
+
+        assertFalse(demand.register(second, OutputDemand.OUTPUT_BLENDSHAPES));
+        assertFalse(demand.unregister(first));
+        assertFalse(demand.register(second, OutputDemand.OUTPUT_LANDMARKS | OutputDemand.OUTPUT_BLENDSHAPES));
+    }
+}
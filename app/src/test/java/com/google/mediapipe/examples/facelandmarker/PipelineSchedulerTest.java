@@ -0,0 +1,83 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PipelineSchedulerTest {
+
+    @Test
+    public void fullStageRejectsInsteadOfQueueing() throws InterruptedException {
+        PipelineScheduler scheduler = new PipelineScheduler();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        assertTrue(scheduler.offer(PipelineScheduler.STAGE_CONVERSION, () -> {
+            started.countDown();
+            awaitQuietly(release);
+        }));
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        // One slot in the queue, then the stage is full.
+        assertTrue(scheduler.offer(PipelineScheduler.STAGE_CONVERSION, () -> { }));
+        assertFalse(scheduler.offer(PipelineScheduler.STAGE_CONVERSION, () -> { }));
+        assertEquals(1, scheduler.getRejectedCount(PipelineScheduler.STAGE_CONVERSION));
+
+        // Other stages are unaffected.
+        CountDownLatch ran = new CountDownLatch(1);
+        assertTrue(scheduler.offer(PipelineScheduler.STAGE_SUBMISSION, ran::countDown));
+        assertTrue(ran.await(1, TimeUnit.SECONDS));
+
+        release.countDown();
+        assertTrue(scheduler.shutdown(1000));
+    }
+
+    @Test
+    public void shutdownIsBoundedAndInterruptsStuckStages() {
+        PipelineScheduler scheduler = new PipelineScheduler();
+        CountDownLatch never = new CountDownLatch(1);
+        scheduler.offer(PipelineScheduler.STAGE_CONTROL, () -> awaitQuietly(never));
+
+        long start = System.nanoTime();
+        assertFalse(scheduler.shutdown(100));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertTrue(scheduler.isShutdown());
+        assertFalse(scheduler.offer(PipelineScheduler.STAGE_CONTROL, () -> { }));
+    }
+
+    @Test
+    public void delayedControlWorkIsDroppedOnShutdown() throws InterruptedException {
+        PipelineScheduler scheduler = new PipelineScheduler();
+        CountDownLatch ran = new CountDownLatch(1);
+        scheduler.schedule(ran::countDown, 10_000);
+        assertTrue(scheduler.shutdown(1000));
+        assertFalse(ran.await(50, TimeUnit.MILLISECONDS));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import android.os.PowerManager;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QualityGovernorTest {
+    private static final int COOL = PowerManager.THERMAL_STATUS_NONE;
+
+    @Test
+    public void sustainedHighLatencyStepsDown() {
+        QualityGovernor governor = new QualityGovernor();
+        assertEquals(0, governor.onSample(0, 80f, COOL));
+        assertEquals(0, governor.onSample(1000, 80f, COOL));
+        assertEquals(1, governor.onSample(QualityGovernor.DEGRADE_HOLD_MS, 80f, COOL));
+    }
+
+    @Test
+    public void shortSpikeDoesNotStepDown() {
+        QualityGovernor governor = new QualityGovernor();
+        governor.onSample(0, 80f, COOL);
+        governor.onSample(1000, 40f, COOL);
+        assertEquals(0, governor.onSample(2000, 80f, COOL));
+        assertEquals(0, governor.onSample(3000, 80f, COOL));
+    }
+
+    @Test
+    public void cooldownSpacesOutSteps() {
+        QualityGovernor governor = new QualityGovernor();
+        long now = 0;
+        governor.onSample(now, 80f, COOL);
+        now += QualityGovernor.DEGRADE_HOLD_MS;
+        assertEquals(1, governor.onSample(now, 80f, COOL));
+        // Held long enough again, but still within the cooldown.
+        governor.onSample(now + 500, 80f, COOL);
+        assertEquals(1, governor.onSample(now + 2000, 80f, COOL));
+        assertEquals(2, governor.onSample(now + QualityGovernor.STEP_COOLDOWN_MS, 80f, COOL));
+    }
+
+    @Test
+    public void stepsUpOnlyAfterLongHeadroom() {
+        QualityGovernor governor = new QualityGovernor();
+        governor.onSample(0, 80f, COOL);
+        governor.onSample(QualityGovernor.DEGRADE_HOLD_MS, 80f, COOL);
+        long start = 10_000;
+        assertEquals(1, governor.onSample(start, 20f, COOL));
+        assertEquals(1, governor.onSample(start + QualityGovernor.UPGRADE_HOLD_MS - 1, 20f, COOL));
+        assertEquals(0, governor.onSample(start + QualityGovernor.UPGRADE_HOLD_MS, 20f, COOL));
+    }
+
+    @Test
+    public void latencyBetweenWatermarksHoldsLevel() {
+        QualityGovernor governor = new QualityGovernor();
+        governor.onSample(0, 80f, COOL);
+        governor.onSample(QualityGovernor.DEGRADE_HOLD_MS, 80f, COOL);
+        for (long now = 5000; now < 60_000; now += 500) {
+            assertEquals(1, governor.onSample(now, 40f, COOL));
+        }
+    }
+
+    @Test
+    public void failedStepUpDoublesUpgradeHold() {
+        QualityGovernor governor = new QualityGovernor();
+        governor.onSample(0, 80f, COOL);
+        governor.onSample(QualityGovernor.DEGRADE_HOLD_MS, 80f, COOL);
+        long now = 10_000;
+        governor.onSample(now, 20f, COOL);
+        now += QualityGovernor.UPGRADE_HOLD_MS;
+        assertEquals(0, governor.onSample(now, 20f, COOL));
+
+        governor.onSample(now + 1000, 80f, COOL);
+        assertEquals(1, governor.onSample(now + QualityGovernor.STEP_COOLDOWN_MS, 80f, COOL));
+        assertEquals(2 * QualityGovernor.UPGRADE_HOLD_MS, governor.getUpgradeHoldMs());
+    }
+
+    @Test
+    public void thermalStatusSetsFloor() {
+        QualityGovernor governor = new QualityGovernor();
+        assertEquals(2, governor.onSample(0, 20f, PowerManager.THERMAL_STATUS_MODERATE));
+        assertEquals(QualityGovernor.MAX_LEVEL, governor.onSample(100, 20f, PowerManager.THERMAL_STATUS_CRITICAL));
+        // Cooling down lifts the floor, but the level comes back up gradually.
+        long now = 1000;
+        governor.onSample(now, 20f, COOL);
+        assertEquals(QualityGovernor.MAX_LEVEL - 1,
+                governor.onSample(now + QualityGovernor.UPGRADE_HOLD_MS, 20f, COOL));
+    }
+
+    @Test
+    public void ceilingIsNeverExceeded() {
+        assertEquals(0f, QualityGovernor.effectiveRateCapHz(0, 0f), 0f);
+        assertEquals(15f, QualityGovernor.effectiveRateCapHz(1, 0f), 0f);
+        assertEquals(5f, QualityGovernor.effectiveRateCapHz(1, 5f), 0f);
+        assertEquals(2, QualityGovernor.effectiveMaxFaces(0, 2));
+        assertEquals(1, QualityGovernor.effectiveMaxFaces(QualityGovernor.MAX_LEVEL, 2));
+        assertFalse(QualityGovernor.effectiveBlendshapes(0, false));
+        assertTrue(QualityGovernor.effectiveBlendshapes(0, true));
+        assertFalse(QualityGovernor.effectiveBlendshapes(QualityGovernor.MAX_LEVEL, true));
+    }
+}
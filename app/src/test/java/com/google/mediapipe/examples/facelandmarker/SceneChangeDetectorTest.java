@@ -0,0 +1,128 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SceneChangeDetectorTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    private static ByteBuffer lumaPlane(int value) {
+        ByteBuffer plane = ByteBuffer.allocate(WIDTH * HEIGHT);
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            plane.put(i, (byte) value);
+        }
+        return plane;
+    }
+
+    @Test
+    public void firstFrameIsAlwaysInferred() {
+        SceneChangeDetector detector = new SceneChangeDetector();
+        detector.sampleLuma(lumaPlane(100), WIDTH, 1, WIDTH, HEIGHT);
+        assertFalse(detector.isUnchanged(0));
+    }
+
+    @Test
+    public void identicalFrameIsUnchanged() {
+        SceneChangeDetector detector = new SceneChangeDetector();
+        detector.sampleLuma(lumaPlane(100), WIDTH, 1, WIDTH, HEIGHT);
+        detector.onInferred(0);
+        detector.sampleLuma(lumaPlane(101), WIDTH, 1, WIDTH, HEIGHT);
+        assertTrue(detector.isUnchanged(100));
+    }
+
+    @Test
+    public void changedFrameIsInferred() {
+        SceneChangeDetector detector = new SceneChangeDetector();
+        detector.sampleLuma(lumaPlane(100), WIDTH, 1, WIDTH, HEIGHT);
+        detector.onInferred(0);
+        detector.sampleLuma(lumaPlane(120), WIDTH, 1, WIDTH, HEIGHT);
+        assertFalse(detector.isUnchanged(100));
+    }
+
+    @Test
+    public void localChangeIsDetected() {
+        SceneChangeDetector detector = new SceneChangeDetector();
+        detector.sampleLuma(lumaPlane(100), WIDTH, 1, WIDTH, HEIGHT);
+        detector.onInferred(0);
+        // A bright block over a quarter of the frame.
+        ByteBuffer plane = lumaPlane(100);
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int col = 0; col < WIDTH / 2; col++) {
+                plane.put(row * WIDTH + col, (byte) 200);
+            }
+        }
+        detector.sampleLuma(plane, WIDTH, 1, WIDTH, HEIGHT);
+        assertFalse(detector.isUnchanged(100));
+    }
+
+    @Test
+    public void staleReferenceForcesInference() {
+        SceneChangeDetector detector = new SceneChangeDetector();
+        detector.setMaxStalenessMs(500);
+        detector.sampleLuma(lumaPlane(100), WIDTH, 1, WIDTH, HEIGHT);
+        detector.onInferred(0);
+        detector.sampleLuma(lumaPlane(100), WIDTH, 1, WIDTH, HEIGHT);
+        assertTrue(detector.isUnchanged(499));
+        assertFalse(detector.isUnchanged(500));
+    }
+
+    @Test
+    public void rgbaSamplesLuminance() {
+        SceneChangeDetector detector = new SceneChangeDetector();
+        ByteBuffer grey = ByteBuffer.allocate(WIDTH * HEIGHT * 4);
+        ByteBuffer red = ByteBuffer.allocate(WIDTH * HEIGHT * 4);
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            grey.put(4 * i, (byte) 128).put(4 * i + 1, (byte) 128).put(4 * i + 2, (byte) 128);
+            red.put(4 * i, (byte) 255);
+        }
+        detector.sampleRgba(grey, WIDTH * 4, WIDTH, HEIGHT);
+        detector.onInferred(0);
+        detector.sampleRgba(red, WIDTH * 4, WIDTH, HEIGHT);
+        assertFalse(detector.isUnchanged(100));
+    }
+
+    @Test
+    public void resetAndDisableForceInference() {
+        SceneChangeDetector detector = new SceneChangeDetector();
+        detector.sampleLuma(lumaPlane(100), WIDTH, 1, WIDTH, HEIGHT);
+        detector.onInferred(0);
+        detector.setEnabled(false);
+        assertFalse(detector.isUnchanged(100));
+        detector.setEnabled(true);
+        detector.reset();
+        assertFalse(detector.isUnchanged(100));
+    }
+
+    @Test
+    public void countsSkipsAndSavedTime() {
+        SceneChangeDetector detector = new SceneChangeDetector();
+        detector.onInferred(0);
+        detector.onSkipped(20f);
+        detector.onSkipped(30f);
+        detector.onInferred(100);
+        assertEquals(2, detector.getSkippedCount());
+        assertEquals(0.5f, detector.getSkipRatio(), 1e-6f);
+        assertEquals(50f, detector.getSavedMs(), 1e-6f);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentStitcherTest {
+    private final List<String> emitted = new ArrayList<>();
+    private final List<String> discarded = new ArrayList<>();
+    private final SegmentStitcher.Sink<String> sink = new SegmentStitcher.Sink<String>() {
+        @Override
+        public void emit(String item) {
+            emitted.add(item);
+        }
+
+        @Override
+        public void discard(String item) {
+            discarded.add(item);
+        }
+    };
+
+    @Test
+    public void headSegmentPassesStraightThrough() {
+        SegmentStitcher<String> stitcher = new SegmentStitcher<>(2, sink);
+        stitcher.add(0, "a0");
+        assertEquals(Arrays.asList("a0"), emitted);
+    }
+
+    @Test
+    public void laterSegmentsWaitForEarlierOnes() {
+        SegmentStitcher<String> stitcher = new SegmentStitcher<>(3, sink);
+        stitcher.add(1, "b0");
+        stitcher.add(2, "c0");
+        stitcher.add(0, "a0");
+        stitcher.add(1, "b1");
+        assertEquals(Arrays.asList("a0"), emitted);
+
+        stitcher.finish(0);
+        assertEquals(Arrays.asList("a0", "b0", "b1"), emitted);
+        // Segment 1 is the head now.
+        stitcher.add(1, "b2");
+        assertEquals(Arrays.asList("a0", "b0", "b1", "b2"), emitted);
+    }
+
+    @Test
+    public void segmentsFinishingOutOfOrderFlushTogether() {
+        SegmentStitcher<String> stitcher = new SegmentStitcher<>(3, sink);
+        stitcher.add(2, "c0");
+        stitcher.finish(2);
+        stitcher.add(1, "b0");
+        stitcher.finish(1);
+        assertTrue(emitted.isEmpty());
+        assertEquals(2, stitcher.getMaxHeldCount());
+
+        stitcher.finish(0);
+        assertEquals(Arrays.asList("b0", "c0"), emitted);
+        assertTrue(stitcher.isComplete());
+    }
+
+    @Test
+    public void cancelDiscardsHeldAndLaterItems() {
+        SegmentStitcher<String> stitcher = new SegmentStitcher<>(2, sink);
+        stitcher.add(0, "a0");
+        stitcher.add(1, "b0");
+        stitcher.cancel();
+        stitcher.add(1, "b1");
+        assertEquals(Arrays.asList("a0"), emitted);
+        assertEquals(Arrays.asList("b0", "b1"), discarded);
+        assertFalse(stitcher.isComplete());
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class VideoProcessingStatsTest {
+    @Test
+    public void coversOneFrameIntervalPerFrame() {
+        VideoProcessingStats stats = new VideoProcessingStats();
+        stats.onStarted(0);
+        // 31 frames at 30 fps stand for 31 / 30 seconds of video.
+        for (int i = 0; i <= 30; i++) {
+            stats.onProcessed(i * 1_000_000L / 30, 10f, i * 10);
+        }
+        assertEquals(1_033_333, stats.getCoveredVideoUs());
+        assertEquals(30f, stats.getVideoFramesPerSecond(), 0.01f);
+    }
+
+    @Test
+    public void realtimeFactorComparesVideoTimeWithWallTime() {
+        VideoProcessingStats stats = new VideoProcessingStats();
+        stats.onStarted(1000);
+        stats.onProcessed(0, 5f, 1100);
+        stats.onProcessed(1_000_000, 5f, 1250);
+        stats.onFinished(1500);
+        // Two frames a second apart cover two seconds, processed in 0.5 s.
+        assertEquals(500, stats.getElapsedMs());
+        assertEquals(4f, stats.getRealtimeFactor(), 0.001f);
+        assertEquals(4f, stats.getFramesPerSecond(), 0.001f);
+    }
+
+    @Test
+    public void strideLowersTheVideoRate() {
+        VideoProcessingStats stats = new VideoProcessingStats();
+        stats.onStarted(0);
+        // Every 4th frame of a 30 fps video.
+        for (int i = 0; i < 10; i++) {
+            stats.onDecoded();
+            stats.onDecoded();
+            stats.onDecoded();
+            stats.onDecoded();
+            stats.onProcessed(i * 4 * 1_000_000L / 30, 10f, i);
+        }
+        assertEquals(7.5f, stats.getVideoFramesPerSecond(), 0.01f);
+        assertEquals(40, stats.getDecodedFrames());
+        assertEquals(10, stats.getProcessedFrames());
+    }
+
+    @Test
+    public void segmentsMayFinishOutOfOrder() {
+        VideoProcessingStats stats = new VideoProcessingStats();
+        stats.onStarted(0);
+        stats.onProcessed(2_000_000, 10f, 10);
+        stats.onProcessed(0, 10f, 20);
+        stats.onProcessed(1_000_000, 10f, 30);
+        assertEquals(3_000_000, stats.getCoveredVideoUs());
+    }
+
+    @Test
+    public void emptyJobReportsZero() {
+        VideoProcessingStats stats = new VideoProcessingStats();
+        assertEquals(0f, stats.getFramesPerSecond(), 0f);
+        assertEquals(0f, stats.getRealtimeFactor(), 0f);
+        assertEquals(0, stats.getCoveredVideoUs());
+    }
+
+    @Test
+    public void elapsedStopsAtFinish() {
+        VideoProcessingStats stats = new VideoProcessingStats();
+        stats.onStarted(0);
+        stats.onProcessed(0, 10f, 100);
+        stats.onFinished(200);
+        stats.onProcessed(33_333, 10f, 900);
+        assertEquals(200, stats.getElapsedMs());
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VideoScalingReportTest {
+    @Test
+    public void speedupIsRelativeToTheFirstRun() {
+        VideoScalingReport report = new VideoScalingReport();
+        report.add(1, 20f);
+        report.add(2, 36f);
+        report.add(4, 60f);
+        assertEquals(1f, report.getSpeedup(0), 1e-6f);
+        assertEquals(1.8f, report.getSpeedup(1), 1e-6f);
+        assertEquals(3f, report.getSpeedup(2), 1e-6f);
+        assertEquals(0.75f, report.getEfficiency(2), 1e-6f);
+    }
+
+    @Test
+    public void describeHasOneLinePerRun() {
+        VideoScalingReport report = new VideoScalingReport();
+        report.add(1, 20f);
+        report.add(2, 40f);
+        String[] lines = report.describe().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[2].contains("2.00x"));
+    }
+
+    @Test
+    public void zeroBaselineGivesNoSpeedup() {
+        VideoScalingReport report = new VideoScalingReport();
+        report.add(1, 0f);
+        report.add(2, 10f);
+        assertEquals(0f, report.getSpeedup(1), 0f);
+    }
+}
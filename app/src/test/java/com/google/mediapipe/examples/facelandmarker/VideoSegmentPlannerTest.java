@@ -0,0 +1,104 @@
+/*
+ * Copyright 2023 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mediapipe.examples.facelandmarker;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class VideoSegmentPlannerTest {
+    private static final long SECOND = 1_000_000;
+
+    // A keyframe every second over seconds.
+    private static long[] keyframes(int seconds) {
+        long[] keyframes = new long[seconds];
+        for (int i = 0; i < seconds; i++) {
+            keyframes[i] = i * SECOND;
+        }
+        return keyframes;
+    }
+
+    @Test
+    public void oneWorkerGetsOneSegment() {
+        List<VideoSegmentPlanner.Segment> segments =
+                VideoSegmentPlanner.plan(keyframes(60), 60 * SECOND, 1, VideoSegmentPlanner.DEFAULT_OVERLAP_US);
+        assertEquals(1, segments.size());
+        assertEquals(0, segments.get(0).startUs);
+        assertEquals(Long.MAX_VALUE, segments.get(0).endUs);
+    }
+
+    @Test
+    public void segmentsAreContiguousAndStartAtKeyframes() {
+        List<VideoSegmentPlanner.Segment> segments =
+                VideoSegmentPlanner.plan(keyframes(60), 60 * SECOND, 4, VideoSegmentPlanner.DEFAULT_OVERLAP_US);
+        // 60 s over 4 workers, two segments each.
+        assertEquals(8, segments.size());
+        long expectedStart = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            VideoSegmentPlanner.Segment segment = segments.get(i);
+            assertEquals(i, segment.index);
+            assertEquals(expectedStart, segment.startUs);
+            assertEquals(0, segment.startUs % SECOND);
+            expectedStart = segment.endUs;
+        }
+        assertEquals(Long.MAX_VALUE, expectedStart);
+    }
+
+    @Test
+    public void laterSegmentsWarmUpOverTheOverlap() {
+        List<VideoSegmentPlanner.Segment> segments =
+                VideoSegmentPlanner.plan(keyframes(60), 60 * SECOND, 2, VideoSegmentPlanner.DEFAULT_OVERLAP_US);
+        assertEquals(0, segments.get(0).warmUpFromUs);
+        VideoSegmentPlanner.Segment second = segments.get(1);
+        assertEquals(second.startUs - VideoSegmentPlanner.DEFAULT_OVERLAP_US, second.warmUpFromUs);
+    }
+
+    @Test
+    public void segmentLengthIsBounded() {
+        List<VideoSegmentPlanner.Segment> shortVideo =
+                VideoSegmentPlanner.plan(keyframes(6), 6 * SECOND, 8, 0);
+        // Never shorter than the minimum, so at most 3 segments of 2 s.
+        assertEquals(3, shortVideo.size());
+
+        List<VideoSegmentPlanner.Segment> longVideo =
+                VideoSegmentPlanner.plan(keyframes(600), 600 * SECOND, 2, 0);
+        for (VideoSegmentPlanner.Segment segment : longVideo.subList(0, longVideo.size() - 1)) {
+            assertEquals(VideoSegmentPlanner.MAX_SEGMENT_US, segment.endUs - segment.startUs);
+        }
+    }
+
+    @Test
+    public void singleKeyframeCannotBeSplit() {
+        List<VideoSegmentPlanner.Segment> segments =
+                VideoSegmentPlanner.plan(new long[] {0}, 60 * SECOND, 4, 0);
+        assertEquals(1, segments.size());
+    }
+
+    @Test
+    public void noTinySegmentAtTheEnd() {
+        // Keyframes every 2.5 s; the one at 57.5 s would leave half a second.
+        long[] keyframes = new long[24];
+        for (int i = 0; i < keyframes.length; i++) {
+            keyframes[i] = i * 2_500_000L;
+        }
+        List<VideoSegmentPlanner.Segment> segments =
+                VideoSegmentPlanner.plan(keyframes, 58 * SECOND, 8, 0);
+        VideoSegmentPlanner.Segment last = segments.get(segments.size() - 1);
+        assertEquals(55 * SECOND, last.startUs);
+    }
+}